@@ -24,6 +24,21 @@ public class DBDatabaseEntry {
     public DBDatabaseEntry() {
     }
 
+    /**
+     * Creates a copy of the connection details of a database entry
+     * @param databaseEntry : database entry to copy
+     */
+    public DBDatabaseEntry(DBDatabaseEntry databaseEntry) {
+        this.name = databaseEntry.name;
+        this.driver = databaseEntry.driver;
+        this.server = databaseEntry.server;
+        this.port = databaseEntry.port;
+        this.database = databaseEntry.database;
+        this.schema = databaseEntry.schema;
+        this.username = databaseEntry.username;
+        this.password = databaseEntry.password;
+    }
+
     /**
      * Created a database entry
      * @param name : name of the entry (just a bulk of letters, can contain spaces)
@@ -154,6 +169,21 @@ public class DBDatabaseEntry {
 	 */
 	@Getter @Setter private int viewsImagesScaleFactor = 100;
 	
+	/**
+	 * Number of rows grouped in a single JDBC batch during the export process<br>
+	 * <br>
+	 * A value of 1 (or less) disables the batches: each row is then sent separately to the database
+	 */
+	@Getter @Setter private int exportBatchSize = 100;
+	
+	/**
+	 * Should the database compute the differences between the model and the database during the export<br>
+	 * <br>
+	 * When set, the checksums of the model's components are sent to the database that returns only the components that are not in sync,
+	 * instead of sending all the versions of all the model's components to the plugin.
+	 */
+	@Getter @Setter private boolean serverSideCompare = false;
+	
 	/**
 	 * In case of Neo4J database, should we generate native relationships
 	 */
@@ -255,6 +285,9 @@ public class DBDatabaseEntry {
 					databaseEntry.setViewsImagesBorderWidth(store.getInt(preferenceName+"_views-images-border-width_"+String.valueOf(line)));
 					store.setDefault(preferenceName+"_views-images-scale-factor_"+String.valueOf(line), 100);
 					databaseEntry.setViewsImagesScaleFactor(store.getInt(preferenceName+"_views-images-scale-factor_"+String.valueOf(line)));
+					store.setDefault(preferenceName+"_export-batch-size_"+String.valueOf(line), 100);
+					databaseEntry.setExportBatchSize(store.getInt(preferenceName+"_export-batch-size_"+String.valueOf(line)));
+					databaseEntry.setServerSideCompare(store.getBoolean(preferenceName+"_server-side-compare_"+String.valueOf(line)));
 					
 					databaseEntry.setNeo4jNativeMode(store.getBoolean(preferenceName+"_neo4j-native-mode_"+String.valueOf(line)));
 					databaseEntry.setShouldEmptyNeo4jDB(store.getBoolean(preferenceName+"_neo4j-empty-database_"+String.valueOf(line)));
@@ -297,6 +330,8 @@ public class DBDatabaseEntry {
 			store.setValue(preferenceName+"_export-views-images_"+String.valueOf(line), databaseEntry.isViewSnapshotRequired());
 			store.setValue(preferenceName+"_views-images-border-width_"+String.valueOf(line), databaseEntry.getViewsImagesBorderWidth());
 			store.setValue(preferenceName+"_views-images-scale-factor_"+String.valueOf(line), databaseEntry.getViewsImagesScaleFactor());
+			store.setValue(preferenceName+"_export-batch-size_"+String.valueOf(line), databaseEntry.getExportBatchSize());
+			store.setValue(preferenceName+"_server-side-compare_"+String.valueOf(line), databaseEntry.isServerSideCompare());
 			store.setValue(preferenceName+"_neo4j-native-mode_"+String.valueOf(line), databaseEntry.isNeo4jNativeMode());
 			store.setValue(preferenceName+"_neo4j-empty-database_"+String.valueOf(line), databaseEntry.shouldEmptyNeo4jDB());
 			store.setValue(preferenceName+"_neo4j-typed-relationships_"+String.valueOf(line), databaseEntry.isNeo4jTypedRelationship());
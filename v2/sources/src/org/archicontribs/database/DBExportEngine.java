@@ -0,0 +1,785 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.archicontribs.database.GUI.DBGui;
+import org.archicontribs.database.connection.DBDatabaseExportConnection;
+import org.archicontribs.database.connection.DBDatabaseImportConnection;
+import org.archicontribs.database.data.DBChecksum;
+import org.archicontribs.database.data.DBDatabase;
+import org.archicontribs.database.data.DBScreenshotCache;
+import org.archicontribs.database.model.DBArchimateModel;
+import org.archicontribs.database.model.DBMetadata;
+import org.archicontribs.database.model.IDBMetadata;
+import org.archicontribs.database.model.commands.DBDeleteDiagramConnectionCommand;
+import org.archicontribs.database.model.commands.DBDeleteDiagramObjectCommand;
+import org.archicontribs.database.model.commands.DBImportElementFromIdCommand;
+import org.archicontribs.database.model.commands.DBImportRelationshipFromIdCommand;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.gef.commands.CommandStack;
+import org.eclipse.gef.commands.CompoundCommand;
+import org.eclipse.swt.graphics.ImageData;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.editor.model.commands.DeleteArchimateElementCommand;
+import com.archimatetool.editor.model.commands.DeleteArchimateRelationshipCommand;
+import com.archimatetool.editor.model.commands.DeleteDiagramModelCommand;
+import com.archimatetool.editor.model.commands.DeleteFolderCommand;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateConnection;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelObject;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+
+import lombok.Getter;
+
+/**
+ * Exports a model into a database, independently of any graphical interface.<br>
+ * <br>
+ * The export can be run in any thread: the model updates are delegated to the {@link IDBExportListener} that is in charge of running them in the thread that owns the model.<br>
+ * The progress of the export can be followed by reading the counters from another thread while the export is running.<br>
+ * <br>
+ * The database transaction is started by the export method but neither committed nor rolled back: this is the responsibility of the caller.
+ * 
+ * @author Herve Jouin
+ */
+public class DBExportEngine {
+	private static final DBLogger logger = new DBLogger(DBExportEngine.class);
+	
+	/**
+	 * Type of the components managed by the export engine
+	 */
+	public enum COMPONENT {Element, Relationship, Folder, View, ViewObject, ViewConnection}
+	
+	/**
+	 * Counters maintained for each type of component during the export
+	 */
+	public enum COUNTER {NewInModel, UpdatedInModel, NewInDatabase, UpdatedInDatabase, DeletedInDatabase, Conflicting}
+	
+	@Getter private DBArchimateModel model;
+	@Getter private DBDatabaseExportConnection exportConnection;
+	@Getter private DBDatabaseEntry databaseEntry;
+	private IDBExportListener listener;
+	private String releaseNote;
+	private boolean isNeo4j;
+	
+	/**
+	 * Counters of each type of component, indexed by {@link #counterIndex}<br>
+	 * They are incremented by the export thread and read by the GUI thread, so their updates must be visible across threads.
+	 */
+	private final AtomicIntegerArray counters = new AtomicIntegerArray(COMPONENT.values().length * COUNTER.values().length);
+	
+	/**
+	 * Number of components that have been processed by the export (exported, imported, deleted or conflicting)
+	 */
+	@Getter private volatile int countProcessed = 0;
+	
+	/**
+	 * Number of images that have been exported to the database
+	 */
+	@Getter private volatile int countNewImages = 0;
+	
+	/**
+	 * Number of components that conflict with their database version and that need to be manually resolved
+	 */
+	@Getter private volatile int countConflicts = 0;
+	
+	private volatile boolean cancelled = false;
+	
+	// the delayedCommand used to allow rollback of elements and relationships deletion
+	// it is delayed because we want to delete the elements and relationships after they've been exported (as the getAllElements and getAllRelationships cannot be changed during the export loop)
+	private CompoundCommand exportCommands;
+	
+	/**
+	 * Views that have been exported and whose screenshot must be exported once all the views rows have been sent to the database
+	 */
+	private final List<IDiagramModel> viewsToSnapshot = new ArrayList<IDiagramModel>();
+	
+	/**
+	 * Code that updates the model and that needs to be run by the {@link IDBExportListener#runInModelThread(Runnable)} method
+	 */
+	private interface ModelUpdate {
+		void run() throws Exception;
+	}
+	
+	/**
+	 * Creates an export engine
+	 * @param model the model to export
+	 * @param exportConnection the connection to the database, the model versions must already have been retrieved from the database
+	 * @param listener the listener that runs the model updates, creates the views screenshots and is notified of the conflicts
+	 * @param releaseNote the release note of the new model version
+	 */
+	public DBExportEngine(DBArchimateModel model, DBDatabaseExportConnection exportConnection, IDBExportListener listener, String releaseNote) {
+		assert(model != null);
+		assert(exportConnection != null);
+		assert(listener != null);
+		
+		this.model = model;
+		this.exportConnection = exportConnection;
+		this.databaseEntry = exportConnection.getDatabaseEntry();
+		this.listener = listener;
+		this.releaseNote = releaseNote;
+		this.isNeo4j = DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName());
+	}
+	
+	/**
+	 * Gets the value of a counter
+	 */
+	public int getCount(COMPONENT component, COUNTER counter) {
+		return this.counters.get(counterIndex(component, counter));
+	}
+	
+	/**
+	 * Increments a counter
+	 */
+	private void incrementCount(COMPONENT component, COUNTER counter) {
+		this.counters.incrementAndGet(counterIndex(component, counter));
+	}
+	
+	private static int counterIndex(COMPONENT component, COUNTER counter) {
+		return component.ordinal() * COUNTER.values().length + counter.ordinal();
+	}
+	
+	/**
+	 * @return true if at least one component has been exported to or imported from the database
+	 */
+	public boolean hasExportedComponents() {
+		for ( int i = 0; i < this.counters.length(); ++i ) {
+			if ( this.counters.get(i) != 0 )
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Asks the export to stop. The export method will then throw an exception as soon as possible.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+	
+	/**
+	 * Tells if the components must be exported without checking for conflicts. This is the case when:<br>
+	 *    - the model is not in the database<br>
+	 *    - the current model is the latest model in the database<br>
+	 *    - we are in standalone mode<br>
+	 *	  - we export to a Neo4j database
+	 */
+	public static boolean isForceExportRequired(DBArchimateModel model, DBDatabaseEntry databaseEntry) {
+		return model.getInitialVersion().getVersion() == 0
+				|| model.getCurrentVersion().getVersion() == model.getInitialVersion().getVersion()
+				|| !databaseEntry.isCollaborativeMode()
+				|| DBPlugin.areEqual(databaseEntry.getDriver().toLowerCase(), "neo4j");
+	}
+	
+	/**
+	 * Exports the model into the database<br>
+	 * <br>
+	 * A database transaction is started but it is the responsibility of the caller to commit it, or to roll it back if conflicts are detected or an exception is raised.
+	 * @return the number of components that conflict with their database version
+	 */
+	public int export() throws Exception {
+		boolean forceExport = isForceExportRequired(this.model, this.databaseEntry);
+		
+		// we calculate the new model checksum
+		this.model.getCurrentVersion().setChecksum(DBChecksum.calculateChecksum(this.model, this.releaseNote));
+		
+		// the Neo4J indexes must be created before the transaction is started as Neo4J does not allow to update the schema and the data in the same transaction
+		if ( this.isNeo4j )
+			this.exportConnection.createNeo4jIndexes(this.model);
+		
+		// then, we start a new database transaction
+		this.exportConnection.setAutoCommit(false);
+		
+		// when the model is exported for the first time, all its components are new in the database so they are inserted using the native bulk load path of the database
+		if ( !this.isNeo4j && (this.model.getDatabaseVersion().getVersion() == 0) )
+			this.exportConnection.setBulkLoad(true);
+		
+		if ( !this.isNeo4j ) {
+			// we need to recalculate the latest versions in the database in case someone updated the database since the last check
+			this.exportConnection.getVersionsFromDatabase(this.model);
+			if ( this.databaseEntry.isWholeModelExported() ) {
+				this.exportConnection.getViewObjectsAndConnectionsVersionsFromDatabase(this.model);
+				
+				// the memberships of the unchanged components are copied or extended by the database from the previous version of the model
+				this.exportConnection.setMembershipsCopy(this.model, DBPlugin.INSTANCE.getPreferenceStore().getBoolean("membershipIntervals"));
+			}
+		}
+		
+		this.exportCommands = new CompoundCommand();
+		this.viewsToSnapshot.clear();
+		
+		try ( final DBDatabaseImportConnection importConnection = new DBDatabaseImportConnection(this.exportConnection) ) {
+			if ( this.isNeo4j && this.databaseEntry.shouldEmptyNeo4jDB() ) {
+				this.exportConnection.emptyNeo4jDB();
+			}
+			
+			if ( this.databaseEntry.isWholeModelExported() ) {
+				this.exportConnection.exportModel(this.model, this.releaseNote);
+				
+				// we import the folders BEFORE the elements, relationships and views because they must exist when the elements, relationships and views are imported
+				logger.info("Importing new folders ...");
+				runInModelThread(new ModelUpdate() {
+					@Override
+					public void run() throws Exception {
+						for (String id : DBExportEngine.this.exportConnection.getFoldersNotInModel().keySet() ) {
+							if ( logger.isDebugEnabled() ) logger.debug("The folder id "+id+" has been created in the database. We import it in the model.");
+							DBMetadata versionToImport = DBExportEngine.this.exportConnection.getFoldersNotInModel().get(id);
+							importConnection.importFolderFromId(DBExportEngine.this.model, id, versionToImport.getLatestDatabaseVersion().getVersion());
+							incrementCount(COMPONENT.Folder, COUNTER.NewInDatabase);
+						}
+					}
+				});
+			}
+			
+			logger.info("Importing new elements ...");
+			runInModelThread(new ModelUpdate() {
+				@Override
+				public void run() throws Exception {
+					for (String id : DBExportEngine.this.exportConnection.getElementsNotInModel().keySet() ) {
+						if ( logger.isDebugEnabled() ) logger.debug("The element id "+id+" has been created in the database. We import it in the model.");
+						DBMetadata versionToImport = DBExportEngine.this.exportConnection.getElementsNotInModel().get(id);
+						DBExportEngine.this.exportCommands.add(new DBImportElementFromIdCommand(importConnection, DBExportEngine.this.model, id, versionToImport.getLatestDatabaseVersion().getVersion()));
+						DBExportEngine.this.exportCommands.execute();
+						incrementCount(COMPONENT.Element, COUNTER.NewInDatabase);
+					}
+					
+					if ( !DBExportEngine.this.exportCommands.getCommands().isEmpty() ) {
+						CommandStack stack = (CommandStack) DBExportEngine.this.model.getAdapter(CommandStack.class);
+						stack.execute(DBExportEngine.this.exportCommands);
+					}
+				}
+			});
+			
+			logger.info("Importing new relationships ...");
+			runInModelThread(new ModelUpdate() {
+				@Override
+				public void run() throws Exception {
+					for (String id : DBExportEngine.this.exportConnection.getRelationshipsNotInModel().keySet() ) {
+						if ( logger.isDebugEnabled() ) logger.debug("The relationship id "+id+" has been created in the database. We import it in the model.");
+						DBMetadata versionToImport = DBExportEngine.this.exportConnection.getRelationshipsNotInModel().get(id);
+						DBExportEngine.this.exportCommands.add(new DBImportRelationshipFromIdCommand(importConnection, DBExportEngine.this.model, id, versionToImport.getLatestDatabaseVersion().getVersion()));
+						DBExportEngine.this.exportCommands.execute();
+						incrementCount(COMPONENT.Relationship, COUNTER.NewInDatabase);
+					}
+					DBExportEngine.this.model.resolveSourceRelationships();
+					DBExportEngine.this.model.resolveTargetRelationships();
+					
+					if ( !DBExportEngine.this.exportCommands.isEmpty() ) {
+						CommandStack stack = (CommandStack) DBExportEngine.this.model.getAdapter(CommandStack.class);
+						stack.execute(DBExportEngine.this.exportCommands);
+					}
+				}
+			});
+			
+			if ( this.databaseEntry.isWholeModelExported() ) {
+				logger.info("Importing new views, views objects and views connections ...");
+				runInModelThread(new ModelUpdate() {
+					@Override
+					public void run() throws Exception {
+						for (String id : DBExportEngine.this.exportConnection.getViewsNotInModel().keySet() ) {
+							if ( logger.isDebugEnabled() ) logger.debug("The view id "+id+" has been created in the database. We import it in the model.");
+							DBMetadata versionToImport = DBExportEngine.this.exportConnection.getViewsNotInModel().get(id);
+							importConnection.importViewFromId(DBExportEngine.this.model, id, versionToImport.getLatestDatabaseVersion().getVersion(), false, false);
+							incrementCount(COMPONENT.View, COUNTER.NewInDatabase);
+						}
+						
+						for (String id : DBExportEngine.this.exportConnection.getViewObjectsNotInModel().keySet() ) {
+							if ( logger.isDebugEnabled() ) logger.debug("The view object id "+id+" has been created in the database. We import it in the model.");
+							DBMetadata versionToImport = DBExportEngine.this.exportConnection.getViewObjectsNotInModel().get(id);
+							importConnection.importViewObjectFromId(DBExportEngine.this.model, id, versionToImport.getLatestDatabaseVersion().getVersion(), false);
+							incrementCount(COMPONENT.ViewObject, COUNTER.NewInDatabase);
+						}
+						
+						for (String id : DBExportEngine.this.exportConnection.getViewConnectionsNotInModel().keySet() ) {
+							if ( logger.isDebugEnabled() ) logger.debug("The view connection id "+id+" has been created in the database. We import it in the model.");
+							DBMetadata versionToImport = DBExportEngine.this.exportConnection.getViewConnectionsNotInModel().get(id);
+							importConnection.importViewConnectionFromId(DBExportEngine.this.model, id, versionToImport.getLatestDatabaseVersion().getVersion(), false);
+							incrementCount(COMPONENT.ViewConnection, COUNTER.NewInDatabase);
+						}
+						DBExportEngine.this.model.resolveSourceConnections();
+						DBExportEngine.this.model.resolveTargetConnections();
+						
+						logger.info("Applying changes to the model ...");
+						if ( !DBExportEngine.this.exportCommands.isEmpty() ) {
+							CommandStack stack = (CommandStack) DBExportEngine.this.model.getAdapter(CommandStack.class);
+							stack.execute(DBExportEngine.this.exportCommands);
+						}
+					}
+				});
+			}
+			
+			logger.info("Checking if components have been moved to new folder ...");
+			runInModelThread(new ModelUpdate() {
+				@Override
+				public void run() throws Exception {
+					importConnection.setFolderToLastKnown(DBExportEngine.this.model);
+				}
+			});
+			
+			logger.info("Exporting elements ...");
+			this.exportConnection.startRequestsGroup();
+			Iterator<Entry<String, IArchimateElement>> elementsIterator = this.model.getAllElements().entrySet().iterator();
+			while ( elementsIterator.hasNext() ) {
+				exportEObject(elementsIterator.next().getValue(), forceExport);
+			}
+			
+			logger.info("Exporting relationships ...");
+			this.exportConnection.startRequestsGroup();
+			Iterator<Entry<String, IArchimateRelationship>> relationshipsIterator = this.model.getAllRelationships().entrySet().iterator();
+			while ( relationshipsIterator.hasNext() ) {
+				exportEObject(relationshipsIterator.next().getValue(), forceExport);
+			}
+			
+			if ( this.databaseEntry.isWholeModelExported() ) {
+				logger.info("Exporting views ...");
+				this.exportConnection.startRequestsGroup();
+				Iterator<Entry<String, IDiagramModel>> viewsIterator = this.model.getAllViews().entrySet().iterator();
+				while ( viewsIterator.hasNext() ) {
+					IDiagramModel view = viewsIterator.next().getValue();
+					// if the checksum of the view has been changed by imported, updated or deleted components, then we recalculate its checksum
+					if ( !((IDBMetadata)view).getDBMetadata().isChecksumValid() ) {
+						this.model.countObject(view, true, view);
+						this.exportConnection.getViewObjectsAndConnectionsVersionsFromDatabase(this.model, view);
+					}
+					
+					((IDBMetadata)view).getDBMetadata().setHasBeenExported(exportEObject(view, forceExport));
+				}
+				
+				logger.info("Exporting view objects ...");
+				this.exportConnection.startRequestsGroup();
+				Iterator<Entry<String, IDiagramModelObject>> viewObjectsIterator = this.model.getAllViewObjects().entrySet().iterator();
+				while ( viewObjectsIterator.hasNext() ) {
+					IDiagramModelObject viewObject = viewObjectsIterator.next().getValue();
+					// we do not export the view object if its parent view has not been exported
+					if ( ((IDBMetadata)viewObject.getDiagramModel()).getDBMetadata().isHasBeenExported() )
+						exportEObject(viewObject, forceExport);
+				}
+				
+				logger.info("Exporting view connections ...");
+				this.exportConnection.startRequestsGroup();
+				Iterator<Entry<String, IDiagramModelConnection>> viewConnectionsIterator = this.model.getAllViewConnections().entrySet().iterator();
+				while ( viewConnectionsIterator.hasNext() ) {
+					IDiagramModelConnection viewConnection = viewConnectionsIterator.next().getValue();
+					// we do not export the view connection if its parent view has not been exported
+					if ( ((IDBMetadata)viewConnection.getDiagramModel()).getDBMetadata().isHasBeenExported() )
+						exportEObject(viewConnection, forceExport);
+				}
+				
+				logger.info("Exporting folders ...");
+				this.exportConnection.startRequestsGroup();
+				Iterator<Entry<String, IFolder>> foldersIterator = this.model.getAllFolders().entrySet().iterator();
+				while ( foldersIterator.hasNext() ) {
+					exportEObject(foldersIterator.next().getValue(), forceExport);
+				}
+				
+				this.exportConnection.copyUnchangedMemberships(this.model);
+				
+				if ( !this.viewsToSnapshot.isEmpty() ) {
+					logger.info("Exporting views screenshots ...");
+					this.exportConnection.startRequestsGroup();
+					exportViewsScreenshots();
+				}
+				
+				logger.info("Exporting images ...");
+				this.exportConnection.startRequestsGroup();
+				// no need to use imagesNotInModel as the requested images have been imported at the same time as their view object
+				IArchiveManager archiveMgr = (IArchiveManager)this.model.getAdapter(IArchiveManager.class);
+				for ( String path: this.model.getAllImagePaths() ) {
+					checkCancelled();
+					if ( this.exportConnection.exportImage(path, archiveMgr.getBytesFromEntry(path)) )
+						++this.countNewImages;
+					++this.countProcessed;
+				}
+			}
+		}
+		
+		if ( logger.isDebugEnabled() ) logger.debug("Found "+this.countConflicts+" components conflicting with database");
+		return this.countConflicts;
+	}
+	
+	/**
+	 * Effectively exports an EObject in the database<br>
+	 * When a conflict is detected, the listener is notified<br>
+	 * <br>
+	 * This method is called by the export() method
+	 * @return true if the EObject has been exported, false if it is conflicting
+	 */
+	private boolean exportEObject(final EObject eObjectToExport, boolean forceExport) throws Exception {
+		assert(eObjectToExport instanceof IDBMetadata);
+		
+		checkCancelled();
+		
+		if ( logger.isDebugEnabled() ) logger.debug("Do Export "+((IDBMetadata)eObjectToExport).getDBMetadata().getDebugName());
+		
+		boolean mustExport = false;
+		boolean mustImport = false;
+		boolean mustDelete = false;
+		boolean exported = false;
+		
+		COMPONENT component;
+		String objectClass;
+		if ( eObjectToExport instanceof IArchimateElement ) {
+			objectClass = "Element";
+			component = COMPONENT.Element;
+		} else if ( eObjectToExport instanceof IArchimateRelationship ) {
+			objectClass = "Relationship";
+			component = COMPONENT.Relationship;
+		} else if ( eObjectToExport instanceof IFolder ) {
+			objectClass = "Folder";
+			component = COMPONENT.Folder;
+		} else if ( eObjectToExport instanceof IDiagramModel ) {
+			objectClass = "View";
+			component = COMPONENT.View;
+		} else if ( eObjectToExport instanceof IDiagramModelObject ) {
+			objectClass = "View Object";
+			component = COMPONENT.ViewObject;
+		} else if ( eObjectToExport instanceof IDiagramModelConnection ) {
+			objectClass = "View Connection";
+			component = COMPONENT.ViewConnection;
+		} else
+			throw new Exception("At the moment, we cannot export a "+eObjectToExport.getClass().getSimpleName()+" :(");
+		
+		String debugMessage = null;
+		if ( forceExport ) {
+			debugMessage = "The "+objectClass+" is in Force Export mode, we must export it to the database.";
+			mustExport = true;
+		} else {
+			switch ( ((IDBMetadata)eObjectToExport).getDBMetadata().getDatabaseStatus() ) {
+				case isNewInModel:
+					debugMessage = "The "+objectClass+" has been created in the model, we must export it to the database.";
+					mustExport = true;
+					break;
+				case isUpadtedInDatabase:
+					debugMessage = "The "+objectClass+" has been updated in the database, we must import it from the database.";
+					mustImport = true;
+					break;
+				case isUpdatedInModel:
+					debugMessage = "The "+objectClass+" has been updated in the model, we must export it to the database.";
+					mustExport = true;
+					break;
+				case isDeletedInDatabase:
+					debugMessage = "The "+objectClass+" has been deleted in the database, we must delete it from the model.";
+					mustDelete = true;
+					break;
+				case IsConflicting:
+					if ( eObjectToExport instanceof IDiagramModel && DBPlugin.areEqual(((IDBMetadata)eObjectToExport).getDBMetadata().getCurrentVersion().getContainerChecksum(), ((IDBMetadata)eObjectToExport).getDBMetadata().getDatabaseVersion().getContainerChecksum()) ) {
+						debugMessage = "The "+objectClass+" has not been updated, but its content has, we must export it to the database.";
+						mustExport = true;
+					} else {
+						if ( logger.isDebugEnabled() ) logger.debug("The "+objectClass+" conflicts with the version in the database.");
+						switch ( ((IDBMetadata)eObjectToExport).getDBMetadata().getConflictChoice() ) {
+							case askUser :
+								if ( logger.isDebugEnabled() ) logger.debug("The conflict has to be manually resolved by user.");
+								incrementCount(component, COUNTER.Conflicting);
+								++this.countConflicts;
+								++this.countProcessed;
+								this.listener.conflictDetected(eObjectToExport);
+								return false;
+							case exportToDatabase :
+								debugMessage = "The "+objectClass+" is tagged to force export to the database. ";
+								mustExport = true;
+								break;
+							case importFromDatabase :
+								debugMessage = "The "+objectClass+" is tagged to import from to the database. ";
+								mustImport = true;
+								break;
+							default:    // case doNotExport :
+								if ( logger.isDebugEnabled() ) logger.debug("The "+objectClass+" is tagged \"do not export\", we keep it as it is.");
+								break;
+						}
+					}
+					break;
+				case isSynced:
+					if ( logger.isDebugEnabled() )  logger.debug("The "+objectClass+" is in sync with the database.");
+					break;
+				default:
+					throw new Exception("That's weird, we shoudn't be here ...");
+			}
+		}
+		
+		if ( mustExport ) {
+			if ( logger.isDebugEnabled() )  logger.debug(debugMessage);
+			
+			this.exportConnection.exportEObject(eObjectToExport);
+			
+			if ( (eObjectToExport instanceof IDiagramModel) && this.databaseEntry.isViewSnapshotRequired() )
+				this.viewsToSnapshot.add((IDiagramModel)eObjectToExport);
+			
+			if ( ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion() == 0 )
+				incrementCount(component, COUNTER.NewInModel);
+			else
+				incrementCount(component, COUNTER.UpdatedInModel);
+			
+			exported = true;
+		}
+		
+		if ( mustImport ) {
+			if ( logger.isDebugEnabled() ) logger.debug(debugMessage);
+			
+			runInModelThread(new ModelUpdate() {
+				@Override
+				public void run() throws Exception {
+					DBArchimateModel exportedModel = DBExportEngine.this.model;
+					String id = ((IIdentifier)eObjectToExport).getId();
+					int version = ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion();
+					
+					try ( DBDatabaseImportConnection importConnection = new DBDatabaseImportConnection(DBExportEngine.this.exportConnection) ) {
+						if ( eObjectToExport instanceof IArchimateElement )
+							importConnection.importElementFromId(exportedModel, id, version);
+						else if ( eObjectToExport instanceof IArchimateRelationship )
+							importConnection.importRelationshipFromId(exportedModel, null, id, version, false);
+						else if ( eObjectToExport instanceof IFolder )
+							importConnection.importFolderFromId(exportedModel, id, version, false);
+						else if ( eObjectToExport instanceof IDiagramModel )
+							importConnection.importViewFromId(exportedModel, id, version, false, false);
+						else if ( eObjectToExport instanceof IDiagramModelObject )
+							importConnection.importViewObjectFromId(exportedModel, id, version, false);
+						else if ( eObjectToExport instanceof IDiagramModelConnection )
+							importConnection.importViewConnectionFromId(exportedModel, id, version, false);
+					}
+				}
+			});
+			
+			incrementCount(component, COUNTER.UpdatedInDatabase);
+			exported = true;
+		}
+		
+		if ( mustDelete ) {
+			if ( logger.isDebugEnabled() ) logger.debug(debugMessage);
+			
+			runInModelThread(new ModelUpdate() {
+				@Override
+				public void run() throws Exception {
+					if ( eObjectToExport instanceof IArchimateElement )
+						DBExportEngine.this.exportCommands.add(new DeleteArchimateElementCommand((IArchimateElement)eObjectToExport));
+					else if ( eObjectToExport instanceof IArchimateRelationship )
+						DBExportEngine.this.exportCommands.add(new DeleteArchimateRelationshipCommand((IArchimateRelationship)eObjectToExport));
+					else if ( eObjectToExport instanceof IFolder )
+						new DeleteFolderCommand((IFolder)eObjectToExport).execute();
+					else if ( eObjectToExport instanceof IDiagramModel )
+						new DeleteDiagramModelCommand((IDiagramModel)eObjectToExport).execute();
+					else if ( eObjectToExport instanceof IDiagramModelArchimateObject )
+						DBExportEngine.this.exportCommands.add(new DBDeleteDiagramObjectCommand(DBExportEngine.this.model, (IDiagramModelArchimateObject)eObjectToExport));
+					else if ( eObjectToExport instanceof IDiagramModelArchimateConnection )
+						DBExportEngine.this.exportCommands.add(new DBDeleteDiagramConnectionCommand(DBExportEngine.this.model, (IDiagramModelArchimateConnection)eObjectToExport));
+				}
+			});
+			
+			incrementCount(component, COUNTER.DeletedInDatabase);
+			exported = true;
+		}
+		
+		if ( !mustDelete ) {
+			// we reference the object as being part of the model
+			if ( this.databaseEntry.isWholeModelExported() )
+				this.exportConnection.assignEObjectToModel(eObjectToExport);
+		}
+		
+		++this.countProcessed;
+		return exported;
+	}
+	
+	/**
+	 * Exports the screenshots of the exported views<br>
+	 * <br>
+	 * Each screenshot is identified by a checksum of the view's checksum (which includes its children's ones), scale factor and border width:
+	 * <ul>
+	 * <li>when a previous version of the view in the database has got a screenshot with the same checksum, that screenshot is copied server side</li>
+	 * <li>else, when the screenshot is in the local screenshots cache, it is exported without any rendering</li>
+	 * <li>else, the views are rendered one after the other by the listener (as the rendering needs the SWT thread) while the PNG encoding of the
+	 * previously rendered views is done by a pool of worker threads</li>
+	 * </ul>
+	 * The screenshots are written using batched updates of the views rows.
+	 */
+	private void exportViewsScreenshots() throws Exception {
+		final int scaleFactor = this.databaseEntry.getViewsImagesScaleFactor();
+		final double scale = scaleFactor/100.0;
+		final int margin = this.databaseEntry.getViewsImagesBorderWidth();
+		DBScreenshotCache cache = DBScreenshotCache.getInstance();
+		
+		// the views rows must exist before their screenshot can be updated
+		this.exportConnection.executeBatches();
+		
+		// the screenshots that are already in the database are searched before any update is batched, as each select sends the pending batches
+		Map<IDiagramModel, String> screenshotChecksums = new HashMap<IDiagramModel, String>();
+		Map<IDiagramModel, Integer> screenshotVersions = new HashMap<IDiagramModel, Integer>();
+		for ( IDiagramModel view: this.viewsToSnapshot ) {
+			String screenshotChecksum = DBScreenshotCache.getKey(((IDBMetadata)view).getDBMetadata().getCurrentVersion().getChecksum(), scaleFactor, margin);
+			screenshotChecksums.put(view, screenshotChecksum);
+			screenshotVersions.put(view, this.exportConnection.getViewScreenshotVersion(view, screenshotChecksum));
+		}
+		
+		int nbEncoders = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		ExecutorService encoders = Executors.newFixedThreadPool(nbEncoders);
+		
+		// the number of rendered views waiting to be encoded is limited to avoid keeping too many uncompressed images in memory
+		LinkedHashMap<IDiagramModel, Future<byte[]>> screenshots = new LinkedHashMap<IDiagramModel, Future<byte[]>>();
+		try {
+			for ( IDiagramModel view: this.viewsToSnapshot ) {
+				checkCancelled();
+				
+				String screenshotChecksum = screenshotChecksums.get(view);
+				int screenshotVersion = screenshotVersions.get(view);
+				if ( screenshotVersion != 0 ) {
+					this.exportConnection.copyViewScreenshot(view, screenshotChecksum, screenshotVersion);
+					continue;
+				}
+				
+				byte[] cachedScreenshot = cache.get(screenshotChecksum);
+				if ( cachedScreenshot != null ) {
+					this.exportConnection.exportViewScreenshot(view, screenshotChecksum, cachedScreenshot);
+					continue;
+				}
+				
+				final ImageData imageData = this.listener.createImageData(view, scale, margin);
+				screenshots.put(view, encoders.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						return DBGui.createPNG(imageData);
+					}
+				}));
+				
+				if ( screenshots.size() > 2*nbEncoders )
+					exportNextScreenshot(screenshots, screenshotChecksums, cache);
+			}
+			
+			while ( !screenshots.isEmpty() ) {
+				checkCancelled();
+				exportNextScreenshot(screenshots, screenshotChecksums, cache);
+			}
+		} finally {
+			encoders.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Waits for the oldest screenshot to be encoded, stores it in the screenshots cache and exports it
+	 */
+	private void exportNextScreenshot(LinkedHashMap<IDiagramModel, Future<byte[]>> screenshots, Map<IDiagramModel, String> screenshotChecksums, DBScreenshotCache cache) throws Exception {
+		Iterator<Entry<IDiagramModel, Future<byte[]>>> iterator = screenshots.entrySet().iterator();
+		Entry<IDiagramModel, Future<byte[]>> screenshot = iterator.next();
+		iterator.remove();
+		
+		byte[] imageContent;
+		try {
+			imageContent = screenshot.getValue().get();
+		} catch (ExecutionException err) {
+			throw new Exception("Failed to create the screenshot of view \""+screenshot.getKey().getName()+"\"", err.getCause());
+		}
+		
+		if ( imageContent != null ) {
+			String screenshotChecksum = screenshotChecksums.get(screenshot.getKey());
+			cache.put(screenshotChecksum, imageContent);
+			this.exportConnection.exportViewScreenshot(screenshot.getKey(), screenshotChecksum, imageContent);
+		}
+	}
+	
+	/**
+	 * Once the export is committed, copies the exported versions to the initial versions of the model and its components
+	 */
+	public void copyExportedVersionToCurrentVersion() {
+		if ( logger.isDebugEnabled() ) logger.debug("updating current versions from exported versions");
+		
+		this.model.getInitialVersion().setVersion(this.model.getCurrentVersion().getVersion());
+		this.model.getInitialVersion().setChecksum(this.model.getCurrentVersion().getChecksum());
+		this.model.getInitialVersion().setTimestamp(this.model.getCurrentVersion().getTimestamp());
+		
+		Iterator<Map.Entry<String, IArchimateElement>> ite = this.model.getAllElements().entrySet().iterator();
+		while (ite.hasNext()) {
+			DBMetadata dbMetadata = ((IDBMetadata)ite.next().getValue()).getDBMetadata();
+			dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
+			dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
+			dbMetadata.getInitialVersion().setTimestamp(this.model.getCurrentVersion().getTimestamp());
+		}
+		
+		Iterator<Map.Entry<String, IArchimateRelationship>> itr = this.model.getAllRelationships().entrySet().iterator();
+		while (itr.hasNext()) {
+			DBMetadata dbMetadata = ((IDBMetadata)itr.next().getValue()).getDBMetadata();
+			dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
+			dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
+			dbMetadata.getInitialVersion().setTimestamp(this.model.getCurrentVersion().getTimestamp());
+		}
+		
+		Iterator<Map.Entry<String, IFolder>> itf = this.model.getAllFolders().entrySet().iterator();
+		while (itf.hasNext()) {
+			DBMetadata dbMetadata = ((IDBMetadata)itf.next().getValue()).getDBMetadata();
+			dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
+			dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
+			dbMetadata.getInitialVersion().setTimestamp(this.model.getCurrentVersion().getTimestamp());
+		}
+		
+		Iterator<Map.Entry<String, IDiagramModel>> itv = this.model.getAllViews().entrySet().iterator();
+		while (itv.hasNext()) {
+			DBMetadata dbMetadata = ((IDBMetadata)itv.next().getValue()).getDBMetadata();
+			dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
+			dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
+			dbMetadata.getInitialVersion().setTimestamp(this.model.getCurrentVersion().getTimestamp());
+		}
+		
+		Iterator<Map.Entry<String, IDiagramModelObject>> ito = this.model.getAllViewObjects().entrySet().iterator();
+		while (ito.hasNext()) {
+			DBMetadata dbMetadata = ((IDBMetadata)ito.next().getValue()).getDBMetadata();
+			dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
+			dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
+		}
+		
+		Iterator<Map.Entry<String, IDiagramModelConnection>> itc = this.model.getAllViewConnections().entrySet().iterator();
+		while (itc.hasNext()) {
+			DBMetadata dbMetadata = ((IDBMetadata)itc.next().getValue()).getDBMetadata();
+			dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
+			dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
+		}
+	}
+	
+	/**
+	 * Runs a model update through the listener, and throws back the exception raised by the update if any
+	 */
+	private void runInModelThread(final ModelUpdate update) throws Exception {
+		final Exception[] error = new Exception[1];
+		
+		this.listener.runInModelThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					update.run();
+				} catch (Exception err) {
+					error[0] = err;
+				}
+			}
+		});
+		
+		if ( error[0] != null )
+			throw error[0];
+	}
+	
+	/**
+	 * Throws an exception if the export has been cancelled
+	 */
+	private void checkCancelled() throws Exception {
+		if ( this.cancelled )
+			throw new Exception("The export has been cancelled.");
+	}
+}
@@ -16,11 +16,13 @@ import java.nio.file.Paths;
 import java.text.Collator;
 import org.apache.log4j.Level;
 import org.archicontribs.database.GUI.DBGui;
+import org.archicontribs.database.connection.DBDatabaseConnectionPool;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.eclipse.ui.preferences.ScopedPreferenceStore;
+import org.osgi.framework.BundleContext;
 
 
 /**
@@ -281,8 +283,10 @@ public class DBPlugin extends AbstractUIPlugin {
 		preferenceStore.setDefault("closeIfSuccessful",       false);
 		preferenceStore.setDefault("showZeroValues",          true);
 		preferenceStore.setDefault("compareBeforeExport",     true);
+		preferenceStore.setDefault("membershipIntervals",     false);
 		preferenceStore.setDefault("deleteIfImportError",     true);
 		preferenceStore.setDefault("importShared",            false);
+		preferenceStore.setDefault("lazyImageLoading",        false);
 		preferenceStore.setDefault("removeDirtyFlag",         false);
 		preferenceStore.setDefault("showIdInContextMenu",     false);
 		preferenceStore.setDefault("traceSQL",                true);
@@ -359,6 +363,15 @@ public class DBPlugin extends AbstractUIPlugin {
 		}
 	}
 
+	/**
+	 * Called when Archi stops: the connections kept in the connection pools are closed
+	 */
+	@Override
+	public void stop(BundleContext context) throws Exception {
+		DBDatabaseConnectionPool.closeAll();
+		super.stop(context);
+	}
+
 	@Override
 	public IPreferenceStore getPreferenceStore() {
 		if (preferenceStore == null) {
@@ -1,23 +1,36 @@
 package org.archicontribs.database;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
+import org.archicontribs.database.GUI.DBGui;
 import org.archicontribs.database.connection.DBDatabaseConnection;
+import org.archicontribs.database.connection.DBDatabaseExportConnection;
 import org.archicontribs.database.connection.DBDatabaseImportConnection;
+import org.archicontribs.database.data.DBDatabase;
 import org.archicontribs.database.model.DBArchimateModel;
-import org.archicontribs.database.model.IDBMetadata;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.gef.commands.CommandStack;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Display;
 
 import com.archimatetool.editor.model.IEditorModelManager;
 import com.archimatetool.model.IArchimateFactory;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IIdentifier;
 
 public class DBScript {
     private static final DBLogger logger = new DBLogger(DBDatabaseConnection.class);
 
-    public static IArchimateModel importModel(String modelName, String databaseName, boolean force) throws Exception {
-
+    /**
+     * Gets a database from the preferences by its name
+     */
+    private static DBDatabaseEntry getDatabaseEntry(String databaseName) throws Exception {
         // we get the databases list from the preferences
         List<DBDatabaseEntry> databaseEntries = DBDatabaseEntry.getAllDatabasesFromPreferenceStore(true);
         if ( (databaseEntries == null) || (databaseEntries.size() == 0) )
@@ -37,6 +50,12 @@ public class DBScript {
         if ( databaseEntry == null )
             throw new RuntimeException("Cannot find database \""+databaseName+"\"");
         
+        return databaseEntry;
+    }
+
+    public static IArchimateModel importModel(String modelName, String databaseName, boolean force) throws Exception {
+        DBDatabaseEntry databaseEntry = getDatabaseEntry(databaseName);
+        
         // we connect to the database
         try ( DBDatabaseImportConnection connection = new DBDatabaseImportConnection(databaseEntry) ) {
 	        // we check if we are connected to the database
@@ -63,6 +82,9 @@ public class DBScript {
 	        modelToImport.setId(modelId);
 	        modelToImport.setName(modelName);
 	        
+	        boolean lazyImageLoading = DBPlugin.INSTANCE.getPreferenceStore().getBoolean("lazyImageLoading");
+	        Map<String, String> imageChecksums = new LinkedHashMap<String, String>();
+	        
 	        try {
 	            connection.importModel(modelToImport);
 	        
@@ -94,27 +116,29 @@ public class DBScript {
 	            }
 	            
 	            if ( logger.isDebugEnabled() ) logger.debug("Importing the views objects ...");
-	            for (IDiagramModel view: modelToImport.getAllViews().values()) {
-	                connection.prepareImportViewsObjects(view.getId(), ((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion());
-	                while ( connection.importViewsObjects(modelToImport, view) ) {
-	                    // each loop imports a view object
-	                }
+	            connection.prepareImportViewsObjects(modelToImport);
+	            while ( connection.importViewsObjects(modelToImport) ) {
+	                // each loop imports a view object
 	            }
 	            
 	            if ( logger.isDebugEnabled() ) logger.debug("Importing the views connections ...");
-	            for (IDiagramModel view: modelToImport.getAllViews().values()) {
-	                connection.prepareImportViewsConnections(view.getId(), ((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion());
-	                while ( connection.importViewsConnections(modelToImport) ) {
-	                    // each loop imports a view connection
-	                }
+	            connection.prepareImportViewsConnections(modelToImport);
+	            while ( connection.importViewsConnections(modelToImport) ) {
+	                // each loop imports a view connection
 	            }
 	            
 	            modelToImport.resolveSourceConnections();
 	            modelToImport.resolveTargetConnections();
 	    
 	            if ( logger.isDebugEnabled() ) logger.debug("importing the images ...");
-	            for (String path: connection.getAllImagePaths())
-	                connection.importImage(modelToImport, path);
+	            if ( lazyImageLoading ) {
+	                // the lazy archive manager can be set only once the model has been registered
+	                for (String path: connection.getAllImagePaths())
+	                    imageChecksums.put(path, connection.getImageChecksumFromDatabase(path));
+	            } else {
+	                for (String path: connection.getAllImagePaths())
+	                    connection.importImage(modelToImport, path);
+	            }
 	        } catch ( Exception e) {
 	            // in case of an import error, we remove the newly created model, except if we are in force mode
 	            if ( !force ) {
@@ -129,7 +153,79 @@ public class DBScript {
 	        // we add the new model in the manager
 	        IEditorModelManager.INSTANCE.registerModel(modelToImport);
 	        
+	        for ( Entry<String, String> image: imageChecksums.entrySet() )
+	            connection.importLazyImage(modelToImport, image.getKey(), image.getValue());
+	        
 	        return modelToImport;
         }
     }
+    
+    /**
+     * Exports a model into a database, using the same export engine as the graphical interface<br>
+     * <br>
+     * The export is cancelled if some components conflict with a newer version in the database as the conflicts cannot be resolved without the graphical interface.
+     */
+    public static void exportModel(IArchimateModel model, String databaseName, String releaseNote) throws Exception {
+        DBDatabaseEntry databaseEntry = getDatabaseEntry(databaseName);
+        DBArchimateModel modelToExport = (DBArchimateModel)model;
+        
+        // we calculate the checksum of all the model components
+        modelToExport.countAllObjects();
+        
+        DBExportEngine exportEngine;
+        
+        // we connect to the database
+        try ( DBDatabaseExportConnection connection = new DBDatabaseExportConnection(databaseEntry) ) {
+	        // we check if we are connected to the database
+	        if ( !connection.isConnected() )
+	            throw new RuntimeException("Cannot connect to the database \""+databaseName+"\"");
+	        
+	        // we get the versions of the model in the database
+	        if ( !DBPlugin.areEqual(databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) )
+	        	connection.getModelVersionsFromDatabase(modelToExport);
+	        
+	        final List<String> conflicts = new ArrayList<String>();
+	        exportEngine = new DBExportEngine(modelToExport, connection, new IDBExportListener() {
+	        	@Override
+	        	public void runInModelThread(Runnable runnable) {
+	        		Display.getDefault().syncExec(runnable);
+	        	}
+	        	
+	        	@Override
+	        	public ImageData createImageData(final IDiagramModel view, final double scale, final int margin) {
+	        		final ImageData[] imageData = new ImageData[1];
+	        		Display.getDefault().syncExec(new Runnable() {
+	        			@Override
+	        			public void run() {
+	        				imageData[0] = DBGui.createViewImageData(view, scale, margin);
+	        			}
+	        		});
+	        		return imageData[0];
+	        	}
+	        	
+	        	@Override
+	        	public void conflictDetected(EObject eObject) {
+	        		conflicts.add(((IIdentifier)eObject).getId());
+	        	}
+	        }, releaseNote);
+	        
+	        try {
+	        	if ( exportEngine.export() != 0 )
+	        		throw new RuntimeException("Cannot export model \""+model.getName()+"\" as "+conflicts.size()+" component(s) conflict with newer versions in the database: "+conflicts);
+	        	
+	        	connection.commit();
+	        	connection.setAutoCommit(true);
+	        } catch (Exception err) {
+	        	try {
+	        		connection.rollback();
+	        	} catch (SQLException err2) {
+	        		logger.error("Failed to rollback the transaction.", err2);
+	        	}
+	        	throw err;
+	        }
+        }
+        
+        // Once the export is finished, we copy the exportedVersion to the currentVersion
+        exportEngine.copyExportedVersionToCurrentVersion();
+    }
 }
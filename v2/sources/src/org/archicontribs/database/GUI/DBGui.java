@@ -103,6 +103,13 @@ public class DBGui {
 	
 	private boolean hasBeenClosed = false;
 	
+	/**
+	 * Thread that runs the export or the import in the background, if any<br>
+	 * The database connection must not be closed while this thread is still using it.
+	 */
+	private Thread backgroundThread = null;
+	private boolean closing = false;
+	
 	protected List<DBDatabaseEntry> databaseEntries;
 	protected DBDatabaseEntry selectedDatabase;
 	private DBDatabaseImportConnection connection;
@@ -587,6 +594,14 @@ public class DBGui {
 		this.selectedDatabase = this.databaseEntries.get(this.comboDatabases.getSelectionIndex());
 		if ( logger.isDebugEnabled() ) logger.debug("selected database = " + this.selectedDatabase.getName()+" ("+this.selectedDatabase.getDriver()+", "+this.selectedDatabase.getServer()+", "+this.selectedDatabase.getPort()+", "+this.selectedDatabase.getDatabase()+", "+this.selectedDatabase.getUsername()+", "+this.selectedDatabase.getPassword()+")");
 		
+			// we release the connection to the previously selected database
+		if ( this.connection != null ) {
+			try {
+				this.connection.close();
+			} catch (SQLException e) { logger.error("Failed to close database connection", e); }
+			this.connection = null;
+		}
+		
 			// then we connect to the database.
 		try {
 			this.connection = new DBDatabaseImportConnection(this.selectedDatabase);
@@ -1077,10 +1092,53 @@ public class DBGui {
 		refreshDisplay();
 	}
 	
+	/**
+	 * Sets the progressBar selection without refreshing the display<br>
+	 * This method must be called in the SWT thread.
+	 */
+	protected void setProgressBarValue(int value) {
+		this.progressBar.setSelection(value);
+	}
+	
+	/**
+	 * Registers the thread that runs the export or the import in the background<br>
+	 * When the dialog is closed, the thread is cancelled and its end is awaited before the database connection is closed.
+	 */
+	protected void setBackgroundThread(Thread thread) {
+		this.backgroundThread = thread;
+	}
+	
+	/**
+	 * Asks the background thread to stop<br>
+	 * This method is called in the SWT thread when the dialog is closed while the background thread is still running.
+	 */
+	protected void cancelBackgroundThread() {
+		// to be overriden
+	}
+	
 	/**
 	 * Method used to close graphical objects if needed
 	 */
 	public void close() {
+		if ( (this.dialog == null) || this.closing )
+			return;			// the dialog has already been closed, or is waiting for the background thread to stop
+		this.closing = true;
+		
+		// the background thread must be finished before the database connection is closed or released to the connection pool
+		Thread thread = this.backgroundThread;
+		this.backgroundThread = null;
+		if ( (thread != null) && thread.isAlive() ) {
+			if ( logger.isDebugEnabled() ) logger.debug("Waiting for the "+thread.getName()+" thread to stop");
+			setMessage("Cancelling ...");
+			cancelBackgroundThread();
+			
+			// we keep on dispatching the SWT events as the background thread may need the SWT thread to stop
+			while ( thread.isAlive() ) {
+				if ( !display.readAndDispatch() )
+					display.sleep();
+			}
+		}
+		
 		this.dialog.dispose();
 		this.dialog = null;
 		
@@ -1347,20 +1405,43 @@ public class DBGui {
 		refreshDisplay();
     }
     
-    public byte[] createImage(IDiagramModel view, double scale, int margin) {
-    	byte[] imageContent = null;
-    	
+    public ImageData createImageData(IDiagramModel view, double scale, int margin) {
     	setMessage("Creating screenshot of view \""+view.getName()+"\"");
+    	
+    	ImageData imageData = createViewImageData(view, scale, margin);
+		
+		closeMessage();
+		
+		return imageData;
+    }
+    
+    /**
+     * Renders the screenshot of a view<br>
+     * This method must be called in the SWT thread, but the returned data does not depend on any graphical resource so it can be encoded by {@link #createPNG(ImageData)} in any thread.
+     */
+    public static ImageData createViewImageData(IDiagramModel view, double scale, int margin) {
+		Image image = DiagramUtils.createImage(view, scale, margin);
+		try {
+			return image.getImageData(ImageFactory.getDeviceZoom());
+		} finally {
+			image.dispose();
+		}
+    }
+    
+    /**
+     * Encodes a rendered screenshot in PNG format<br>
+     * This method can be called from any thread.
+     */
+    public static byte[] createPNG(ImageData imageData) {
+    	byte[] imageContent = null;
 
 		try ( ByteArrayOutputStream out = new ByteArrayOutputStream() ) {
 			try ( DataOutputStream writeOut = new DataOutputStream(out) ) {
 				ImageLoader saver = new ImageLoader();
-				Image image = DiagramUtils.createImage(view, scale, margin);
 				
-				saver.data = new ImageData[] { image.getImageData(ImageFactory.getDeviceZoom()) };
+				saver.data = new ImageData[] { imageData };
 				saver.save(writeOut, SWT.IMAGE_PNG);
 	            
-				image.dispose();
 				imageContent = out.toByteArray();
 			} catch (IOException err) {
 				logger.error("Failed to close DataOutputStream", err);
@@ -1369,8 +1450,6 @@ public class DBGui {
 			logger.error("Failed to close ByteArrayOutputStream", err);
 		}
 		
-		closeMessage();
-		
 		return imageContent;
     }
 	
@@ -6,8 +6,6 @@
 
 package org.archicontribs.database.GUI;
 
-import java.io.UnsupportedEncodingException;
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
@@ -15,32 +13,28 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.log4j.Level;
+import org.archicontribs.database.DBExportEngine;
 import org.archicontribs.database.DBLogger;
 import org.archicontribs.database.DBPlugin;
+import org.archicontribs.database.IDBExportListener;
 import org.archicontribs.database.connection.DBDatabaseExportConnection;
-import org.archicontribs.database.connection.DBDatabaseImportConnection;
-import org.archicontribs.database.data.DBChecksum;
 import org.archicontribs.database.model.DBArchimateModel;
 import org.archicontribs.database.model.DBMetadata;
 import org.archicontribs.database.model.IDBMetadata;
 import org.archicontribs.database.model.DBMetadata.CONFLICT_CHOICE;
-import org.archicontribs.database.model.commands.DBDeleteDiagramConnectionCommand;
-import org.archicontribs.database.model.commands.DBDeleteDiagramObjectCommand;
-import org.archicontribs.database.model.commands.DBImportElementFromIdCommand;
-import org.archicontribs.database.model.commands.DBImportRelationshipFromIdCommand;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.gef.commands.CommandStack;
-import org.eclipse.gef.commands.CompoundCommand;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
@@ -53,15 +47,9 @@ import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeColumn;
 
 import com.archimatetool.editor.model.IArchiveManager;
-import com.archimatetool.editor.model.commands.DeleteArchimateElementCommand;
-import com.archimatetool.editor.model.commands.DeleteArchimateRelationshipCommand;
-import com.archimatetool.editor.model.commands.DeleteDiagramModelCommand;
-import com.archimatetool.editor.model.commands.DeleteFolderCommand;
 import com.archimatetool.model.IArchimateElement;
 import com.archimatetool.model.IArchimateRelationship;
 import com.archimatetool.model.IDiagramModel;
-import com.archimatetool.model.IDiagramModelArchimateConnection;
-import com.archimatetool.model.IDiagramModelArchimateObject;
 import com.archimatetool.model.IDiagramModelConnection;
 import com.archimatetool.model.IDiagramModelObject;
 import com.archimatetool.model.IFolder;
@@ -83,9 +71,13 @@ public class DBGuiExportModel extends DBGui {
 	
 	HashMap<String, DBMetadata> newDatabaseComponents;
 	
-	private CompoundCommand exportCommands;
 	DBDatabaseExportConnection exportConnection;
 	
+	/**
+	 * Export engine that is currently exporting the model in the background
+	 */
+	private DBExportEngine runningExportEngine = null;
+	
 	/**
 	 * Creates the GUI to export components and model
 	 */
@@ -1111,13 +1103,8 @@ public class DBGuiExportModel extends DBGui {
         try {
             this.exportConnection.getModelVersionsFromDatabase(this.exportedModel);
             this.exportConnection.getVersionsFromDatabase(this.exportedModel);
-            if ( this.selectedDatabase.isWholeModelExported() ) {
-                Iterator<Entry<String, IDiagramModel>> viewsIterator = this.exportedModel.getAllViews().entrySet().iterator();
-                while ( viewsIterator.hasNext() ) {
-                    IDiagramModel view = viewsIterator.next().getValue();
-                    this.exportConnection.getViewObjectsAndConnectionsVersionsFromDatabase(this.exportedModel, view);
-                }
-            }
+            if ( this.selectedDatabase.isWholeModelExported() )
+                this.exportConnection.getViewObjectsAndConnectionsVersionsFromDatabase(this.exportedModel);
         } catch (SQLException err ) {
             popup(Level.FATAL, "Failed to get latest version of components in the database.", err);
             setActiveAction(STATUS.Error);
@@ -1475,7 +1462,7 @@ public class DBGuiExportModel extends DBGui {
 	}
 
 	/**
-	 * Loop on model components and call doExportEObject to export them<br>
+	 * Exports the model components in a separate thread using the DBExportEngine<br>
 	 * <br>
 	 * This method is called when the user clicks on the "Export" button
 	 */
@@ -1521,28 +1508,8 @@ public class DBGuiExportModel extends DBGui {
 		createProgressBar("Exporting components ...", 0, progressBarWidth);
 		createGrpConflict();
 		
-		// we calculate the new model checksum
-		try {
-            this.exportedModel.getCurrentVersion().setChecksum(DBChecksum.calculateChecksum(this.exportedModel, this.txtReleaseNote.getText()));
-        } catch (NoSuchAlgorithmException | UnsupportedEncodingException err) {
-            popup(Level.FATAL, "Failed to calculate the model's checksum.", err);
-            setActiveAction(STATUS.Error);
-            doShowResult(STATUS.Error, "Failed to calculate the model's checksum.\n"+err.getMessage());
-            return;
-        }
-
-		// then, we start a new database transaction
-		try {
-		    this.exportConnection.setAutoCommit(false);
-		} catch (SQLException err ) {
-			popup(Level.FATAL, "Failed to create a transaction in the database.", err);
-			setActiveAction(STATUS.Error);
-			doShowResult(STATUS.Error, "Error while exporting model.\n"+err.getMessage());
-			return;
-		}
-		
 		if ( !DBPlugin.areEqual(this.selectedDatabase.getDriver().toLowerCase(), "neo4j") ) {
-			// we reset the counters as they will be updated by the doExportEObject method
+			// we reset the counters as they will be updated by the export engine
 		    // we do not reset the text fields DeletedInModel
 		    this.txtNewElementsInModel.setText(toString(0));         this.txtUpdatedElementsInModel.setText(toString(0));         this.txtNewElementsInDatabase.setText(toString(0));          this.txtUpdatedElementsInDatabase.setText(toString(0));          this.txtDeletedElementsInDatabase.setText(toString(0));        this.txtConflictingElements.setText(toString(0));
 	        this.txtNewRelationshipsInModel.setText(toString(0));    this.txtDeletedRelationshipsInModel.setText(toString(0));    this.txtNewRelationshipsInDatabase.setText(toString(0));     this.txtUpdatedRelationshipsInDatabase.setText(toString(0));     this.txtDeletedRelationshipsInDatabase.setText(toString(0));   this.txtConflictingRelationships.setText(toString(0));
@@ -1551,267 +1518,99 @@ public class DBGuiExportModel extends DBGui {
 	        this.txtNewViewObjectsInModel.setText(toString(0));      this.txtUpdatedViewObjectsInModel.setText(toString(0));      this.txtNewViewObjectsInDatabase.setText(toString(0));       this.txtUpdatedViewObjectsInDatabase.setText(toString(0));       this.txtDeletedViewObjectsInDatabase.setText(toString(0));     this.txtConflictingViewObjects.setText(toString(0));
 	        this.txtNewViewConnectionsInModel.setText(toString(0));  this.txtUpdatedViewConnectionsInModel.setText(toString(0));  this.txtNewViewConnectionsInDatabase.setText(toString(0));   this.txtUpdatedViewConnectionsInDatabase.setText(toString(0));   this.txtDeletedViewConnectionsInDatabase.setText(toString(0)); this.txtConflictingViewConnections.setText(toString(0));
 	        this.txtNewImagesInModel.setText(toString(0));			 this.txtNewImagesInDatabase.setText(toString(0));
-	
-			
-			try {
-				// we need to recalculate the latest versions in the database in case someone updated the database since the last check
-				setMessage("Comparing model from the database...");
-				this.exportConnection.getVersionsFromDatabase(this.exportedModel);
-	        	 if ( this.selectedDatabase.isWholeModelExported() ) {
-	        		 Iterator<Entry<String, IDiagramModel>> viewsIterator = this.exportedModel.getAllViews().entrySet().iterator();
-	                 while ( viewsIterator.hasNext() ) {
-	                     IDiagramModel view = viewsIterator.next().getValue();
-	                     this.exportConnection.getViewObjectsAndConnectionsVersionsFromDatabase(this.exportedModel, view);
-	                 }
-	        	 }
-				closeMessage();
-			} catch (SQLException err ) {
-				closeMessage();
-				popup(Level.FATAL, "Failed to get latest version of components in the database.", err);
-				setActiveAction(STATUS.Error);
-				doShowResult(STATUS.Error, "Error while exporting model.\n"+err.getMessage());
-				return;
-			}
 		}
 		
-		// we initialize the delayedCommand used to allow rollback of elements and relationships deletion
-		// it is delayed because we want to delete the elements and relationships after they've been exported (as the getAllElements and getAllRelationships cannot be changed during the export loop)
-		this.exportCommands = new CompoundCommand();
+		// We update the model name and purpose in case they've been changed in the export windows
+		if ( !DBPlugin.areEqual(this.exportedModel.getName(), this.txtModelName.getText()) )
+			this.exportedModel.setName(this.txtModelName.getText());
+		
+		if ( !DBPlugin.areEqual(this.exportedModel.getPurpose(), this.txtPurpose.getText()) )
+			this.exportedModel.setPurpose(this.txtPurpose.getText());
+		
+		// we export the model in a separate thread, the display being refreshed periodically with the export progress
+		final DBExportEngine exportEngine = new DBExportEngine(this.exportedModel, this.exportConnection, new ExportListener(), this.txtReleaseNote.getText());
+		final ExportModelThread exportThread = new ExportModelThread(exportEngine);
+		this.runningExportEngine = exportEngine;
+		setBackgroundThread(exportThread);
+		final Display display = Display.getCurrent();
+		final int[] initialTotals = getInitialTotals();
 		
-		// we export the components
-		try ( DBDatabaseImportConnection importConnection = new DBDatabaseImportConnection(this.exportConnection) ) {
-			// if we need to save the whole model (i.e. not only the elements and the relationships) 
-
-		    // We update the model name and purpose in case they've been changed in the export windows
-		    if ( !DBPlugin.areEqual(this.exportedModel.getName(), this.txtModelName.getText()) )
-		        this.exportedModel.setName(this.txtModelName.getText());
-
-		    if ( !DBPlugin.areEqual(this.exportedModel.getPurpose(), this.txtPurpose.getText()) )
-		        this.exportedModel.setPurpose(this.txtPurpose.getText());
-
-		    if ( DBPlugin.areEqual(this.selectedDatabase.getDriver().toLowerCase(), "neo4j") && this.selectedDatabase.shouldEmptyNeo4jDB() ) {
-		        this.exportConnection.emptyNeo4jDB();
-		    }
-		    
-	        if ( this.selectedDatabase.isWholeModelExported() ) {
-	            this.exportConnection.exportModel(this.exportedModel, this.txtReleaseNote.getText());
+		Runnable progressRefresher = new Runnable() {
+			@Override
+			public void run() {
+				if ( !exportThread.isAlive() )
+					return;
 				
-				//TODO : put the imported components in a compound Command to allow rollback
-				//TODO :
-				//TODO :
-				// we import the folders BEFORE the elements, relationships and views because they must exist when the elements, relationships and views are imported
-				logger.info("Importing new folders ...");
-				for (String id : this.exportConnection.getFoldersNotInModel().keySet() ) {
-                    if ( logger.isDebugEnabled() ) logger.debug("The folder id "+id+" has been created in the database. We import it in the model.");
-				    DBMetadata versionToImport = this.exportConnection.getFoldersNotInModel().get(id);
-                    importConnection.importFolderFromId(this.exportedModel, id, versionToImport.getLatestDatabaseVersion().getVersion());
-                    incrementText(this.txtNewFoldersInDatabase);
-                    incrementText(this.txtTotalFolders);
+				if ( isDisposed() ) {
+					exportEngine.cancel();
+					return;
 				}
-			}
-	
-			//TODO : put the imported components in a compound Command to allow rollback
-			//TODO :
-			//TODO :
-			logger.info("Importing new elements ...");
-			for (String id : this.exportConnection.getElementsNotInModel().keySet() ) {
-			    if ( logger.isDebugEnabled() ) logger.debug("The element id "+id+" has been created in the database. We import it in the model.");
-			    DBMetadata versionToImport = this.exportConnection.getElementsNotInModel().get(id);
-	        	this.exportCommands.add(new DBImportElementFromIdCommand(importConnection, this.exportedModel, id, versionToImport.getLatestDatabaseVersion().getVersion()));
-	        	this.exportCommands.execute();
-	        	incrementText(this.txtNewElementsInDatabase);
-	        	incrementText(this.txtTotalElements);
-			}
-			
-            if ( !this.exportCommands.getCommands().isEmpty() ) {
-                CommandStack stack = (CommandStack) this.exportedModel.getAdapter(CommandStack.class);
-                stack.execute(this.exportCommands);
-            }
-
-			//TODO : put the imported components in a compound Command to allow rollback
-			//TODO :
-			//TODO :
-			logger.info("Importing new relationships ...");
-	        for (String id : this.exportConnection.getRelationshipsNotInModel().keySet() ) {
-	            if ( logger.isDebugEnabled() ) logger.debug("The relationship id "+id+" has been created in the database. We import it in the model.");
-	            DBMetadata versionToImport = this.exportConnection.getRelationshipsNotInModel().get(id);
-	            this.exportCommands.add(new DBImportRelationshipFromIdCommand(importConnection, this.exportedModel, id, versionToImport.getLatestDatabaseVersion().getVersion()));
-	            this.exportCommands.execute();
-	        	incrementText(this.txtNewRelationshipsInDatabase);
-	        	incrementText(this.txtTotalRelationships);
-	        }
-	        this.exportedModel.resolveSourceRelationships();
-	        this.exportedModel.resolveTargetRelationships();
-	        
-            if ( !this.exportCommands.isEmpty() ) {
-                CommandStack stack = (CommandStack) this.exportedModel.getAdapter(CommandStack.class);
-                stack.execute(this.exportCommands);
-            }
-	
-			if ( this.selectedDatabase.isWholeModelExported() ) {
-                //TODO : put the imported components in a compound Command to allow rollback
-                //TODO :
-                //TODO :
-			    logger.info("Importing new views ...");
-			    for (String id : this.exportConnection.getViewsNotInModel().keySet() ) {
-			        if ( logger.isDebugEnabled() ) logger.debug("The view id "+id+" has been created in the database. We import it in the model.");
-			        DBMetadata versionToImport = this.exportConnection.getViewsNotInModel().get(id);
-			        importConnection.importViewFromId(this.exportedModel, id, versionToImport.getLatestDatabaseVersion().getVersion(), false, false);
-			        incrementText(this.txtNewViewsInDatabase);
-			        incrementText(this.txtTotalViews);
-			    }
-
-				//TODO : put the imported components in a compound Command to allow rollback
-				//TODO :
-				//TODO :
-				logger.info("Importing new views objects ...");
-		        for (String id : this.exportConnection.getViewObjectsNotInModel().keySet() ) {
-		            if ( logger.isDebugEnabled() ) logger.debug("The view object id "+id+" has been created in the database. We import it in the model.");
-		            DBMetadata versionToImport = this.exportConnection.getViewObjectsNotInModel().get(id);
-		        	importConnection.importViewObjectFromId(this.exportedModel, id, versionToImport.getLatestDatabaseVersion().getVersion(), false);
-		        	incrementText(this.txtNewViewObjectsInDatabase);
-		        	incrementText(this.txtTotalViewObjects);
-		        }
 				
-                //TODO : put the imported components in a compound Command to allow rollback
-                //TODO :
-                //TODO :
-                logger.info("Importing new views connections ...");
-                for (String id : this.exportConnection.getViewConnectionsNotInModel().keySet() ) {
-                    if ( logger.isDebugEnabled() ) logger.debug("The view connection id "+id+" has been created in the database. We import it in the model.");
-                    DBMetadata versionToImport = this.exportConnection.getViewConnectionsNotInModel().get(id);
-                    importConnection.importViewConnectionFromId(this.exportedModel, id, versionToImport.getLatestDatabaseVersion().getVersion(), false);
-                    incrementText(this.txtNewViewConnectionsInDatabase);
-                    incrementText(this.txtTotalViewConnections);
-                }
-	            this.exportedModel.resolveSourceConnections();
-	            this.exportedModel.resolveTargetConnections();
-	            
-	            logger.info("Applying changes to the model ...");
-                if ( !this.exportCommands.isEmpty() ) {
-                    CommandStack stack = (CommandStack) this.exportedModel.getAdapter(CommandStack.class);
-                    stack.execute(this.exportCommands);
-                }
-			}
-			
-			logger.info("Checking if components have been moved to new folder ...");
-			importConnection.setFolderToLastKnown(this.exportedModel);
-                
-			logger.info("Exporting elements ...");
-			Iterator<Entry<String, IArchimateElement>> elementsIterator = this.exportedModel.getAllElements().entrySet().iterator();
-			while ( elementsIterator.hasNext() ) {
-				IArchimateElement element = elementsIterator.next().getValue();
-			    //importConnection.setFolderToLastKnown(this.exportedModel, element);
-			    doExportEObject(element);
+				refreshExportProgress(exportEngine, initialTotals);
+				display.timerExec(progressRefreshInterval, this);
 			}
-
-			logger.info("Exporting relationships ...");
-			Iterator<Entry<String, IArchimateRelationship>> relationshipsIterator = this.exportedModel.getAllRelationships().entrySet().iterator();
-			while ( relationshipsIterator.hasNext() ) {
-				IArchimateRelationship relationship = relationshipsIterator.next().getValue();
-			    //importConnection.setFolderToLastKnown(this.exportedModel, relationship);
-			    doExportEObject(relationship);
+		};
+		
+		exportThread.start();
+		display.timerExec(progressRefreshInterval, progressRefresher);
+		while ( exportThread.isAlive() ) {
+			if ( !display.readAndDispatch() )
+				display.sleep();
+		}
+		
+		setBackgroundThread(null);
+		this.runningExportEngine = null;
+		
+		if ( hasBeenClosed() ) {
+			// the database connection has been closed once the export thread stopped, so the transaction has been rolled back
+			popup(Level.WARN, "The export has been cancelled.");
+			return;
+		}
+		
+		if ( exportThread.error != null ) {
+			Exception err = exportThread.error;
+			refreshExportProgress(exportEngine, initialTotals);
+			setActiveAction(STATUS.Error);
+			SQLException SQLError = null;
+			try  {
+				this.exportConnection.rollback();
+				doShowResult(STATUS.Error, "Error while exporting model.\n"+err.getMessage());
+				popup(Level.FATAL, "An error occurred while exporting the components.\n\nThe transaction has been rolled back to leave the database in a coherent state. You may solve the issue and export again your components.", err);
+			} catch (SQLException err2) {
+				SQLError = err2;
 			}
-			
-			if ( this.selectedDatabase.isWholeModelExported() ) {
-                logger.info("Exporting views ...");
-                Iterator<Entry<String, IDiagramModel>> viewsIterator = this.exportedModel.getAllViews().entrySet().iterator();
-                while ( viewsIterator.hasNext() ) {
-                    IDiagramModel view = viewsIterator.next().getValue();
-                    // if the checksum of the view has been changed by imported, updated or deleted components, then we recalculate its checksum
-    			    //importConnection.setFolderToLastKnown(this.exportedModel, view);
-                    if ( !((IDBMetadata)view).getDBMetadata().isChecksumValid() ) {
-                    	this.exportedModel.countObject(view, true, view);
-                    	this.exportConnection.getViewObjectsAndConnectionsVersionsFromDatabase(this.exportedModel, view);
-                    }
-                    
-                    ((IDBMetadata)view).getDBMetadata().setHasBeenExported(doExportEObject(view));
-                }
-                
-                logger.info("Exporting view objects ...");
-	            Iterator<Entry<String, IDiagramModelObject>> viewObjectsIterator = this.exportedModel.getAllViewObjects().entrySet().iterator();
-	            while ( viewObjectsIterator.hasNext() ) {
-	                IDiagramModelObject viewObject = viewObjectsIterator.next().getValue();
-	        		// we do not export the view object if its parent view has not been exported
-	        		if ( ((IDBMetadata)viewObject.getDiagramModel()).getDBMetadata().isHasBeenExported() )
-	        			doExportEObject(viewObject);
-	            }
-	            
-				logger.info("Exporting view connections ...");
-				Iterator<Entry<String, IDiagramModelConnection>> viewConnectionsIterator = this.exportedModel.getAllViewConnections().entrySet().iterator();
-				while ( viewConnectionsIterator.hasNext() ) {
-					IDiagramModelConnection viewConnection = viewConnectionsIterator.next().getValue();
-	        		// we do not export the view connection if its parent view has not been exported
-	        		if ( ((IDBMetadata)viewConnection.getDiagramModel()).getDBMetadata().isHasBeenExported() )
-	        			doExportEObject(viewConnection);
-				}
-				
-                logger.info("Exporting folders ...");
-                Iterator<Entry<String, IFolder>> foldersIterator = this.exportedModel.getAllFolders().entrySet().iterator();
-                while ( foldersIterator.hasNext() ) {
-                	IFolder folder = foldersIterator.next().getValue();
-                	//importConnection.setFolderToLastKnown(this.exportedModel, folder);
-                    doExportEObject(folder);
-                }
+			if ( SQLError != null ) {
+				doShowResult(STATUS.Error, "Error while exporting model.\n"+err.getMessage());
+				popup(Level.FATAL, "An error occurred while exporting the components.", err);
 				
-				logger.info("Exporting images ...");
-				// no need to use imagesNotInModel as the requested images have been imported at the same time as their view object
-		    	IArchiveManager archiveMgr = (IArchiveManager)this.exportedModel.getAdapter(IArchiveManager.class);
-				for ( String path: this.exportedModel.getAllImagePaths() ) {
-					if ( this.exportConnection.exportImage(path, archiveMgr.getBytesFromEntry(path)) )
-						incrementText(this.txtNewImagesInModel);
-				}
+				doShowResult(STATUS.Error, "Error while exporting model.\n"+SQLError.getMessage());
+				popup(Level.FATAL, "The transaction failed to rollback and the database is left in an unknown state.\n\nPlease check carrefully your database !", SQLError);
 			}
-		} catch (Exception err) {
-            if ( hasBeenClosed() )
-                popup(Level.WARN, "The export has been cancelled.");
-            else {
-    			setActiveAction(STATUS.Error);
-    			SQLException SQLError = null;
-    			try  {
-    			    this.exportConnection.rollback();
-    			    doShowResult(STATUS.Error, "Error while exporting model.\n"+err.getMessage());
-    			    popup(Level.FATAL, "An error occurred while exporting the components.\n\nThe transaction has been rolled back to leave the database in a coherent state. You may solve the issue and export again your components.", err);
-    			} catch (SQLException err2) {
-    			    SQLError = err2;
-    			}
-                if ( SQLError != null ) {
-                    doShowResult(STATUS.Error, "Error while exporting model.\n"+err.getMessage());
-                    popup(Level.FATAL, "An error occurred while exporting the components.", err);
-
-                    doShowResult(STATUS.Error, "Error while exporting model.\n"+SQLError.getMessage());
-                    popup(Level.FATAL, "The transaction failed to rollback and the database is left in an unknown state.\n\nPlease check carrefully your database !", SQLError);
-                }
-            }
-            return;
+			return;
 		}
 		
-		if ( logger.isDebugEnabled() ) logger.debug("Found "+this.tblListConflicts.getItemCount()+" components conflicting with database");
-		if ( this.tblListConflicts.getItemCount() == 0 ) {
+		refreshExportProgress(exportEngine, initialTotals);
+		
+		if ( exportEngine.getCountConflicts() == 0 ) {
 			// the export is successful
 			try  {
 				// we check if something has been really exported				
 				if ( this.selectedDatabase.isWholeModelExported() ) {
-			        if ( toInt(this.txtNewElementsInModel.getText()) == 0 && toInt(this.txtNewRelationshipsInModel.getText()) == 0 && toInt(this.txtNewFoldersInModel.getText()) == 0 && toInt(this.txtNewViewsInModel.getText()) == 0 && toInt(this.txtNewViewObjectsInModel.getText()) == 0 && toInt(this.txtNewViewConnectionsInModel.getText()) == 0 &&
-			        	 toInt(this.txtUpdatedElementsInModel.getText()) == 0 && toInt(this.txtUpdatedRelationshipsInModel.getText()) == 0 && toInt(this.txtUpdatedFoldersInModel.getText()) == 0 && toInt(this.txtUpdatedViewsInModel.getText()) == 0 && toInt(this.txtUpdatedViewObjectsInModel.getText()) == 0 && toInt(this.txtUpdatedViewConnectionsInModel.getText()) == 0 &&
-			        	 toInt(this.txtNewElementsInDatabase.getText()) == 0 && toInt(this.txtNewRelationshipsInDatabase.getText()) == 0 && toInt(this.txtNewFoldersInDatabase.getText()) == 0 && toInt(this.txtNewViewsInDatabase.getText()) == 0 && toInt(this.txtNewViewObjectsInDatabase.getText()) == 0 && toInt(this.txtNewViewConnectionsInDatabase.getText()) == 0 &&
-			        	 toInt(this.txtUpdatedElementsInDatabase.getText()) == 0 && toInt(this.txtUpdatedRelationshipsInDatabase.getText()) == 0 && toInt(this.txtUpdatedFoldersInDatabase.getText()) == 0 && toInt(this.txtUpdatedViewsInDatabase.getText()) == 0 && toInt(this.txtUpdatedViewObjectsInDatabase.getText()) == 0 && toInt(this.txtUpdatedViewConnectionsInDatabase.getText()) == 0 &&
-			        	 toInt(this.txtConflictingElements.getText()) == 0 && toInt(this.txtConflictingRelationships.getText()) == 0 && toInt(this.txtConflictingFolders.getText()) == 0 && toInt(this.txtConflictingViews.getText()) == 0 && toInt(this.txtConflictingViewObjects.getText()) == 0 && toInt(this.txtConflictingViewConnections.getText()) == 0 &&
-			        	 this.exportedModel.getCurrentVersion().getChecksum().equals(this.exportedModel.getInitialVersion().getChecksum()) ) {
+					if ( !exportEngine.hasExportedComponents() && this.exportedModel.getCurrentVersion().getChecksum().equals(this.exportedModel.getInitialVersion().getChecksum()) ) {
 						this.exportConnection.rollback();
-					    this.exportConnection.setAutoCommit(true);
+						this.exportConnection.setAutoCommit(true);
 						setActiveAction(STATUS.Ok);
 						doShowResult(STATUS.Ok, "Nothing has been exported as the database is already up to date.");
 						return;
 					}
 				}
 				
-			    this.exportConnection.commit();
-			    this.exportConnection.setAutoCommit(true);
+				this.exportConnection.commit();
+				this.exportConnection.setAutoCommit(true);
 				setActiveAction(STATUS.Ok);
 				
 				// Once the export is finished, we copy the exportedVersion to the currentVersion
-				copyExportedVersionToCurrentVersion();
+				exportEngine.copyExportedVersionToCurrentVersion();
 				
 				doShowResult(STATUS.Ok, "*** Export successful ***");
 				
@@ -1846,266 +1645,142 @@ public class DBGuiExportModel extends DBGui {
 		}
 	}
 	
-	void copyExportedVersionToCurrentVersion() {
-		if ( logger.isDebugEnabled() ) logger.debug("updating current versions from exported versions");
-		
-	    this.exportedModel.getInitialVersion().setVersion(this.exportedModel.getCurrentVersion().getVersion());
-        this.exportedModel.getInitialVersion().setChecksum(this.exportedModel.getCurrentVersion().getChecksum());
-        this.exportedModel.getInitialVersion().setTimestamp(this.exportedModel.getCurrentVersion().getTimestamp());
-        
-        Iterator<Map.Entry<String, IArchimateElement>> ite = this.exportedModel.getAllElements().entrySet().iterator();
-        while (ite.hasNext()) {
-            DBMetadata dbMetadata = ((IDBMetadata)ite.next().getValue()).getDBMetadata();
-            dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
-            dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
-            dbMetadata.getInitialVersion().setTimestamp(this.exportedModel.getCurrentVersion().getTimestamp());
-        }
-        
-        Iterator<Map.Entry<String, IArchimateRelationship>> itr = this.exportedModel.getAllRelationships().entrySet().iterator();
-        while (itr.hasNext()) {
-            DBMetadata dbMetadata = ((IDBMetadata)itr.next().getValue()).getDBMetadata();
-            dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
-            dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
-            dbMetadata.getInitialVersion().setTimestamp(this.exportedModel.getCurrentVersion().getTimestamp());
-        }
-        
-        Iterator<Map.Entry<String, IFolder>> itf = this.exportedModel.getAllFolders().entrySet().iterator();
-        while (itf.hasNext()) {
-            DBMetadata dbMetadata = ((IDBMetadata)itf.next().getValue()).getDBMetadata();
-            dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
-            dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
-            dbMetadata.getInitialVersion().setTimestamp(this.exportedModel.getCurrentVersion().getTimestamp());
-        }
-        
-        Iterator<Map.Entry<String, IDiagramModel>> itv = this.exportedModel.getAllViews().entrySet().iterator();
-        while (itv.hasNext()) {
-            DBMetadata dbMetadata = ((IDBMetadata)itv.next().getValue()).getDBMetadata();
-            dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
-            dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
-            dbMetadata.getInitialVersion().setTimestamp(this.exportedModel.getCurrentVersion().getTimestamp());
-        }
-        
-        Iterator<Map.Entry<String, IDiagramModelObject>> ito = this.exportedModel.getAllViewObjects().entrySet().iterator();
-        while (ito.hasNext()) {
-            DBMetadata dbMetadata = ((IDBMetadata)ito.next().getValue()).getDBMetadata();
-            dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
-            dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
-        }
-        
-        Iterator<Map.Entry<String, IDiagramModelConnection>> itc = this.exportedModel.getAllViewConnections().entrySet().iterator();
-        while (itc.hasNext()) {
-            DBMetadata dbMetadata = ((IDBMetadata)itc.next().getValue()).getDBMetadata();
-            dbMetadata.getInitialVersion().setVersion(dbMetadata.getCurrentVersion().getVersion());
-            dbMetadata.getInitialVersion().setChecksum(dbMetadata.getCurrentVersion().getChecksum());
-        }
+	/**
+	 * Interval, in milliseconds, between two refreshes of the export progress in the display
+	 */
+	private static final int progressRefreshInterval = 100;
+	
+	/**
+	 * @return the text widgets that show the export engine counters, indexed by DBExportEngine.COMPONENT and DBExportEngine.COUNTER
+	 */
+	private Text[][] getCountersTexts() {
+		return new Text[][] {
+			{this.txtNewElementsInModel,        this.txtUpdatedElementsInModel,        this.txtNewElementsInDatabase,        this.txtUpdatedElementsInDatabase,        this.txtDeletedElementsInDatabase,        this.txtConflictingElements},
+			{this.txtNewRelationshipsInModel,   this.txtUpdatedRelationshipsInModel,   this.txtNewRelationshipsInDatabase,   this.txtUpdatedRelationshipsInDatabase,   this.txtDeletedRelationshipsInDatabase,   this.txtConflictingRelationships},
+			{this.txtNewFoldersInModel,         this.txtUpdatedFoldersInModel,         this.txtNewFoldersInDatabase,         this.txtUpdatedFoldersInDatabase,         this.txtDeletedFoldersInDatabase,         this.txtConflictingFolders},
+			{this.txtNewViewsInModel,           this.txtUpdatedViewsInModel,           this.txtNewViewsInDatabase,           this.txtUpdatedViewsInDatabase,           this.txtDeletedViewsInDatabase,           this.txtConflictingViews},
+			{this.txtNewViewObjectsInModel,     this.txtUpdatedViewObjectsInModel,     this.txtNewViewObjectsInDatabase,     this.txtUpdatedViewObjectsInDatabase,     this.txtDeletedViewObjectsInDatabase,     this.txtConflictingViewObjects},
+			{this.txtNewViewConnectionsInModel, this.txtUpdatedViewConnectionsInModel, this.txtNewViewConnectionsInDatabase, this.txtUpdatedViewConnectionsInDatabase, this.txtDeletedViewConnectionsInDatabase, this.txtConflictingViewConnections}
+		};
 	}
 	
 	/**
-	 * Effectively exports an EObject in the database<br>
-	 * When a conflict is detected, the component ID is added to the tblListConflicts<br>
-	 * <br>
-	 * This method is called by the export() method
-	 * @return true if the EObject has been exported, false if it is conflicting
+	 * @return the text widgets that show the total number of components, indexed by DBExportEngine.COMPONENT
 	 */
-	private boolean doExportEObject(EObject eObjectToExport) throws Exception {
-		return doExportEObject(eObjectToExport, shallWeForceExport());
+	private Text[] getTotalsTexts() {
+		return new Text[] {this.txtTotalElements, this.txtTotalRelationships, this.txtTotalFolders, this.txtTotalViews, this.txtTotalViewObjects, this.txtTotalViewConnections};
 	}
 	
 	/**
-	 * Effectively exports an EObject in the database<br>
-	 * When a conflict is detected, the component ID is added to the tblListConflicts<br>
-	 * <br>
-	 * This method is called by the export() method
-	 * @return true if the EObject has been exported, false if it is conflicting
+	 * @return the total number of components before the export, indexed by DBExportEngine.COMPONENT
 	 */
-	private boolean doExportEObject(EObject eObjectToExport, boolean forceExport) throws Exception {
-		assert(eObjectToExport instanceof IDBMetadata);
-		assert(this.exportConnection != null);
-		
-		if ( logger.isDebugEnabled() ) logger.debug("Do Export "+((IDBMetadata)eObjectToExport).getDBMetadata().getDebugName());
-		
-		boolean mustExport = false;
-		boolean mustImport = false;
-		boolean mustDelete = false;
-		boolean exported = false;
-		
-		Text txtNewInModel;
-		Text txtUpdatedInModel;
-		Text txtUpdatedInDatabase;
-		Text txtDeletedInDatabase;
-		Text txtConflicting;
+	private int[] getInitialTotals() {
+		Text[] totalsTexts = getTotalsTexts();
+		int[] totals = new int[totalsTexts.length];
+		for ( int i = 0; i < totalsTexts.length; ++i )
+			totals[i] = toInt(totalsTexts[i].getText());
+		return totals;
+	}
+	
+	/**
+	 * Refreshes the counters and the progress bar with the export progress<br>
+	 * This method must be called in the SWT thread.
+	 * @param exportEngine the engine that exports the model
+	 * @param initialTotals the total number of components before the export, to which are added the components imported from the database
+	 */
+	void refreshExportProgress(DBExportEngine exportEngine, int[] initialTotals) {
+		Text[][] countersTexts = getCountersTexts();
+		Text[] totalsTexts = getTotalsTexts();
 		
-		String objectClass;
-        if ( eObjectToExport instanceof IArchimateElement ) {
-            objectClass = "Element";
-            txtNewInModel = this.txtNewElementsInModel;
-            txtUpdatedInModel = this.txtUpdatedElementsInModel;
-            txtUpdatedInDatabase = this.txtUpdatedElementsInDatabase;
-            txtDeletedInDatabase = this.txtDeletedElementsInDatabase;
-            txtConflicting = this.txtConflictingElements;
-        } else if ( eObjectToExport instanceof IArchimateRelationship ) {
-            objectClass = "Relationship";
-            txtNewInModel = this.txtNewRelationshipsInModel;
-            txtUpdatedInModel = this.txtUpdatedRelationshipsInModel;
-            txtUpdatedInDatabase = this.txtUpdatedRelationshipsInDatabase;
-            txtDeletedInDatabase = this.txtDeletedRelationshipsInDatabase;
-            txtConflicting = this.txtConflictingRelationships;
-        } else if ( eObjectToExport instanceof IFolder ) {
-            objectClass = "Folder";
-            txtNewInModel = this.txtNewFoldersInModel;
-            txtUpdatedInModel = this.txtUpdatedFoldersInModel;
-            txtUpdatedInDatabase = this.txtUpdatedFoldersInDatabase;
-            txtDeletedInDatabase = this.txtDeletedFoldersInDatabase;
-            txtConflicting = this.txtConflictingFolders;
-        } else if ( eObjectToExport instanceof IDiagramModel ) {
-            objectClass = "View";
-            txtNewInModel = this.txtNewViewsInModel;
-            txtUpdatedInModel = this.txtUpdatedViewsInModel;
-            txtUpdatedInDatabase = this.txtUpdatedViewsInDatabase;
-            txtDeletedInDatabase = this.txtDeletedViewsInDatabase;
-            txtConflicting = this.txtConflictingViews;
-        } else if ( eObjectToExport instanceof IDiagramModelObject ) {
-            objectClass = "View Object";
-            txtNewInModel = this.txtNewViewObjectsInModel;
-            txtUpdatedInModel = this.txtUpdatedViewObjectsInModel;
-            txtUpdatedInDatabase = this.txtUpdatedViewObjectsInDatabase;
-            txtDeletedInDatabase = this.txtDeletedViewObjectsInDatabase;
-            txtConflicting = this.txtConflictingViewObjects;
-        } else if ( eObjectToExport instanceof IDiagramModelConnection ) {
-            objectClass = "View Connection";
-            txtNewInModel = this.txtNewViewConnectionsInModel;
-            txtUpdatedInModel = this.txtUpdatedViewConnectionsInModel;
-            txtUpdatedInDatabase = this.txtUpdatedViewConnectionsInDatabase;
-            txtDeletedInDatabase = this.txtDeletedViewConnectionsInDatabase;
-            txtConflicting = this.txtConflictingViewConnections;
-	    } else
-            throw new Exception("At the moment, we cannot export a "+eObjectToExport.getClass().getSimpleName()+" :(");
+		for ( DBExportEngine.COMPONENT component: DBExportEngine.COMPONENT.values() ) {
+			for ( DBExportEngine.COUNTER counter: DBExportEngine.COUNTER.values() )
+				countersTexts[component.ordinal()][counter.ordinal()].setText(toString(exportEngine.getCount(component, counter)));
+			totalsTexts[component.ordinal()].setText(toString(initialTotals[component.ordinal()] + exportEngine.getCount(component, DBExportEngine.COUNTER.NewInDatabase)));
+		}
+		this.txtNewImagesInModel.setText(toString(exportEngine.getCountNewImages()));
 		
-        String debugMessage = null;
-		if ( forceExport ) {
-		    debugMessage = "The "+objectClass+" is in Force Export mode, we must export it to the database.";
-		    mustExport = true;
-		} else {
-		    switch ( ((IDBMetadata)eObjectToExport).getDBMetadata().getDatabaseStatus() ) {
-                case isNewInModel:
-                    debugMessage = "The "+objectClass+" has been created in the model, we must export it to the database.";
-                    mustExport = true;
-                    break;
-                case isUpadtedInDatabase:
-                    debugMessage = "The "+objectClass+" has been updated in the database, we must import it from the database.";
-                    mustImport = true;
-                    break;
-                case isUpdatedInModel:
-                    debugMessage = "The "+objectClass+" has been updated in the model, we must export it to the database.";
-                    mustExport = true;
-                    break;
-                case isDeletedInDatabase:
-                    debugMessage = "The "+objectClass+" has been deleted in the database, we must delete it from the model.";
-                    mustDelete = true;
-                    break;
-                case IsConflicting:
-                    if ( eObjectToExport instanceof IDiagramModel && DBPlugin.areEqual(((IDBMetadata)eObjectToExport).getDBMetadata().getCurrentVersion().getContainerChecksum(), ((IDBMetadata)eObjectToExport).getDBMetadata().getDatabaseVersion().getContainerChecksum()) ) {
-                        debugMessage = "The "+objectClass+" has not been updated, but its content has, we must export it to the database.";
-                        mustExport = true;
-                    } else {
-                        if ( logger.isDebugEnabled() ) logger.debug("The "+objectClass+" conflicts with the version in the database.");
-                        switch ( ((IDBMetadata)eObjectToExport).getDBMetadata().getConflictChoice() ) {
-                            case askUser :
-                                if ( logger.isDebugEnabled() ) logger.debug("The conflict has to be manually resolved by user.");
-                                new TableItem(this.tblListConflicts, SWT.NONE).setText(((IIdentifier)eObjectToExport).getId());
-                                if ( this.tblListConflicts.getItemCount() < 2 )
-                                    this.lblCantExport.setText("Can't export because "+this.tblListConflicts.getItemCount()+" component conflicts with newer version in the database :");
-                                else
-                                    this.lblCantExport.setText("Can't export because "+this.tblListConflicts.getItemCount()+" components conflict with newer version in the database :");
-                                incrementText(txtConflicting);
-                                return false;
-                            case exportToDatabase :
-                                debugMessage = "The "+objectClass+" is tagged to force export to the database. ";
-                                mustExport = true;
-                                break;
-                            case importFromDatabase :
-                                debugMessage = "The "+objectClass+" is tagged to import from to the database. ";
-                                mustImport = true;
-                                break;
-                            default:    // case doNotExport :
-                                if ( logger.isDebugEnabled() ) logger.debug("The "+objectClass+" is tagged \"do not export\", we keep it as it is.");
-                                break;
-                        }
-                    }
-                    break;
-                case isSynced:
-                	if ( logger.isDebugEnabled() )  logger.debug("The "+objectClass+" is in sync with the database.");
-                    break;
-                default:
-                	throw new Exception("That's weird, we shoudn't be here ...");
-            }
+		setProgressBarValue(exportEngine.getCountProcessed());
+	}
+	
+	/**
+	 * Listener that runs the export engine callbacks in the SWT thread
+	 */
+	private class ExportListener implements IDBExportListener {
+		ExportListener() {
 		}
-
-		if ( mustExport ) {
-		    if ( logger.isDebugEnabled() )  logger.debug(debugMessage);
-		    
-			this.exportConnection.exportEObject(eObjectToExport, this);
-			
-            if ( ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion() == 0 )
-            	incrementText(txtNewInModel);
-            else
-                incrementText(txtUpdatedInModel);
-            
-            exported = true;
+		
+		@Override
+		public void runInModelThread(Runnable runnable) {
+			Display.getDefault().syncExec(runnable);
 		}
 		
-		if ( mustImport ) {
-		    if ( logger.isDebugEnabled() ) logger.debug(debugMessage);
-		    
-			try ( DBDatabaseImportConnection importConnection = new DBDatabaseImportConnection(this.exportConnection) ) {
-	            if ( eObjectToExport instanceof IArchimateElement )
-	                importConnection.importElementFromId(this.exportedModel, ((IIdentifier)eObjectToExport).getId(), ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion());
-	            else if ( eObjectToExport instanceof IArchimateRelationship )
-	                importConnection.importRelationshipFromId(this.exportedModel, null, ((IIdentifier)eObjectToExport).getId(), ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion(), false);
-	            else if ( eObjectToExport instanceof IFolder )
-	                importConnection.importFolderFromId(this.exportedModel, ((IIdentifier)eObjectToExport).getId(), ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion(), false);
-	            else if ( eObjectToExport instanceof IDiagramModel )
-	                importConnection.importViewFromId(this.exportedModel, ((IIdentifier)eObjectToExport).getId(), ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion(), false, false);
-	            else if ( eObjectToExport instanceof IDiagramModelObject )
-	                importConnection.importViewObjectFromId(this.exportedModel, ((IIdentifier)eObjectToExport).getId(), ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion(), false);
-	            else if ( eObjectToExport instanceof IDiagramModelConnection )
-	                importConnection.importViewConnectionFromId(this.exportedModel, ((IIdentifier)eObjectToExport).getId(), ((IDBMetadata)eObjectToExport).getDBMetadata().getLatestDatabaseVersion().getVersion(), false);
-	            
-	            incrementText(txtUpdatedInDatabase);
-	            exported = true;
-			}
+		@Override
+		public ImageData createImageData(final IDiagramModel view, final double scale, final int margin) {
+			final ImageData[] imageData = new ImageData[1];
+			Display.getDefault().syncExec(new Runnable() {
+				@Override
+				public void run() {
+					imageData[0] = DBGuiExportModel.this.createImageData(view, scale, margin);
+				}
+			});
+			return imageData[0];
 		}
 		
-		if ( mustDelete ) {
-		    if ( logger.isDebugEnabled() ) logger.debug(debugMessage);
-		                  
-		    if ( eObjectToExport instanceof IArchimateElement )
-		        this.exportCommands.add(new DeleteArchimateElementCommand((IArchimateElement)eObjectToExport));
-		    else if ( eObjectToExport instanceof IArchimateRelationship )
-                this.exportCommands.add(new DeleteArchimateRelationshipCommand((IArchimateRelationship)eObjectToExport));
-		    else if ( eObjectToExport instanceof IFolder )
-		        new DeleteFolderCommand((IFolder)eObjectToExport).execute();
-		    else if ( eObjectToExport instanceof IDiagramModel )
-		        new DeleteDiagramModelCommand((IDiagramModel)eObjectToExport).execute();
-            else if ( eObjectToExport instanceof IDiagramModelArchimateObject )
-		        this.exportCommands.add(new DBDeleteDiagramObjectCommand(this.exportedModel, (IDiagramModelArchimateObject)eObjectToExport));
-		    else if ( eObjectToExport instanceof IDiagramModelArchimateConnection )
-		        this.exportCommands.add(new DBDeleteDiagramConnectionCommand(this.exportedModel, (IDiagramModelArchimateConnection)eObjectToExport));
-		    
-		    incrementText(txtDeletedInDatabase);
-            exported = true;
+		@Override
+		public void conflictDetected(final EObject eObject) {
+			Display.getDefault().syncExec(new Runnable() {
+				@Override
+				public void run() {
+					if ( hasBeenClosed() )
+						return;
+					
+					Table tblListConflicts = DBGuiExportModel.this.tblListConflicts;
+					new TableItem(tblListConflicts, SWT.NONE).setText(((IIdentifier)eObject).getId());
+					if ( tblListConflicts.getItemCount() < 2 )
+						DBGuiExportModel.this.lblCantExport.setText("Can't export because "+tblListConflicts.getItemCount()+" component conflicts with newer version in the database :");
+					else
+						DBGuiExportModel.this.lblCantExport.setText("Can't export because "+tblListConflicts.getItemCount()+" components conflict with newer version in the database :");
+				}
+			});
 		}
+	}
+	
+	/**
+	 * Stops the export thread when the dialog is closed during the export
+	 */
+	@Override
+	protected void cancelBackgroundThread() {
+		if ( this.runningExportEngine != null )
+			this.runningExportEngine.cancel();
+	}
+	
+	/**
+	 * Thread that exports the model to the database without blocking the SWT thread.<br>
+	 * It does not access any graphical object: the GUI reads the export progress from the export engine counters.
+	 */
+	private class ExportModelThread extends Thread {
+		private final DBExportEngine exportEngine;
+		volatile Exception error = null;
 		
-		if ( !mustDelete ) {
-		    // we reference the object as being part of the model
-		    if ( this.selectedDatabase.isWholeModelExported() )
-		        this.exportConnection.assignEObjectToModel(eObjectToExport);
+		ExportModelThread(DBExportEngine exportEngine) {
+			super("Export of model "+DBGuiExportModel.this.exportedModel.getName());
+			setDaemon(true);
+			this.exportEngine = exportEngine;
 		}
 		
-		increaseProgressBar();
-		return exported;
+		@Override
+		public void run() {
+			try {
+				this.exportEngine.export();
+			} catch (Exception err) {
+				this.error = err;
+			} finally {
+				// we wake up the SWT thread that may be waiting for events
+				Display.getDefault().wake();
+			}
+		}
 	}
-
+	
 	/**
 	 * Creates a group that will display the conflicts raised during the export process
 	 */
@@ -2390,10 +2065,7 @@ public class DBGuiExportModel extends DBGui {
 	}
 	
 	private boolean shallWeForceExport() {
-		return this.exportedModel.getInitialVersion().getVersion() == 0
-                || this.exportedModel.getCurrentVersion().getVersion() == this.exportedModel.getInitialVersion().getVersion()
-                || !this.selectedDatabase.isCollaborativeMode()
-                || DBPlugin.areEqual(this.selectedDatabase.getDriver().toLowerCase(), "neo4j");
+		return DBExportEngine.isForceExportRequired(this.exportedModel, this.selectedDatabase);
 	}
 
 	Button btnDoNotExport;
@@ -1170,7 +1170,7 @@ public class DBGuiImportComponent extends DBGui {
 			}
 		}
 			
-		addOn += " AND version = (SELECT MAX(version) FROM "+this.selectedDatabase.getSchemaPrefix()+"elements WHERE id = e.id)";
+		addOn += " AND version = "+this.importConnection.getLatestVersionRequest("e.id");
 		addOn += " ORDER BY NAME";
 		
 		if ( logger.isTraceEnabled() ) {
@@ -1328,7 +1328,7 @@ public class DBGuiImportComponent extends DBGui {
 		if ( this.hideOption.getSelection() )
 			addOn = " AND name <> 'Default View'";
 		
-		addOn += " AND version = (SELECT MAX(version) FROM "+this.selectedDatabase.getSchemaPrefix()+"views WHERE id = v.id)";
+		addOn += " AND version = "+this.importConnection.getLatestVersionRequest("v.id");
 		addOn += " ORDER BY NAME";
 
 		if ( inList.length() != 0 ) {
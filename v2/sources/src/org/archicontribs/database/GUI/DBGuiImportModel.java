@@ -6,19 +6,23 @@
 
 package org.archicontribs.database.GUI;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.log4j.Level;
 import org.archicontribs.database.DBLogger;
 import org.archicontribs.database.DBPlugin;
 import org.archicontribs.database.connection.DBDatabaseImportConnection;
 import org.archicontribs.database.model.DBArchimateModel;
-import org.archicontribs.database.model.IDBMetadata;
 import org.eclipse.gef.commands.CommandStack;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.swt.SWT;
@@ -30,6 +34,7 @@ import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
@@ -686,90 +691,57 @@ public class DBGuiImportModel extends DBGui {
         	this.modelToImport.setLatestVersionImported(true);
         }
 
+        // we import the model from the database in a separate thread, the display being refreshed periodically with the import progress
+        final ImportModelThread importThread = new ImportModelThread();
+        final Display display = Display.getCurrent();
+        setBackgroundThread(importThread);
+        
+        Runnable progressRefresher = new Runnable() {
+            @Override
+            public void run() {
+                if ( importThread.isAlive() && !isDisposed() ) {
+                    refreshImportProgress(importThread.importSize);
+                    display.timerExec(progressRefreshInterval, this);
+                }
+            }
+        };
+        
+        importThread.start();
+        display.timerExec(progressRefreshInterval, progressRefresher);
+        while ( importThread.isAlive() ) {
+            if ( !display.readAndDispatch() )
+                display.sleep();
+        }
+        setBackgroundThread(null);
+        
+        if ( hasBeenClosed() ) {
+            // the model has not been registered, so there is nothing to close
+            importThread.deleteImageFiles();
+            popup(Level.WARN, "The import has been cancelled.");
+            return;
+        }
+        
+        refreshImportProgress(importThread.importSize);
+        
         // we add the new model in the manager
         IEditorModelManager.INSTANCE.registerModel(this.modelToImport);
-
-        // we import the model from the database in a separate thread
+        
+        if ( importThread.error != null ) {
+            popup(Level.ERROR, "Failed to import model from database.", importThread.error);
+            setActiveAction(STATUS.Error);
+            doShowResult(importThread.error);
+            return;
+        }
+        
         try {
-            int importSize = this.importConnection.importModel(this.modelToImport);
-            setProgressBarMinAndMax(0, importSize);
-
-            this.txtTotalElements.setText(toString(this.importConnection.getCountElementsToImport()));
-            this.txtTotalRelationships.setText(toString(this.importConnection.getCountRelationshipsToImport()));
-            this.txtTotalFolders.setText(toString(this.importConnection.getCountFoldersToImport()));
-            this.txtTotalViews.setText(toString(this.importConnection.getCountViewsToImport()));
-            this.txtTotalViewObjects.setText(toString(this.importConnection.getCountViewObjectsToImport()));
-            this.txtTotalViewConnections.setText(toString(this.importConnection.getCountViewConnectionsToImport()));
-            this.txtTotalImages.setText(toString(this.importConnection.getCountImagesToImport()));
-
-            this.txtImportedElements.setText(toString(this.importConnection.getCountElementsImported()));
-            this.txtImportedRelationships.setText(toString(this.importConnection.getCountRelationshipsImported()));
-            this.txtImportedFolders.setText(toString(this.importConnection.getCountFoldersImported()));
-            this.txtImportedViews.setText(toString(this.importConnection.getCountViewsImported()));
-            this.txtImportedViewObjects.setText(toString(this.importConnection.getCountViewObjectsImported()));
-            this.txtImportedViewConnections.setText(toString(this.importConnection.getCountViewConnectionsImported()));
-            this.txtImportedImages.setText(toString(this.importConnection.getCountImagesImported()));
-
-            logger.info("Importing folders ...");
-            this.importConnection.prepareImportFolders(this.modelToImport);
-            while ( this.importConnection.importFolders(this.modelToImport) ) {
-            	this.txtImportedFolders.setText(toString(this.importConnection.getCountFoldersImported()));
-                increaseProgressBar();
-            }
-
-            logger.info("Importing elements ...");
-            this.importConnection.prepareImportElements(this.modelToImport);
-            while ( this.importConnection.importElements(this.modelToImport) ) {
-            	this.txtImportedElements.setText(toString(this.importConnection.getCountElementsImported()));
-                increaseProgressBar();
-            }
-
-            logger.info("Importing relationships ...");
-            this.importConnection.prepareImportRelationships(this.modelToImport);
-            while ( this.importConnection.importRelationships(this.modelToImport) ) {
-            	this.txtImportedRelationships.setText(toString(this.importConnection.getCountRelationshipsImported()));
-                increaseProgressBar();
-            }
-            this.modelToImport.resolveSourceRelationships();
-            this.modelToImport.resolveTargetRelationships();
-
-            logger.info("Importing views ...");
-            this.importConnection.prepareImportViews(this.modelToImport);
-            while ( this.importConnection.importViews(this.modelToImport) ) {
-            	this.txtImportedViews.setText(toString(this.importConnection.getCountViewsImported()));
-                increaseProgressBar();
-            }
-
-            logger.info("Importing view objects ...");
-            for (IDiagramModel view: this.modelToImport.getAllViews().values()) {
-                this.importConnection.prepareImportViewsObjects(view.getId(), ((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion());
-                while ( this.importConnection.importViewsObjects(this.modelToImport, view) ) {
-                	this.txtImportedViewObjects.setText(toString(this.importConnection.getCountViewObjectsImported()));
-                    increaseProgressBar();
-                }
-            }
-            this.txtImportedElements.setText(toString(this.importConnection.getCountElementsImported()));
-
-            logger.info("Importing view connections ...");
-            for (IDiagramModel view: this.modelToImport.getAllViews().values()) {
-                this.importConnection.prepareImportViewsConnections(view.getId(), ((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion());
-                while ( this.importConnection.importViewsConnections(this.modelToImport) ) {
-                	this.txtImportedViewConnections.setText(toString(this.importConnection.getCountViewConnectionsImported()));
-                    increaseProgressBar();
-                }
+            // the images can be stored in the archive manager only once the model has been registered
+            for ( Entry<String, File> image: importThread.images.entrySet() ) {
+                this.importConnection.importImage(this.modelToImport, image.getKey(), image.getValue());
             }
-            this.modelToImport.resolveSourceConnections();
-            this.modelToImport.resolveTargetConnections();
-            this.txtImportedRelationships.setText(toString(this.importConnection.getCountRelationshipsImported()));
-
-            closeMessage();
-
-            logger.info("importing images ...");
-            for (String path: this.importConnection.getAllImagePaths()) {
-                this.importConnection.importImage(this.modelToImport, path);
-                this.txtImportedImages.setText(toString(this.importConnection.getCountImagesImported()));
-                increaseProgressBar();
+            for ( Entry<String, String> image: importThread.imageChecksums.entrySet() ) {
+                this.importConnection.importLazyImage(this.modelToImport, image.getKey(), image.getValue());
             }
+            refreshImportProgress(importThread.importSize);
             
             // If the model contains a view called "default view", we open it.
             for ( IDiagramModel view: this.modelToImport.getDiagramModels() ) {
@@ -781,29 +753,172 @@ public class DBGuiImportModel extends DBGui {
                 }
             }
         } catch (Exception err) {
-        	closeMessage();
-            if ( hasBeenClosed() ) {
-                // we close the partially imported model
-                CommandStack stack = (CommandStack)this.modelToImport.getAdapter(CommandStack.class);
-                stack.markSaveLocation();
-                try {
-                    IEditorModelManager.INSTANCE.closeModel(this.modelToImport);
-                } catch (@SuppressWarnings("unused") IOException ign) {
-                    // there is nothing we can do
-                }
-                popup(Level.WARN, "The import has been cancelled.");
-            } else {
-                popup(Level.ERROR, "Failed to import model from database.", err);
-                setActiveAction(STATUS.Error);
-                doShowResult(err);
-            }
+            closeMessage();
+            popup(Level.ERROR, "Failed to import model from database.", err);
+            setActiveAction(STATUS.Error);
+            doShowResult(err);
             return;
+        } finally {
+            // the temporary files of the images that have not been imported are not needed anymore
+            importThread.deleteImageFiles();
         }
 
         setActiveAction(STATUS.Ok);
         doShowResult(null);
         return;
     }
+    
+    /**
+     * Interval, in milliseconds, between two refreshes of the import progress in the display
+     */
+    private static final int progressRefreshInterval = 100;
+    
+    /**
+     * Refreshes the counters and the progress bar with the import progress<br>
+     * This method must be called in the SWT thread.
+     * @param importSize the number of components to import, or a negative value if it is not known yet
+     */
+    void refreshImportProgress(int importSize) {
+        if ( importSize < 0 )
+            return;
+        
+        if ( this.txtTotalElements.getText().isEmpty() ) {
+            setProgressBarMinAndMax(0, importSize);
+            
+            this.txtTotalElements.setText(toString(this.importConnection.getCountElementsToImport()));
+            this.txtTotalRelationships.setText(toString(this.importConnection.getCountRelationshipsToImport()));
+            this.txtTotalFolders.setText(toString(this.importConnection.getCountFoldersToImport()));
+            this.txtTotalViews.setText(toString(this.importConnection.getCountViewsToImport()));
+            this.txtTotalViewObjects.setText(toString(this.importConnection.getCountViewObjectsToImport()));
+            this.txtTotalViewConnections.setText(toString(this.importConnection.getCountViewConnectionsToImport()));
+            this.txtTotalImages.setText(toString(this.importConnection.getCountImagesToImport()));
+        }
+        
+        this.txtImportedElements.setText(toString(this.importConnection.getCountElementsImported()));
+        this.txtImportedRelationships.setText(toString(this.importConnection.getCountRelationshipsImported()));
+        this.txtImportedFolders.setText(toString(this.importConnection.getCountFoldersImported()));
+        this.txtImportedViews.setText(toString(this.importConnection.getCountViewsImported()));
+        this.txtImportedViewObjects.setText(toString(this.importConnection.getCountViewObjectsImported()));
+        this.txtImportedViewConnections.setText(toString(this.importConnection.getCountViewConnectionsImported()));
+        this.txtImportedImages.setText(toString(this.importConnection.getCountImagesImported()));
+        
+        setProgressBarValue(this.importConnection.getCountElementsImported() + this.importConnection.getCountRelationshipsImported() + this.importConnection.getCountFoldersImported() + this.importConnection.getCountViewsImported() + this.importConnection.getCountViewObjectsImported() + this.importConnection.getCountViewConnectionsImported() + this.importConnection.getCountImagesImported());
+    }
+    
+    /**
+     * Thread that imports the model from the database without blocking the SWT thread.<br>
+     * It does not access any graphical object: the GUI reads the import progress from the import connection counters.<br>
+     * The images are only retrieved from the database as they can be stored in the model's archive manager once the model is registered.<br>
+     * They are streamed to temporary files so their content is not kept in memory in the meantime.<br>
+     * When the images are loaded lazily, only their checksum is retrieved and their content is fetched when Archi first requests it.
+     */
+    private class ImportModelThread extends Thread {
+        volatile int importSize = -1;
+        volatile Exception error = null;
+        final Map<String, File> images = new LinkedHashMap<String, File>();
+        final Map<String, String> imageChecksums = new LinkedHashMap<String, String>();
+        
+        ImportModelThread() {
+            super("Import of model "+DBGuiImportModel.this.modelToImport.getName());
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            DBArchimateModel model = DBGuiImportModel.this.modelToImport;
+            DBDatabaseImportConnection connection = DBGuiImportModel.this.importConnection;
+            
+            try {
+                this.importSize = connection.importModel(model);
+                
+                logger.info("Importing folders ...");
+                connection.prepareImportFolders(model);
+                while ( connection.importFolders(model) ) {
+                    // each loop imports a folder
+                    checkCancelled();
+                }
+                
+                logger.info("Importing elements ...");
+                connection.prepareImportElements(model);
+                while ( connection.importElements(model) ) {
+                    // each loop imports an element
+                    checkCancelled();
+                }
+                
+                logger.info("Importing relationships ...");
+                connection.prepareImportRelationships(model);
+                while ( connection.importRelationships(model) ) {
+                    // each loop imports a relationship
+                    checkCancelled();
+                }
+                model.resolveSourceRelationships();
+                model.resolveTargetRelationships();
+                
+                logger.info("Importing views ...");
+                connection.prepareImportViews(model);
+                while ( connection.importViews(model) ) {
+                    // each loop imports a view
+                    checkCancelled();
+                }
+                
+                logger.info("Importing view objects ...");
+                connection.prepareImportViewsObjects(model);
+                while ( connection.importViewsObjects(model) ) {
+                    // each loop imports a view object
+                    checkCancelled();
+                }
+                
+                logger.info("Importing view connections ...");
+                connection.prepareImportViewsConnections(model);
+                while ( connection.importViewsConnections(model) ) {
+                    // each loop imports a view connection
+                    checkCancelled();
+                }
+                model.resolveSourceConnections();
+                model.resolveTargetConnections();
+                
+                logger.info("importing images ...");
+                boolean lazyImageLoading = DBPlugin.INSTANCE.getPreferenceStore().getBoolean("lazyImageLoading");
+                for (String path: connection.getAllImagePaths()) {
+                    checkCancelled();
+                    if ( lazyImageLoading )
+                        this.imageChecksums.put(path, connection.getImageChecksumFromDatabase(path));
+                    else
+                        this.images.put(path, connection.getImageFileFromDatabase(path));
+                }
+            } catch (Exception err) {
+                this.error = err;
+                // the images will not be imported, so their temporary files are deleted straight away
+                deleteImageFiles();
+            } finally {
+                // we wake up the SWT thread that may be waiting for an event
+                Display.getDefault().wake();
+            }
+        }
+        
+        /**
+         * Deletes the temporary files of the images that have not been imported yet<br>
+         * This method must not be called while the thread is running, except by the thread itself.
+         */
+        void deleteImageFiles() {
+            for ( File imageFile: this.images.values() ) {
+                try {
+                    Files.deleteIfExists(imageFile.toPath());
+                } catch (IOException e) {
+                    logger.warn("Failed to delete temporary file "+imageFile.getAbsolutePath(), e);
+                }
+            }
+            this.images.clear();
+        }
+        
+        /**
+         * Throws an exception if the dialog has been closed, so the thread stops before the database connection is closed
+         */
+        private void checkCancelled() throws Exception {
+            if ( hasBeenClosed() )
+                throw new Exception("The import has been cancelled.");
+        }
+    }
 
     protected void doShowResult(Exception err) {
         logger.debug("Showing result.");
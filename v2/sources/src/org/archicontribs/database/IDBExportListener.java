@@ -0,0 +1,40 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.swt.graphics.ImageData;
+
+import com.archimatetool.model.IDiagramModel;
+
+/**
+ * Interface used by the {@link DBExportEngine} to interact with the environment it runs in (graphical interface or script)<br>
+ * <br>
+ * The methods of this interface are called from the thread that runs the export, which may not be the SWT thread.
+ * 
+ * @author Herve Jouin
+ */
+public interface IDBExportListener {
+	/**
+	 * Runs code that updates the model (import of components from the database, deletion of components, ...)<br>
+	 * As the model is shared with Archi's editors and trees, this code must be run in the thread that owns the model.<br>
+	 * This method must not return before the code has been run.
+	 */
+	void runInModelThread(Runnable runnable);
+	
+	/**
+	 * Renders the screenshot of a view<br>
+	 * The PNG encoding of the returned data is done by the export engine, outside of the thread that renders the view.
+	 * @return the uncompressed content of the image
+	 */
+	ImageData createImageData(IDiagramModel view, double scale, int margin);
+	
+	/**
+	 * Called when a component conflicts with its version in the database and that the user must choose how to resolve the conflict
+	 */
+	void conflictDetected(EObject eObject);
+}
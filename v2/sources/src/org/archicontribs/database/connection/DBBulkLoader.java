@@ -0,0 +1,382 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database.connection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.archicontribs.database.DBLogger;
+import org.archicontribs.database.data.DBDatabase;
+import org.postgresql.PGConnection;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkRecord;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerException;
+
+/**
+ * Inserts rows in the database tables using the native bulk load path of the database<br>
+ * <br>
+ * The rows are grouped by table and columns, and sent to the database each time a chunk is full, using:
+ * <ul>
+ * <li>COPY FROM STDIN for PostgreSQL</li>
+ * <li>multi-rows INSERT requests for MySQL</li>
+ * <li>bulk copy for MS SQL Server</li>
+ * <li>JDBC batches of a single PreparedStatement for Oracle (the driver sends them using array binding) and SQLite</li>
+ * </ul>
+ * The bulk loader does not change the schema of the tables: the rows are exactly the ones that would have been inserted by the INSERT requests.
+ * 
+ * @author Herve Jouin
+ */
+class DBBulkLoader {
+    private static final DBLogger logger = new DBLogger(DBBulkLoader.class);
+
+    /**
+     * Maximum number of rows kept in memory for a table before they are sent to the database
+     */
+    static final int chunkSize = 5000;
+
+    /**
+     * Maximum number of rows in a multi-rows INSERT request, to stay below the maximum packet size of MySQL
+     */
+    private static final int maxRowsPerInsert = 500;
+
+    /**
+     * Maximum number of parameters in a PreparedStatement
+     */
+    private static final int maxParameters = 65535;
+
+    private final Connection connection;
+    private final DBDatabase.BulkLoadMode mode;
+
+    /**
+     * Rows waiting to be sent to the database, grouped by table and columns, in the order the tables have been first loaded
+     */
+    private final LinkedHashMap<String, PendingRows> pendingRows = new LinkedHashMap<String, PendingRows>();
+
+    private static class PendingRows {
+        final String table;
+        final String[] columns;
+        final List<Object[]> rows = new ArrayList<Object[]>();
+
+        PendingRows(String table, String[] columns) {
+            this.table = table;
+            this.columns = columns;
+        }
+    }
+
+    DBBulkLoader(Connection connection, DBDatabase.BulkLoadMode mode) {
+        assert(mode != DBDatabase.BulkLoadMode.NONE);
+        this.connection = connection;
+        this.mode = mode;
+    }
+
+    /**
+     * Adds a row to be inserted in a table<br>
+     * The boolean values are converted to integers as the tables store booleans in integer columns.
+     * @return true if the chunk of the table is full and must be sent to the database
+     */
+    @SafeVarargs
+    final <T> boolean add(String table, String[] columns, T... values) {
+        String key = table+"("+String.join(",", columns)+")";
+        PendingRows pending = this.pendingRows.get(key);
+        if ( pending == null ) {
+            pending = new PendingRows(table, columns);
+            this.pendingRows.put(key, pending);
+        }
+
+        Object[] row = new Object[columns.length];
+        for ( int i = 0; i < columns.length; ++i ) {
+            if ( values[i] instanceof Boolean )
+                row[i] = (Boolean)values[i] ? 1 : 0;
+            else
+                row[i] = values[i];
+        }
+        pending.rows.add(row);
+
+        return pending.rows.size() >= chunkSize;
+    }
+
+    /**
+     * Checks if rows are waiting to be sent to the database
+     */
+    boolean isEmpty() {
+        for ( PendingRows pending: this.pendingRows.values() ) {
+            if ( !pending.rows.isEmpty() )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends all the pending rows to the database
+     */
+    void flush() throws SQLException {
+        for ( PendingRows pending: this.pendingRows.values() )
+            flush(pending);
+    }
+
+    /**
+     * Sends the pending rows of a table to the database
+     */
+    void flush(String table) throws SQLException {
+        for ( PendingRows pending: this.pendingRows.values() ) {
+            if ( pending.table.equals(table) )
+                flush(pending);
+        }
+    }
+
+    /**
+     * Discards the pending rows
+     */
+    void clear() {
+        if ( !isEmpty() && logger.isDebugEnabled() ) logger.debug("Discarding bulk loaded rows.");
+        this.pendingRows.clear();
+    }
+
+    private void flush(PendingRows pending) throws SQLException {
+        if ( pending.rows.isEmpty() )
+            return;
+
+        if ( logger.isDebugEnabled() ) logger.debug("Bulk loading "+pending.rows.size()+" row"+(pending.rows.size()>1?"s":"")+" in table "+pending.table+" ("+this.mode+")");
+
+        try {
+            switch ( this.mode ) {
+                case COPY:              copy(pending); break;
+                case MULTI_ROW_INSERT:  multiRowInsert(pending); break;
+                case BULK_COPY:         bulkCopy(pending); break;
+                default:                batch(pending); break;
+            }
+        } catch (SQLException err) {
+            if ( logger.isTraceEnabled() ) logger.trace("SQL Exception while bulk loading table "+pending.table+" ("+String.join(", ", pending.columns)+")");
+            // the real cause of a BatchUpdateException is often hidden in the next exception
+            if ( err.getNextException() != null )
+                logger.error("Bulk load failed", err.getNextException());
+            throw err;
+        } finally {
+            pending.rows.clear();
+        }
+    }
+
+    /**
+     * PostgreSQL: the rows are streamed in CSV format using the COPY FROM STDIN command
+     */
+    private void copy(PendingRows pending) throws SQLException {
+        StringBuilder csv = new StringBuilder();
+        for ( Object[] row: pending.rows ) {
+            for ( int i = 0; i < row.length; ++i ) {
+                if ( i != 0 )
+                    csv.append(',');
+                appendCsv(csv, row[i]);
+            }
+            csv.append('\n');
+        }
+
+        try {
+            this.connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY "+pending.table+" ("+String.join(", ", pending.columns)+") FROM STDIN WITH (FORMAT csv)", new StringReader(csv.toString()));
+        } catch (IOException err) {
+            throw new SQLException("Failed to copy rows in table "+pending.table, err);
+        }
+    }
+
+    /**
+     * Appends a value in CSV format: null values are empty and strings are quoted so they are distinguished from null values
+     */
+    private static void appendCsv(StringBuilder csv, Object value) {
+        if ( value == null )
+            return;
+
+        if ( value instanceof String ) {
+            csv.append('"').append(((String)value).replace("\"", "\"\"")).append('"');
+        } else if ( value instanceof byte[] ) {
+            // bytea hexadecimal format
+            csv.append("\\x");
+            for ( byte b: (byte[])value )
+                csv.append(Character.forDigit((b >> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+        } else
+            csv.append(String.valueOf(value));
+    }
+
+    /**
+     * MySQL: the rows are inserted using INSERT requests with multiple VALUES clauses
+     */
+    private void multiRowInsert(PendingRows pending) throws SQLException {
+        int rowsPerInsert = Math.max(1, Math.min(maxRowsPerInsert, maxParameters / pending.columns.length));
+
+        StringBuilder rowValues = new StringBuilder("(");
+        for ( int i = 0; i < pending.columns.length; ++i )
+            rowValues.append(i == 0 ? "?" : ", ?");
+        rowValues.append(")");
+
+        // all the requests but the last one have got the same number of rows, so their PreparedStatement is reused
+        String fullRequest = getMultiRowInsertRequest(pending, rowValues.toString(), rowsPerInsert);
+        PreparedStatement fullStatement = null;
+        try {
+            for ( int start = 0; start < pending.rows.size(); start += rowsPerInsert ) {
+                int nbRows = Math.min(rowsPerInsert, pending.rows.size() - start);
+                List<Object> parameters = new ArrayList<Object>(nbRows * pending.columns.length);
+                for ( Object[] row: pending.rows.subList(start, start + nbRows) ) {
+                    for ( Object value: row )
+                        parameters.add(value);
+                }
+
+                if ( nbRows == rowsPerInsert ) {
+                    if ( fullStatement == null )
+                        fullStatement = this.connection.prepareStatement(fullRequest);
+                    DBDatabaseConnection.constructStatement(fullStatement, fullRequest, parameters.toArray());
+                    fullStatement.executeUpdate();
+                } else {
+                    String request = getMultiRowInsertRequest(pending, rowValues.toString(), nbRows);
+                    try ( PreparedStatement pstmt = this.connection.prepareStatement(request) ) {
+                        DBDatabaseConnection.constructStatement(pstmt, request, parameters.toArray());
+                        pstmt.executeUpdate();
+                    }
+                }
+            }
+        } finally {
+            if ( fullStatement != null )
+                fullStatement.close();
+        }
+    }
+
+    private static String getMultiRowInsertRequest(PendingRows pending, String rowValues, int nbRows) {
+        StringBuilder request = new StringBuilder("INSERT INTO "+pending.table+" ("+String.join(", ", pending.columns)+") VALUES ");
+        for ( int i = 0; i < nbRows; ++i ) {
+            if ( i != 0 )
+                request.append(", ");
+            request.append(rowValues);
+        }
+        return request.toString();
+    }
+
+    /**
+     * MS SQL Server: the rows are sent using the bulk copy API of the driver, in the current transaction
+     */
+    private void bulkCopy(PendingRows pending) throws SQLException {
+        try ( SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(this.connection) ) {
+            bulkCopy.setDestinationTableName(pending.table);
+            for ( int i = 0; i < pending.columns.length; ++i )
+                bulkCopy.addColumnMapping(i+1, pending.columns[i]);
+            bulkCopy.writeToServer(new BulkRecord(pending));
+        }
+    }
+
+    /**
+     * Oracle and SQLite: the rows are sent using JDBC batches of a single PreparedStatement
+     */
+    private void batch(PendingRows pending) throws SQLException {
+        StringBuilder values = new StringBuilder();
+        for ( int i = 0; i < pending.columns.length; ++i )
+            values.append(i == 0 ? "?" : ", ?");
+        String request = "INSERT INTO "+pending.table+" ("+String.join(", ", pending.columns)+") VALUES ("+values.toString()+")";
+
+        try ( PreparedStatement pstmt = this.connection.prepareStatement(request) ) {
+            for ( Object[] row: pending.rows ) {
+                DBDatabaseConnection.constructStatement(pstmt, request, row);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Exposes the pending rows of a table to the MS SQL Server bulk copy API
+     */
+    private static class BulkRecord implements ISQLServerBulkRecord {
+        private final PendingRows pending;
+        private final int[] types;
+        private final int[] precisions;
+        private final Set<Integer> ordinals = new LinkedHashSet<Integer>();
+        private Iterator<Object[]> iterator;
+        private Object[] currentRow = null;
+
+        BulkRecord(PendingRows pending) {
+            this.pending = pending;
+            this.types = new int[pending.columns.length];
+            this.precisions = new int[pending.columns.length];
+
+            for ( int i = 0; i < pending.columns.length; ++i ) {
+                this.ordinals.add(i+1);
+                this.types[i] = Types.NVARCHAR;
+                this.precisions[i] = 1;
+                for ( Object[] row: pending.rows ) {
+                    Object value = row[i];
+                    if ( value instanceof String ) {
+                        this.types[i] = Types.NVARCHAR;
+                        this.precisions[i] = Math.max(this.precisions[i], ((String)value).length());
+                    } else if ( value instanceof Integer ) {
+                        this.types[i] = Types.INTEGER;
+                    } else if ( value instanceof Timestamp ) {
+                        this.types[i] = Types.TIMESTAMP;
+                    } else if ( value instanceof byte[] ) {
+                        this.types[i] = Types.VARBINARY;
+                        this.precisions[i] = Math.max(this.precisions[i], ((byte[])value).length);
+                    }
+                }
+            }
+
+            this.iterator = pending.rows.iterator();
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            return this.ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return this.pending.columns[column-1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return this.types[column-1];
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            switch ( this.types[column-1] ) {
+                case Types.INTEGER:   return 10;
+                case Types.TIMESTAMP: return 23;
+                default:              return this.precisions[column-1];
+            }
+        }
+
+        @Override
+        public int getScale(int column) {
+            return this.types[column-1] == Types.TIMESTAMP ? 3 : 0;
+        }
+
+        @Override
+        public boolean isAutoIncrement(int column) {
+            return false;
+        }
+
+        @Override
+        public Object[] getRowData() throws SQLServerException {
+            return this.currentRow;
+        }
+
+        @Override
+        public boolean next() throws SQLServerException {
+            if ( !this.iterator.hasNext() )
+                return false;
+            this.currentRow = this.iterator.next();
+            return true;
+        }
+    }
+}
@@ -8,7 +8,7 @@ package org.archicontribs.database.connection;
 
 import java.io.ByteArrayInputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -17,7 +17,12 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import org.apache.log4j.Level;
 import org.archicontribs.database.DBDatabaseEntry;
 import org.archicontribs.database.DBLogger;
@@ -43,12 +48,33 @@ public class DBDatabaseConnection implements AutoCloseable {
      * Version of the expected database model.<br>
      * If the value found into the columns version of the table "database_version", then the plugin will try to upgrade the datamodel.
      */
-    public static final int databaseVersion = 208;
+    public static final int databaseVersion = 214;
+
+    /**
+     * Value of the to_model_version column of the membership rows that are still valid in the latest version of the model<br>
+     * The interval of model versions of such a row is closed when the component is updated or removed from the model.
+     */
+    public static final int OPEN_MODEL_VERSION = Integer.MAX_VALUE;
+
+    /**
+     * Secondary indexes that are needed on top of the primary keys to speed up the import and export requests.<br>
+     * Each index is described by its name, its table and its columns.<br>
+     * <br>
+     * The properties, metadata and bendpoints tables do not need secondary indexes as their primary key already starts with (parent_id, parent_version).
+     */
+    private static final String[][] secondaryIndexes = {
+            {"idx_elements_in_model",      "elements_in_model",         "model_id, model_version"},
+            {"idx_relationships_in_model", "relationships_in_model",    "model_id, model_version"},
+            {"idx_folders_in_model",       "folders_in_model",          "model_id, model_version"},
+            {"idx_views_in_model",         "views_in_model",            "model_id, model_version"},
+            {"idx_objects_in_view",        "views_objects_in_view",     "view_id, view_version"},
+            {"idx_connections_in_view",    "views_connections_in_view", "view_id, view_version"}
+    };
 
     /**
      * the databaseEntry corresponding to the connection
      */
-    protected DBDatabaseEntry databaseEntry = null;
+    @Getter protected DBDatabaseEntry databaseEntry = null;
     @Getter protected String schema = "";
 
     /**
@@ -56,6 +82,48 @@ public class DBDatabaseConnection implements AutoCloseable {
      */
     protected Connection connection = null;
 
+    /**
+     * Pool the connection has been taken from, and to which it is released when closed
+     */
+    private DBDatabaseConnectionPool connectionPool = null;
+
+    /**
+     * PreparedStatements used by the batched requests, indexed by their SQL request<br>
+     * They are kept opened until the transaction is committed or rolled back.
+     */
+    private Map<String, PreparedStatement> batchedStatements = new LinkedHashMap<String, PreparedStatement>();
+
+    /**
+     * Number of requests added to each batched PreparedStatement and not yet sent to the database
+     */
+    private Map<String, Integer> batchedRequestsCount = new HashMap<String, Integer>();
+
+    /**
+     * Total number of batched requests not yet sent to the database
+     */
+    private int pendingBatchedRequests = 0;
+
+    /**
+     * Bulk loader used to insert the rows when the bulk load mode is switched on, null otherwise
+     */
+    private DBBulkLoader bulkLoader = null;
+
+    /**
+     * Maximum number of rows sent to the database in a single UNWIND request
+     */
+    private static final int unwindChunkSize = 1000;
+
+    /**
+     * Rows waiting to be sent to the database by the UNWIND requests, indexed by the stage of their request then by their request, in the order the requests have been first used
+     */
+    private TreeMap<Integer, Map<String, List<Map<String, Object>>>> pendingUnwindRows = new TreeMap<Integer, Map<String, List<Map<String, Object>>>>();
+
+    /**
+     * Savepoint of the current group of requests (PostgreSQL only), null if no request has been sent since the group started<br>
+     * On PostgreSQL, a failed request aborts the whole transaction, so the transaction is rolled back to this savepoint to be able to send new requests.
+     */
+    private Savepoint groupSavepoint = null;
+
     // This variables allows to store the columns type. They will be calculated for all the database brands.
     private String AUTO_INCREMENT;
     private String BOOLEAN;
@@ -94,66 +162,8 @@ public class DBDatabaseConnection implements AutoCloseable {
         if ( isConnected() )
             close();
 
-        if ( logger.isDebugEnabled() ) logger.debug("Opening connection to database "+this.databaseEntry.getName()+" : driver="+this.databaseEntry.getDriver()+", server="+this.databaseEntry.getServer()+", port="+this.databaseEntry.getPort()+", database="+this.databaseEntry.getDatabase()+", schema="+this.databaseEntry.getSchema()+", username="+this.databaseEntry.getUsername());
-
-        String clazz = null;
-        String connectionString = null;
-
-        switch (this.databaseEntry.getDriver()) {
-            case "postgresql" :
-                clazz = "org.postgresql.Driver";
-                connectionString = "jdbc:postgresql://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + "/" + this.databaseEntry.getDatabase();
-                break;
-            case "ms-sql"      :
-                clazz = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-                connectionString = "jdbc:sqlserver://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + ";databaseName=" + this.databaseEntry.getDatabase();
-                if ( DBPlugin.isEmpty(this.databaseEntry.getUsername()) && DBPlugin.isEmpty(this.databaseEntry.getPassword()) )
-                    connectionString += ";integratedSecurity=true";
-                break;
-            case "mysql"      :
-                clazz = "com.mysql.jdbc.Driver";
-                connectionString = "jdbc:mysql://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + "/" + this.databaseEntry.getDatabase();
-                break;
-            case "neo4j"      :
-                clazz = "org.neo4j.jdbc.Driver";
-                connectionString = "jdbc:neo4j:bolt://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort();
-                break;
-            case "oracle"     :
-                clazz = "oracle.jdbc.driver.OracleDriver";
-                connectionString = "jdbc:oracle:thin:@" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + ":" + this.databaseEntry.getDatabase();
-                break;
-            case "sqlite"     :
-                clazz = "org.sqlite.JDBC";
-                connectionString = "jdbc:sqlite:"+this.databaseEntry.getServer();
-                break;
-            default :
-                throw new SQLException("Unknonwn driver " + this.databaseEntry.getDriver());        // just in case
-        }
-
-        if ( logger.isDebugEnabled() ) logger.debug("JDBC class = " + clazz);
-        Class.forName(clazz);
-
-        if ( logger.isDebugEnabled() ) logger.debug("JDBC connection string = " + connectionString);
-        try {
-            if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.MSSQL.getDriverName()) && DBPlugin.isEmpty(this.databaseEntry.getUsername()) && DBPlugin.isEmpty(this.databaseEntry.getPassword()) ) {
-                if ( logger.isDebugEnabled() ) logger.debug("Connecting with Windows integrated security");
-                this.connection = DriverManager.getConnection(connectionString);
-            } else {
-                if ( logger.isDebugEnabled() ) logger.debug("Connecting with username = "+this.databaseEntry.getUsername());
-                this.connection = DriverManager.getConnection(connectionString, this.databaseEntry.getUsername(), this.databaseEntry.getPassword());
-            }
-        } catch (SQLException e) {
-            // if the JDBC driver fails to connect to the database using the specified driver, then it tries with all the other drivers
-            // and the exception is raised by the latest driver (log4j in our case)
-            // so we need to trap this exception and change the error message
-            // For JDBC people, this is not a bug but a functionality :( 
-            if ( DBPlugin.areEqual(e.getMessage(), "JDBC URL is not correct.\nA valid URL format is: 'jdbc:neo4j:http://<host>:<port>'") ) {
-                if ( this.databaseEntry.getDriver().equals(DBDatabase.MSSQL.getDriverName()) && DBPlugin.isEmpty(this.databaseEntry.getUsername()) && DBPlugin.isEmpty(this.databaseEntry.getPassword()) )	// integrated authentication
-                    throw new SQLException("Please verify the database configuration in the preferences.\n\nPlease also check that you installed the \"sqljdbc_auth.dll\" file in the JRE bin folder to enable the SQL Server integrated security mode.");
-                throw new SQLException("Please verify the database configuration in the preferences.");
-            }
-            throw e;
-        }
+        this.connectionPool = DBDatabaseConnectionPool.getPool(this.databaseEntry);
+        this.connection = this.connectionPool.getConnection();
 
         if ( logger.isDebugEnabled() ) {
             if ( DBPlugin.isEmpty(this.schema) ) {
@@ -165,23 +175,43 @@ public class DBDatabaseConnection implements AutoCloseable {
     }
 
     /**
-     * Closes connection to the database
+     * Closes connection to the database<br>
+     * <br>
+     * The JDBC connection is released to the connection pool so it can be reused by the next dialog.
      */
     @Override
     public void close() throws SQLException {
+        resetPreparedStatementsCache();
+
         if ( this.connection == null || this.connection.isClosed() ) {
             if ( logger.isDebugEnabled() ) logger.debug("The database connection is already closed.");
         } else {
             if ( logger.isDebugEnabled() ) logger.debug("Closing database connection.");
             // if some transactions have not been committed before calling this close method, then they must be rolled back
+            closeBatchedStatements();
+            discardBulkLoader();
+            this.pendingUnwindRows.clear();
+            this.groupSavepoint = null;
             try {
                 this.connection.rollback();
             } catch (@SuppressWarnings("unused") SQLException ign) {
                 // nothing to do
             }
-            this.connection.close();
+
+            if ( this.connectionPool == null )
+                this.connection.close();
+            else {
+                // the connection must be in auto-commit mode when it is reused
+                try {
+                    this.connection.setAutoCommit(true);
+                    this.connectionPool.releaseConnection(this.connection);
+                } catch (@SuppressWarnings("unused") SQLException ign) {
+                    this.connectionPool.discardConnection(this.connection);
+                }
+            }
         }
         this.connection = null;
+        this.connectionPool = null;
         this.databaseEntry = null;
     }
 
@@ -216,8 +246,15 @@ public class DBDatabaseConnection implements AutoCloseable {
 	        if ( !isConnected() )
 	            openConnection();
 	
+	        // if the database structure has already been checked through another connection, we do not need to check it again
+	        if ( (this.connectionPool != null) && this.connectionPool.isDatabaseVersionVerified(databaseVersion) ) {
+	            if ( logger.isDebugEnabled() ) logger.debug("The database structure has already been checked.");
+	            return;
+	        }
+	
 	        if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) ) {
-	        	// do not need to create tables
+	        	// do not need to create tables (the indexes are created by the export, see DBDatabaseExportConnection.createNeo4jIndexes)
+	            setDatabaseVersionVerified();
 	            return;
 	        }
 
@@ -315,6 +352,7 @@ public class DBDatabaseConnection implements AutoCloseable {
 	                throw new SQLException("Necessary tables not found.");
 	
 	            createTables(dbGui);
+	            setDatabaseVersionVerified();
 	            return;
 	        }
 	
@@ -329,6 +367,8 @@ public class DBDatabaseConnection implements AutoCloseable {
 	            else
 	                throw new SQLException("The database needs to be upgraded.");
 	        }
+
+	        setDatabaseVersionVerified();
 	    } finally {
 			if ( dbGui != null )
 				dbGui.closeMessage();
@@ -337,6 +377,14 @@ public class DBDatabaseConnection implements AutoCloseable {
 	    }
     }
 
+    /**
+     * Remembers in the connection pool that the database structure has been checked
+     */
+    private void setDatabaseVersionVerified() {
+        if ( this.connectionPool != null )
+            this.connectionPool.setDatabaseVersionVerified(databaseVersion);
+    }
+
     /**
      * Creates the necessary tables in the database
      * @throws ClassNotFoundException 
@@ -401,6 +449,7 @@ public class DBDatabaseConnection implements AutoCloseable {
                     + "parent_folder_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_version "+ this.INTEGER +" NOT NULL, "
+                    + "to_model_version "+ this.INTEGER +" NOT NULL, "
                     + "rank "+ this.INTEGER +" NOT NULL"
                     + (this.AUTO_INCREMENT.endsWith("PRIMARY KEY") ? "" : (", "+this.PRIMARY_KEY+" (eim_id)") )
                     + ")");
@@ -418,6 +467,14 @@ public class DBDatabaseConnection implements AutoCloseable {
                         + "END;");
             }
 
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"export_staging");
+            request("CREATE TABLE "+this.schema+"export_staging ("
+                    + "session_id "+ this.OBJECTID +" NOT NULL, "
+                    + "id "+ this.OBJECTID +" NOT NULL, "
+                    + "checksum "+ this.OBJECTID +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (session_id, id)"
+                    + ")");
+
             if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"folders");
             request("CREATE TABLE "+this.schema+"folders ("
                     + "id "+ this.OBJECTID +" NOT NULL, "
@@ -440,6 +497,7 @@ public class DBDatabaseConnection implements AutoCloseable {
                     + "parent_folder_id "+ this.OBJECTID +", "
                     + "model_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_version "+ this.INTEGER +" NOT NULL, "
+                    + "to_model_version "+ this.INTEGER +" NOT NULL, "
                     + "rank "+ this.INTEGER +" NOT NULL"
                     + (this.AUTO_INCREMENT.endsWith("PRIMARY KEY") ? "" : (", "+this.PRIMARY_KEY+" (fim_id)") )
                     + ")");
@@ -460,10 +518,24 @@ public class DBDatabaseConnection implements AutoCloseable {
             if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"images");
             request("CREATE TABLE "+this.schema+"images ("
                     + "path "+ this.OBJECTID +" NOT NULL, "
-                    + "image "+ this.IMAGE +" NOT NULL, "
+                    + "checksum "+ this.OBJECTID +" NOT NULL, "
                     + this.PRIMARY_KEY+" (path)"
                     + ")");
 
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"images_content");
+            request("CREATE TABLE "+this.schema+"images_content ("
+                    + "checksum "+ this.OBJECTID +" NOT NULL, "
+                    + "image "+ this.IMAGE +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (checksum)"
+                    + ")");
+
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"latest_versions");
+            request("CREATE TABLE "+this.schema+"latest_versions ("
+                    + "id "+ this.OBJECTID +" NOT NULL, "
+                    + "version "+ this.INTEGER +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (id)"
+                    + ")");
+
             if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"models");
             request("CREATE TABLE "+this.schema+"models ("
                     + "id "+ this.OBJECTID +" NOT NULL, "
@@ -530,6 +602,7 @@ public class DBDatabaseConnection implements AutoCloseable {
                     + "parent_folder_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_version "+ this.INTEGER +" NOT NULL, "
+                    + "to_model_version "+ this.INTEGER +" NOT NULL, "
                     + "rank "+this.INTEGER +" NOT NULL "
                     + (this.AUTO_INCREMENT.endsWith("PRIMARY KEY") ? "" : (", "+this.PRIMARY_KEY+" (rim_id)") )
                     + ")");
@@ -562,6 +635,7 @@ public class DBDatabaseConnection implements AutoCloseable {
                     + "connection_router_type "+ this.INTEGER +" NOT NULL, "
                     + "viewpoint "+ this.OBJECTID +", "
                     + "screenshot "+ this.IMAGE +", "
+                    + "screenshot_checksum "+ this.OBJECTID +", "
                     + "checksum "+ this.OBJECTID +" NOT NULL, "
                     + "container_checksum "+ this.OBJECTID +" NOT NULL, "
                     + this.PRIMARY_KEY+" (id, version)"
@@ -624,6 +698,7 @@ public class DBDatabaseConnection implements AutoCloseable {
                     + "parent_folder_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_id "+ this.OBJECTID +" NOT NULL, "
                     + "model_version "+ this.INTEGER +" NOT NULL, "
+                    + "to_model_version "+ this.INTEGER +" NOT NULL, "
                     + "rank "+ this.INTEGER
                     + (this.AUTO_INCREMENT.endsWith("PRIMARY KEY") ? "" : (", "+this.PRIMARY_KEY+" (vim_id)") )
                     + ")");
@@ -703,6 +778,10 @@ public class DBDatabaseConnection implements AutoCloseable {
                         + "END;");
             }
 
+            for ( String[] index: secondaryIndexes )
+                createIndex(index[0], index[1], index[2]);
+            createIndex("idx_views_screenshot", "views", "screenshot_checksum");
+
             commit();
             setAutoCommit(true);
 
@@ -840,6 +919,66 @@ public class DBDatabaseConnection implements AutoCloseable {
         }
     }
 
+    /**
+     * Creates an index on a table
+     * @param indexName name of the index, without the schema
+     * @param tableName name of the table, without the schema
+     * @param columns comma separated list of the columns to index
+     */
+    public void createIndex(String indexName, String tableName, String columns) throws SQLException {
+        if ( logger.isDebugEnabled() ) logger.debug("creating index "+indexName+" on table "+this.schema+tableName+" ("+columns+")");
+
+        // Oracle and SQLite expect the index name to be prefixed by the schema, SQLite does not allow the table name to be prefixed by the schema
+        if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.ORACLE.getDriverName()) )
+            request("CREATE INDEX "+this.schema+indexName+" ON "+this.schema+tableName+" ("+columns+")");
+        else if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.SQLITE.getDriverName()) )
+            request("CREATE INDEX "+this.schema+indexName+" ON "+tableName+" ("+columns+")");
+        else
+            request("CREATE INDEX "+indexName+" ON "+this.schema+tableName+" ("+columns+")");
+    }
+
+    /**
+     * Checks that the secondary indexes exist in the database, and creates the missing ones<br>
+     * As it updates the database structure, this method must only be called when the user accepted to upgrade the database.
+     */
+    private void checkIndexes() throws SQLException {
+        DatabaseMetaData metadata = this.connection.getMetaData();
+
+        String schemaName = DBPlugin.isEmpty(this.databaseEntry.getSchema()) ? null : this.databaseEntry.getSchema();
+        if ( schemaName != null && metadata.storesUpperCaseIdentifiers() )
+            schemaName = schemaName.toUpperCase();
+        else if ( schemaName != null && metadata.storesLowerCaseIdentifiers() )
+            schemaName = schemaName.toLowerCase();
+
+        for ( String[] index: secondaryIndexes ) {
+            String tableName = index[1];
+            if ( metadata.storesUpperCaseIdentifiers() )
+                tableName = tableName.toUpperCase();
+
+            // the index may have been created by the database administrator under another name, so we also compare the indexed columns
+            Map<String, String> existingIndexes = new HashMap<String, String>();
+            try ( ResultSet result = metadata.getIndexInfo(this.connection.getCatalog(), schemaName, tableName, false, true) ) {
+                while ( result.next() ) {
+                    String indexName = result.getString("INDEX_NAME");
+                    String columnName = result.getString("COLUMN_NAME");
+                    if ( (indexName != null) && (columnName != null) ) {
+                        String columns = existingIndexes.get(indexName);
+                        existingIndexes.put(indexName, (columns == null) ? columnName : columns+", "+columnName);
+                    }
+                }
+            }
+
+            boolean indexFound = false;
+            for ( Map.Entry<String, String> existingIndex: existingIndexes.entrySet() )
+                indexFound = indexFound || index[0].equalsIgnoreCase(existingIndex.getKey()) || index[2].equalsIgnoreCase(existingIndex.getValue());
+
+            if ( indexFound ) {
+                if ( logger.isTraceEnabled() ) logger.trace("Index "+index[0]+" found on table "+this.schema+index[1]);
+            } else
+                createIndex(index[0], index[1], index[2]);
+        }
+    }
+
     /**
      * Upgrades the database
      * @throws Exception 
@@ -1067,6 +1206,133 @@ public class DBDatabaseConnection implements AutoCloseable {
             dbVersion = 208;
         }
 
+        // convert from version 208 to 209
+        //      - create latest_versions table
+        //      - fill in the latest_versions table with the latest version of the existing components
+        if ( dbVersion == 208 ) {
+            DBGui.popup("Please wait while converting data.");
+
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"latest_versions");
+            request("CREATE TABLE "+this.schema+"latest_versions ("
+                    + "id "+ this.OBJECTID +" NOT NULL, "
+                    + "version "+ this.INTEGER +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (id)"
+                    + ")");
+
+            for ( String table: new String[] {"elements", "relationships", "folders", "views", "views_objects", "views_connections"} ) {
+                if ( logger.isDebugEnabled() ) logger.debug("copying latest versions of "+this.schema+table);
+                request("INSERT INTO "+this.schema+"latest_versions (id, version) SELECT id, MAX(version) FROM "+this.schema+table+" GROUP BY id");
+            }
+
+            DBGui.closePopup();
+
+            dbVersion = 209;
+        }
+
+        // convert from version 209 to 210
+        //      - create secondary indexes on the *_in_model and *_in_view tables
+        if ( dbVersion == 209 ) {
+            checkIndexes();
+
+            dbVersion = 210;
+        }
+
+        // convert from version 210 to 211
+        //      - create export_staging table
+        if ( dbVersion == 210 ) {
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"export_staging");
+            request("CREATE TABLE "+this.schema+"export_staging ("
+                    + "session_id "+ this.OBJECTID +" NOT NULL, "
+                    + "id "+ this.OBJECTID +" NOT NULL, "
+                    + "checksum "+ this.OBJECTID +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (session_id, id)"
+                    + ")");
+
+            dbVersion = 211;
+        }
+
+        // convert from version 211 to 212
+        //      - create images_content table that stores each image content once, indexed by its checksum
+        //      - recreate the images table with a checksum column that maps the image paths to their content, in place of the image column
+        //        the images without content are removed, as they cannot be imported anyway
+        if ( dbVersion == 211 ) {
+            final String[] imagesColumns = {"path", "checksum"};
+            final String[] imagesContentColumns = {"checksum", "image"};
+            DBGui.popup("Please wait while converting data.");
+
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"images_content");
+            request("CREATE TABLE "+this.schema+"images_content ("
+                    + "checksum "+ this.OBJECTID +" NOT NULL, "
+                    + "image "+ this.IMAGE +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (checksum)"
+                    + ")");
+
+            ArrayList<String> paths = new ArrayList<String>();
+            try ( ResultSet result = select("SELECT path FROM "+this.schema+"images") ) {
+                while ( result.next() )
+                    paths.add(result.getString("path"));
+            }
+
+            // the images are converted one by one so only one image content is in memory at a time
+            Map<String, String> checksums = new LinkedHashMap<String, String>();
+            for ( String path: paths ) {
+                byte[] image = null;
+                try ( ResultSet result = select("SELECT image FROM "+this.schema+"images WHERE path = ?", path) ) {
+                    if ( result.next() )
+                        image = result.getBytes("image");
+                }
+                if ( image == null ) {
+                    logger.warn("Image "+path+" has got no content in the database, it is removed.");
+                    continue;
+                }
+
+                String checksum = DBChecksum.calculateChecksum(image);
+                try ( ResultSet result = select("SELECT checksum FROM "+this.schema+"images_content WHERE checksum = ?", checksum) ) {
+                    if ( !result.next() )
+                        insert(this.schema+"images_content", imagesContentColumns, checksum, image);
+                }
+                checksums.put(path, checksum);
+            }
+
+            // the table is recreated rather than altered, so the checksum column is NOT NULL as in a fresh install
+            dropTableIfExists(this.schema+"images");
+            if ( logger.isDebugEnabled() ) logger.debug("creating table "+this.schema+"images");
+            request("CREATE TABLE "+this.schema+"images ("
+                    + "path "+ this.OBJECTID +" NOT NULL, "
+                    + "checksum "+ this.OBJECTID +" NOT NULL, "
+                    + this.PRIMARY_KEY+" (path)"
+                    + ")");
+            for ( Map.Entry<String, String> entry: checksums.entrySet() )
+                insert(this.schema+"images", imagesColumns, entry.getKey(), entry.getValue());
+
+            DBGui.closePopup();
+
+            dbVersion = 212;
+        }
+
+        // convert from version 212 to 213
+        //      - add a screenshot_checksum column to the views table that identifies the screenshot content (view checksum, scale factor and border width)
+        //        the screenshot of a previous version of the view is copied when it has got the same screenshot_checksum
+        if ( dbVersion == 212 ) {
+            addColumn(this.schema+"views", "screenshot_checksum", this.OBJECTID);
+            createIndex("idx_views_screenshot", "views", "screenshot_checksum");
+
+            dbVersion = 213;
+        }
+
+        // convert from version 213 to 214
+        //      - add a to_model_version column to the elements_in_model, relationships_in_model, folders_in_model and views_in_model tables
+        //        each row links a component to all the model versions between model_version and to_model_version, so the unchanged components
+        //        do not need a new row in each model version (see DBDatabaseExportConnection.setMembershipsCopy)
+        if ( dbVersion == 213 ) {
+            for ( String table: new String[] {"elements_in_model", "relationships_in_model", "folders_in_model", "views_in_model"} ) {
+                addColumn(this.schema+table, "to_model_version", this.INTEGER, false, 0);
+                request("UPDATE "+this.schema+table+" SET to_model_version = model_version");
+            }
+
+            dbVersion = 214;
+        }
+
         request("UPDATE "+this.schema+"database_version SET version = "+dbVersion+" WHERE archi_plugin = '"+DBPlugin.pluginName+"'");
         commit();
 
@@ -1078,7 +1344,7 @@ public class DBDatabaseConnection implements AutoCloseable {
      */
     @SuppressWarnings("unchecked")
     @SafeVarargs
-    private final static <T> void constructStatement(PreparedStatement pstmt, String request, T... parameters) throws SQLException {
+    final static <T> void constructStatement(PreparedStatement pstmt, String request, T... parameters) throws SQLException {
         StringBuilder debugRequest = new StringBuilder();
         String[] splittedRequest = request.split("\\?");
 
@@ -1138,9 +1404,114 @@ public class DBDatabaseConnection implements AutoCloseable {
     }
 
     /**
-     * HashMap to store the JDBC preparedStatements
+     * Maximum number of JDBC PreparedStatements kept in the cache
+     */
+    public static final int preparedStatementsCacheSize = 100;
+
+    /**
+     * Cache of the JDBC PreparedStatements, indexed by their SQL request<br>
+     * This avoids the database to parse and plan again and again the same requests.<br>
+     * When the cache is full, the least recently used PreparedStatement is evicted.
+     */
+    private Map<String, PreparedStatement> preparedStatementsCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if ( size() <= preparedStatementsCacheSize )
+                return false;
+            closeCachedPreparedStatement(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    };
+
+    /**
+     * Last ResultSet returned by the cached PreparedStatements<br>
+     * A PreparedStatement cannot be executed again while its ResultSet is still in use (nested loops on the same request).
      */
-    //private Map<String, PreparedStatement> preparedStatementMap = new HashMap<String, PreparedStatement>();
+    private Map<String, ResultSet> preparedStatementsResultSets = new HashMap<String, ResultSet>();
+
+    private int preparedStatementsCacheHits = 0;
+    private int preparedStatementsCacheMisses = 0;
+
+    /**
+     * Gets the PreparedStatement corresponding to the request from the cache, or prepares it if it is not in the cache yet
+     * @return the PreparedStatement, or null if the cached PreparedStatement is still in use
+     */
+    private PreparedStatement getCachedPreparedStatement(String request) throws SQLException {
+        PreparedStatement pstmt = this.preparedStatementsCache.get(request);
+
+        if ( pstmt == null ) {
+            ++this.preparedStatementsCacheMisses;
+            pstmt = this.connection.prepareStatement(request, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            this.preparedStatementsCache.put(request, pstmt);
+            return pstmt;
+        }
+
+        if ( isCachedPreparedStatementInUse(request) ) {
+            ++this.preparedStatementsCacheMisses;
+            return null;
+        }
+
+        ++this.preparedStatementsCacheHits;
+        pstmt.clearParameters();
+        return pstmt;
+    }
+
+    /**
+     * @return true if the ResultSet returned by the cached PreparedStatement is not closed yet
+     */
+    private boolean isCachedPreparedStatementInUse(String request) {
+        ResultSet result = this.preparedStatementsResultSets.get(request);
+        if ( result == null )
+            return false;
+
+        try {
+            if ( result.isClosed() ) {
+                this.preparedStatementsResultSets.remove(request);
+                return false;
+            }
+        } catch (@SuppressWarnings("unused") SQLException ign) {
+            // if we cannot know, we consider that the ResultSet is still in use
+        }
+        return true;
+    }
+
+    /**
+     * Closes a PreparedStatement evicted from the cache<br>
+     * If its ResultSet is still in use, the PreparedStatement will be closed by the JDBC driver once the ResultSet is closed.
+     */
+    void closeCachedPreparedStatement(String request, PreparedStatement pstmt) {
+        try {
+            if ( isCachedPreparedStatementInUse(request) )
+                pstmt.closeOnCompletion();
+            else
+                pstmt.close();
+        } catch (@SuppressWarnings("unused") SQLException ign) {
+            // nothing to do
+        }
+        this.preparedStatementsResultSets.remove(request);
+    }
+
+    /**
+     * Closes all the PreparedStatements of the cache and logs the cache statistics
+     */
+    protected void resetPreparedStatementsCache() {
+        if ( logger.isDebugEnabled() && ((this.preparedStatementsCacheHits + this.preparedStatementsCacheMisses) != 0) )
+            logger.debug("PreparedStatements cache: "+this.preparedStatementsCacheHits+" hit"+(this.preparedStatementsCacheHits>1?"s":"")+", "+this.preparedStatementsCacheMisses+" miss"+(this.preparedStatementsCacheMisses>1?"es":"")+", "+this.preparedStatementsCache.size()+" statement"+(this.preparedStatementsCache.size()>1?"s":"")+" in cache");
+
+        for ( PreparedStatement pstmt: this.preparedStatementsCache.values() ) {
+            try {
+                pstmt.close();
+            } catch (@SuppressWarnings("unused") SQLException ign) {
+                // nothing to do
+            }
+        }
+        this.preparedStatementsCache.clear();
+        this.preparedStatementsResultSets.clear();
+        this.preparedStatementsCacheHits = 0;
+        this.preparedStatementsCacheMisses = 0;
+    }
 
 	/**
      * Wrapper to generate and execute a SELECT request in the database<br>
@@ -1153,11 +1524,22 @@ public class DBDatabaseConnection implements AutoCloseable {
     public final <T> ResultSet select(String request, T... parameters) throws SQLException {
         assert ( isConnected() );
 
+        // the pending batched requests must be sent first so that the select sees them
+        executeBatches();
+
         ResultSet result = null;
         try {
-        	PreparedStatement pstmt = this.connection.prepareStatement(request, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-            constructStatement(pstmt, request, parameters);
-            result = pstmt.executeQuery();
+        	PreparedStatement pstmt = getCachedPreparedStatement(request);
+        	if ( pstmt == null ) {
+        		// the cached PreparedStatement is still in use, so we use a new one
+        		pstmt = this.connection.prepareStatement(request, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        		constructStatement(pstmt, request, parameters);
+        		result = pstmt.executeQuery();
+        	} else {
+        		constructStatement(pstmt, request, parameters);
+        		result = pstmt.executeQuery();
+        		this.preparedStatementsResultSets.put(request, result);
+        	}
         } catch (SQLException err) {
             // in case of an SQLException, we log the raw request to ease the debug process
             if ( logger.isTraceEnabled() ) logger.trace("SQL Exception for database request : "+request);
@@ -1177,9 +1559,320 @@ public class DBDatabaseConnection implements AutoCloseable {
     public final <T> int insert(String table, String[] columns, T...parameters) throws SQLException {
         assert ( isConnected() );
 
+        ArrayList<T> newParameters = new ArrayList<T>();
+        String request = getInsertRequest(table, columns, newParameters, parameters);
+
+        return request(request, newParameters.toArray());
+    }
+
+    /**
+     * wrapper to generate an INSERT request and add it to a JDBC batch<br>
+     * The requests are grouped by table (in fact by SQL request) and sent to the database each time the batch size configured in the database entry is reached.<br>
+     * The pending requests are sent to the database before any other request, and at the latest when the transaction is committed.<br>
+     * <br>
+     * When the batch size is lower than 2 or when the database is in auto-commit mode, the request is executed immediately as done by the {@link #insert} method.<br>
+     * <br>
+     * When the bulk load mode is switched on (see {@link #setBulkLoad}), the row is sent to the database using the native bulk load path of the database.
+     * @return The number of lines inserted in the table (as the lines are not effectively inserted yet, the value is always 1 in batch mode)
+     */
+    @SafeVarargs
+    public final <T> int insertInBatch(String table, String[] columns, T...parameters) throws SQLException {
+        assert ( isConnected() );
+
+        if ( this.bulkLoader != null ) {
+            if ( this.bulkLoader.add(table, columns, parameters) ) {
+                // the pending batched requests are sent first as they may delete rows that are being inserted (like in the latest_versions table)
+                executePendingBatches();
+                setGroupSavepoint();
+                try {
+                    this.bulkLoader.flush(table);
+                } catch (SQLException err) {
+                    rollbackToGroupSavepoint();
+                    throw err;
+                }
+            }
+            return 1;
+        }
+
+        ArrayList<T> newParameters = new ArrayList<T>();
+        String request = getInsertRequest(table, columns, newParameters, parameters);
+
+        return requestInBatch(request, newParameters.toArray());
+    }
+
+    /**
+     * Switches the bulk load mode on or off<br>
+     * In bulk load mode, the rows inserted by {@link #insertInBatch} are sent to the database using the native bulk load path of the database (see {@link DBDatabase#getBulkLoadMode()}).<br>
+     * The bulk load mode needs a transaction, and lasts until the transaction is committed or rolled back.
+     */
+    public void setBulkLoad(boolean bulkLoad) throws SQLException {
+        if ( !bulkLoad ) {
+            if ( this.bulkLoader != null ) {
+                executeBatches();
+                this.bulkLoader = null;
+            }
+            return;
+        }
+
+        DBDatabase database = DBDatabase.get(this.databaseEntry.getDriver());
+        if ( (database == null) || (database.getBulkLoadMode() == DBDatabase.BulkLoadMode.NONE) || this.connection.getAutoCommit() ) {
+            if ( logger.isDebugEnabled() ) logger.debug("Bulk load mode is not available.");
+            return;
+        }
+
+        if ( logger.isDebugEnabled() ) logger.debug("Switching to bulk load mode ("+database.getBulkLoadMode()+")");
+        if ( this.bulkLoader == null )
+            this.bulkLoader = new DBBulkLoader(this.connection, database.getBulkLoadMode());
+    }
+
+    /**
+     * Checks if the bulk load mode is switched on
+     */
+    public boolean isBulkLoad() {
+        return this.bulkLoader != null;
+    }
+
+    /**
+     * wrapper to add a request to a JDBC batch<br>
+     * The requests are sent to the database in the order they have been first batched, each time the batch size configured in the database entry is reached.<br>
+     * <br>
+     * When the batch size is lower than 2 or when the database is in auto-commit mode, the request is executed immediately as done by the {@link #request} method.
+     * @return The number of lines impacted by the request (as the request is not effectively executed yet, the value is always 1 in batch mode)
+     */
+    @SafeVarargs
+    public final <T> int requestInBatch(String request, T...parameters) throws SQLException {
+        assert ( isConnected() );
+
+        int batchSize = this.databaseEntry.getExportBatchSize();
+        if ( (batchSize < 2) || this.connection.getAutoCommit() )
+            return request(request, parameters);
+
+        PreparedStatement pstmt = this.batchedStatements.get(request);
+        if ( pstmt == null ) {
+            pstmt = this.connection.prepareStatement(request);
+            this.batchedStatements.put(request, pstmt);
+        }
+
+        constructStatement(pstmt, request, parameters);
+        pstmt.addBatch();
+        ++this.pendingBatchedRequests;
+
+        Integer count = this.batchedRequestsCount.get(request);
+        count = (count == null) ? 1 : count+1;
+        this.batchedRequestsCount.put(request, count);
+
+        if ( count >= batchSize )
+            executeBatch(request, pstmt);
+
+        return 1;
+    }
+
+    /**
+     * Sends all the pending batched requests and bulk loaded rows to the database
+     */
+    public void executeBatches() throws SQLException {
+        executePendingBatches();
+        executePendingUnwinds();
+
+        if ( (this.bulkLoader != null) && !this.bulkLoader.isEmpty() ) {
+            setGroupSavepoint();
+            try {
+                this.bulkLoader.flush();
+            } catch (SQLException err) {
+                rollbackToGroupSavepoint();
+                throw err;
+            }
+        }
+    }
+
+    /**
+     * Sends the pending batched requests to the database
+     */
+    private void executePendingBatches() throws SQLException {
+        if ( this.pendingBatchedRequests == 0 )
+            return;
+
+        if ( logger.isDebugEnabled() ) logger.debug("Sending "+this.pendingBatchedRequests+" batched request"+(this.pendingBatchedRequests>1?"s":"")+" to the database.");
+        for ( Map.Entry<String, PreparedStatement> entry: this.batchedStatements.entrySet() ) {
+            Integer count = this.batchedRequestsCount.get(entry.getKey());
+            if ( (count != null) && (count != 0) )
+                executeBatch(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Sends the pending requests of a batched PreparedStatement to the database
+     */
+    private void executeBatch(String request, PreparedStatement pstmt) throws SQLException {
+        int count = this.batchedRequestsCount.get(request);
+
+        if ( logger.isTraceSQLEnabled() ) logger.trace("      --> executing batch of "+count+" request"+(count>1?"s":"")+" : "+request);
+
+        setGroupSavepoint();
+        try {
+            pstmt.executeBatch();
+        } catch (SQLException err) {
+            rollbackToGroupSavepoint();
+            // in case of an SQLException, we log the raw request to ease the debug process
+            if ( logger.isTraceEnabled() ) logger.trace("SQL Exception for database batched request : "+request);
+            // the real cause of a BatchUpdateException is often hidden in the next exception
+            if ( err.getNextException() != null )
+                logger.error("Batch failed", err.getNextException());
+            throw err;
+        } finally {
+            this.pendingBatchedRequests -= count;
+            this.batchedRequestsCount.put(request, 0);
+        }
+    }
+
+    /**
+     * wrapper to add a row to an UNWIND request (Neo4J databases)<br>
+     * The request must contain a single parameter, which receives the list of the rows: "UNWIND ? AS row ..."<br>
+     * <br>
+     * The rows are sent to the database in chunks, so a single request creates or updates many nodes or relationships instead of one request per node or relationship.<br>
+     * When a chunk is full, the pending rows of all the requests are sent by increasing stage, then in the order the requests have been first used.
+     * The stage of a request must therefore be higher than the stage of the requests that create the nodes it matches.<br>
+     * <br>
+     * When the database is in auto-commit mode, the row is sent immediately.
+     */
+    public void unwindInBatch(String request, int stage, Map<String, Object> row) throws SQLException {
+        assert ( isConnected() );
+
+        Map<String, List<Map<String, Object>>> requests = this.pendingUnwindRows.get(stage);
+        if ( requests == null ) {
+            requests = new LinkedHashMap<String, List<Map<String, Object>>>();
+            this.pendingUnwindRows.put(stage, requests);
+        }
+        List<Map<String, Object>> rows = requests.get(request);
+        if ( rows == null ) {
+            rows = new ArrayList<Map<String, Object>>();
+            requests.put(request, rows);
+        }
+        rows.add(row);
+
+        if ( this.connection.getAutoCommit() || (rows.size() >= unwindChunkSize) )
+            executePendingUnwinds();
+    }
+
+    /**
+     * Sends the pending rows of the UNWIND requests to the database
+     */
+    private void executePendingUnwinds() throws SQLException {
+        for ( Map<String, List<Map<String, Object>>> requests: this.pendingUnwindRows.values() ) {
+            for ( Map.Entry<String, List<Map<String, Object>>> entry: requests.entrySet() ) {
+                List<Map<String, Object>> rows = entry.getValue();
+                if ( rows.isEmpty() )
+                    continue;
+
+                if ( logger.isTraceSQLEnabled() ) logger.trace("      --> executing request for "+rows.size()+" row"+(rows.size()>1?"s":"")+" : "+entry.getKey());
+                try ( PreparedStatement pstmt = this.connection.prepareStatement(entry.getKey()) ) {
+                    pstmt.setObject(1, rows);
+                    pstmt.executeUpdate();
+                } catch (SQLException err) {
+                    // in case of an SQLException, we log the raw request to ease the debug process
+                    if ( logger.isTraceEnabled() ) logger.trace("SQL Exception for database request : "+entry.getKey());
+                    throw err;
+                } finally {
+                    rows.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new group of requests (PostgreSQL only)<br>
+     * <br>
+     * On PostgreSQL, a failed request aborts the whole transaction. To be able to recover from a failed request, a savepoint is set before
+     * the first request of each group of requests, and the transaction is rolled back to this savepoint when a request of the group fails.<br>
+     * This costs two round trips to the database per group instead of two round trips per request, but all the requests of the group sent
+     * before the failed one are rolled back as well.<br>
+     * <br>
+     * The pending batched requests are sent before the new group is started, so they belong to the previous group.
+     */
+    public void startRequestsGroup() throws SQLException {
+        executeBatches();
+        if ( this.groupSavepoint != null ) {
+            this.connection.releaseSavepoint(this.groupSavepoint);
+            this.groupSavepoint = null;
+        }
+    }
+
+    /**
+     * Sets the savepoint of the current group of requests if it is not set yet<br>
+     * Savepoints are only required on PostgreSQL databases, and cannot be set in auto-commit mode.
+     */
+    private void setGroupSavepoint() throws SQLException {
+        if ( (this.groupSavepoint == null) && DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.POSTGRESQL.getDriverName()) && !this.connection.getAutoCommit() )
+            this.groupSavepoint = this.connection.setSavepoint();
+    }
+
+    /**
+     * Rolls back the transaction to the savepoint of the current group of requests, so that new requests can be sent to the database after a failed request
+     */
+    private void rollbackToGroupSavepoint() {
+        if ( this.groupSavepoint != null ) {
+            try {
+                this.connection.rollback(this.groupSavepoint);
+                if ( logger.isTraceEnabled() ) logger.trace("Rolled back to savepoint");
+            } catch (SQLException e2) { logger.error("Failed to rollback to savepoint", e2); }
+        }
+    }
+
+    /**
+     * Switches the bulk load mode off, discarding the rows that have not been sent to the database yet
+     */
+    private void discardBulkLoader() {
+        if ( this.bulkLoader != null ) {
+            this.bulkLoader.clear();
+            this.bulkLoader = null;
+        }
+    }
+
+    /**
+     * Closes the batched PreparedStatements, discarding the requests that have not been sent to the database yet
+     */
+    private void closeBatchedStatements() {
+        if ( (this.pendingBatchedRequests != 0) && logger.isDebugEnabled() ) logger.debug("Discarding "+this.pendingBatchedRequests+" batched request"+(this.pendingBatchedRequests>1?"s":"")+".");
+
+        for ( PreparedStatement pstmt: this.batchedStatements.values() ) {
+            try {
+                pstmt.close();
+            } catch (@SuppressWarnings("unused") SQLException ign) {
+                // nothing to do
+            }
+        }
+        this.batchedStatements.clear();
+        this.batchedRequestsCount.clear();
+        this.pendingBatchedRequests = 0;
+    }
+
+    /**
+     * HelperMethod to generate the predicate that selects the rows of a membership table (elements_in_model, relationships_in_model, folders_in_model or views_in_model) that belong to a model version<br>
+     * Each row links a component to the model versions between its model_version and to_model_version columns, so the predicate expects the model version as its single parameter.
+     * @param table the name or alias of the membership table in the main request
+     */
+    public String getModelVersionPredicate(String table) {
+        return "? BETWEEN "+table+".model_version AND "+table+".to_model_version";
+    }
+
+    /**
+     * HelperMethod to generate the sub-request that gets the latest version of a component from the latest_versions table<br>
+     * The latest_versions table is maintained during the export, so it avoids to compute the MAX(version) of the component amongst all its versions.
+     * @param idColumn the column (or value) that contains the id of the component in the main request
+     */
+    public String getLatestVersionRequest(String idColumn) {
+        return "(SELECT lv.version FROM "+this.schema+"latest_versions lv WHERE lv.id = "+idColumn+")";
+    }
+
+    /**
+     * HelperMethod to generate an INSERT request from the table name, the columns names and their values<br>
+     * The columns having a null value are not included in the request.
+     * @param newParameters list that is filled in with the non null values, in the same order as the columns in the request
+     */
+    @SafeVarargs
+    private final static <T> String getInsertRequest(String table, String[] columns, ArrayList<T> newParameters, T...parameters) throws SQLException {
         StringBuilder cols = new StringBuilder();
         StringBuilder values = new StringBuilder();
-        ArrayList<T> newParameters = new ArrayList<T>();
 
         for (int i=0 ; i < columns.length ; ++i) {
             if ( parameters[i] != null ) {
@@ -1196,7 +1889,7 @@ public class DBDatabaseConnection implements AutoCloseable {
         if ( (cols.length() == 0) || (values.length() == 0) )
             throw new SQLException("SQL request cannot have all its parameters null.");
 
-        return request("INSERT INTO "+table+" ("+cols.toString()+") VALUES ("+values.toString()+")", newParameters.toArray());
+        return "INSERT INTO "+table+" ("+cols.toString()+") VALUES ("+values.toString()+")";
     }
 
     /**
@@ -1209,6 +1902,9 @@ public class DBDatabaseConnection implements AutoCloseable {
         assert ( isConnected() );
         int rowCount = 0;
 
+        // the pending batched requests must be sent first to keep the requests order
+        executeBatches();
+
         if ( parameters.length == 0 ) {		// no need to use a PreparedStatement
             if ( logger.isTraceSQLEnabled() ) logger.trace("      --> "+request);
 
@@ -1216,25 +1912,22 @@ public class DBDatabaseConnection implements AutoCloseable {
             	rowCount = stmt.executeUpdate(request);
             }
         } else {
-            try ( PreparedStatement pstmt = this.connection.prepareStatement(request, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ) {
+            PreparedStatement pstmt = getCachedPreparedStatement(request);
+            boolean isCached = (pstmt != null);
+            if ( !isCached )
+                pstmt = this.connection.prepareStatement(request, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
 	            constructStatement(pstmt, request, parameters);
 	
-	            // on PostGreSQL databases, we can only send new requests if we rollback the transaction that caused the exception
-	            Savepoint savepoint = null;
-	            if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.POSTGRESQL.getDriverName()) ) savepoint = this.connection.setSavepoint();
+	            setGroupSavepoint();
 	            try {
 	                rowCount = pstmt.executeUpdate();
 	            } catch (SQLException err) {
-	                if ( savepoint != null ) {
-	                    try {
-	                        this.connection.rollback(savepoint);
-	                        if ( logger.isTraceEnabled() ) logger.trace("Rolled back to savepoint");
-	                    } catch (SQLException e2) { logger.error("Failed to rollback to savepoint", e2); }
-	                }
+	                rollbackToGroupSavepoint();
 	                throw err;
-	            } finally {
-	                if ( savepoint != null ) this.connection.releaseSavepoint(savepoint);
 	            }
+            } finally {
+                if ( !isCached ) pstmt.close();
             }
         }
 
@@ -1317,6 +2010,14 @@ public class DBDatabaseConnection implements AutoCloseable {
      */
     public void setAutoCommit(boolean autoCommit) throws SQLException {
         if ( logger.isDebugEnabled() ) logger.debug("Setting database auto commit to "+String.valueOf(autoCommit));
+        // switching to auto-commit mode commits the current transaction, so the pending batched requests must be sent before
+        if ( autoCommit ) {
+            executeBatches();
+            closeBatchedStatements();
+            this.bulkLoader = null;
+            this.pendingUnwindRows.clear();
+        }
+        this.groupSavepoint = null;
         this.connection.setAutoCommit(autoCommit);
     }
 
@@ -1325,7 +2026,12 @@ public class DBDatabaseConnection implements AutoCloseable {
      */
     public void commit() throws SQLException {
         if ( logger.isDebugEnabled() ) logger.debug("Committing database transaction.");
+        executeBatches();
         this.connection.commit();
+        closeBatchedStatements();
+        this.bulkLoader = null;
+        this.pendingUnwindRows.clear();
+        this.groupSavepoint = null;
     }
 
     /**
@@ -1333,6 +2039,10 @@ public class DBDatabaseConnection implements AutoCloseable {
      */
     public void rollback() throws SQLException {
         if ( logger.isDebugEnabled() ) logger.debug("Rollbacking database transaction.");
+        closeBatchedStatements();
+        discardBulkLoader();
+        this.pendingUnwindRows.clear();
+        this.groupSavepoint = null;
         this.connection.rollback();
     }
 }
\ No newline at end of file
@@ -0,0 +1,431 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database.connection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.archicontribs.database.DBDatabaseEntry;
+import org.archicontribs.database.DBLogger;
+import org.archicontribs.database.DBPlugin;
+import org.archicontribs.database.data.DBDatabase;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * This class keeps the JDBC connections opened to a database so they can be reused by the successive dialogs instead of login again to the database.<br>
+ * <br>
+ * There is one pool for each database entry, identified by its name in the preferences. Each pool:<br>
+ * <li>limits the number of connections opened to the database,</li>
+ * <li>validates the connections that have been idle for a while before they are reused,</li>
+ * <li>closes the connections that have been idle for too long,</li>
+ * <li>remembers the version of the database model once it has been checked, so the database structure is not checked again each time a dialog is opened.</li>
+ * When the connection details of a database entry are changed in the preferences, the pool of the entry is replaced by a new one.
+ * 
+ * @author Herve Jouin
+ */
+public class DBDatabaseConnectionPool {
+    private static final DBLogger logger = new DBLogger(DBDatabaseConnectionPool.class);
+
+    /**
+     * Maximum number of connections opened to the same database
+     */
+    private static final int maxConnections = 8;
+
+    /**
+     * Time (in milliseconds) to wait for a connection to be released when the maximum number of connections is reached<br>
+     * The SWT thread does not wait at all, so the user interface is not frozen by a connection that has not been released.
+     */
+    private static final long connectionTimeout = 30000;
+
+    /**
+     * Time (in milliseconds) after which an idle connection is validated before being reused
+     */
+    private static final long validationDelay = 30000;
+
+    /**
+     * Time (in milliseconds) after which an idle connection is closed
+     */
+    private static final long idleTimeout = 300000;
+
+    /**
+     * Pools indexed by the name of their database entry
+     */
+    private static final Map<String, DBDatabaseConnectionPool> pools = new HashMap<String, DBDatabaseConnectionPool>();
+
+    /**
+     * Timer that closes the idle connections
+     */
+    private static Timer evictionTimer = null;
+
+    private final DBDatabaseEntry databaseEntry;
+    private final LinkedList<IdleConnection> idleConnections = new LinkedList<IdleConnection>();
+    private final Set<Connection> usedConnections = new HashSet<Connection>();
+    private int openedConnections = 0;
+    private int verifiedDatabaseVersion = 0;
+    private boolean retired = false;
+
+    /**
+     * Connection that has been released to the pool
+     */
+    private static class IdleConnection {
+        final Connection connection;
+        final long releaseTime;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.releaseTime = System.currentTimeMillis();
+        }
+    }
+
+    private DBDatabaseConnectionPool(DBDatabaseEntry databaseEntry) {
+        // we keep a copy of the connection details as the database entry may be updated in the preferences
+        this.databaseEntry = new DBDatabaseEntry(databaseEntry);
+    }
+
+    /**
+     * Gets the pool corresponding to the database entry. The pool is created if it does not exist yet.<br>
+     * If the connection details of the database entry have changed since the pool has been created, the pool is replaced by a new one.
+     */
+    public static synchronized DBDatabaseConnectionPool getPool(DBDatabaseEntry databaseEntry) {
+        String key = databaseEntry.getName();
+
+        DBDatabaseConnectionPool pool = pools.get(key);
+        if ( (pool != null) && !pool.hasSameConnectionDetails(databaseEntry) ) {
+            if ( logger.isDebugEnabled() ) logger.debug("The connection details of database "+databaseEntry.getName()+" have changed, replacing its connection pool");
+            pool.retire();
+            pool = null;
+        }
+
+        if ( pool == null ) {
+            if ( logger.isDebugEnabled() ) logger.debug("Creating connection pool for database "+databaseEntry.getName());
+            pool = new DBDatabaseConnectionPool(databaseEntry);
+            pools.put(key, pool);
+
+            if ( evictionTimer == null ) {
+                evictionTimer = new Timer("DBDatabaseConnectionPool eviction", true);
+                evictionTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        evictIdleConnections();
+                    }
+                }, idleTimeout, idleTimeout / 5);
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Checks if the database entry has got the same connection details as the entry the pool has been created for
+     */
+    private boolean hasSameConnectionDetails(DBDatabaseEntry entry) {
+        return DBPlugin.areEqual(this.databaseEntry.getDriver(), entry.getDriver())
+                && DBPlugin.areEqual(this.databaseEntry.getServer(), entry.getServer())
+                && (this.databaseEntry.getPort() == entry.getPort())
+                && DBPlugin.areEqual(this.databaseEntry.getDatabase(), entry.getDatabase())
+                && DBPlugin.areEqual(this.databaseEntry.getSchema(), entry.getSchema())
+                && DBPlugin.areEqual(this.databaseEntry.getUsername(), entry.getUsername())
+                && DBPlugin.areEqual(this.databaseEntry.getPassword(), entry.getPassword());
+    }
+
+    /**
+     * Closes the idle connections of a pool that has been replaced<br>
+     * The connections that are still in use are closed when they are released.
+     */
+    private void retire() {
+        synchronized (this) {
+            this.retired = true;
+        }
+        evict(0);
+    }
+
+    /**
+     * Closes all the connections of a pool, including the connections that are still in use<br>
+     * The counters are updated when the connections in use are released.
+     */
+    private void close() {
+        ArrayList<Connection> connectionsToClose;
+        synchronized (this) {
+            this.retired = true;
+            connectionsToClose = new ArrayList<Connection>(this.usedConnections);
+        }
+        evict(0);
+
+        if ( !connectionsToClose.isEmpty() && logger.isDebugEnabled() ) logger.debug("Closing "+connectionsToClose.size()+" connection(s) in use to database "+this.databaseEntry.getName());
+        for ( Connection connection: connectionsToClose )
+            closeQuietly(connection);
+    }
+
+    /**
+     * Gets a connection from the pool<br>
+     * <br>
+     * An idle connection is reused if it is still valid, else a new connection is opened to the database.<br>
+     * When the maximum number of connections is reached, waits for a connection to be released, except in the SWT thread that fails immediately.
+     */
+    public Connection getConnection() throws ClassNotFoundException, SQLException {
+        IdleConnection idleConnection;
+
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + ((Display.getCurrent() == null) ? connectionTimeout : 0);
+            while ( this.idleConnections.isEmpty() && (this.openedConnections >= maxConnections) ) {
+                long delay = deadline - System.currentTimeMillis();
+                if ( delay <= 0 )
+                    throw new SQLException("All the "+maxConnections+" connections to database "+this.databaseEntry.getName()+" are in use.\n\nPlease close the other dialogs connected to this database.");
+                try {
+                    wait(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection to database "+this.databaseEntry.getName()+".", e);
+                }
+            }
+
+            // the most recently released connection is the most likely to be still valid
+            idleConnection = this.idleConnections.pollLast();
+            if ( idleConnection == null )
+                ++this.openedConnections;
+        }
+
+        if ( idleConnection != null ) {
+            if ( (System.currentTimeMillis() - idleConnection.releaseTime) < validationDelay || isValid(idleConnection.connection) ) {
+                if ( logger.isDebugEnabled() ) logger.debug("Reusing pooled connection to database "+this.databaseEntry.getName());
+                return connectionUsed(idleConnection.connection);
+            }
+
+            // the connection is not valid anymore, so we replace it with a new one
+            if ( logger.isDebugEnabled() ) logger.debug("Pooled connection to database "+this.databaseEntry.getName()+" is not valid anymore.");
+            closeQuietly(idleConnection.connection);
+        }
+
+        try {
+            return connectionUsed(openConnection());
+        } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+            connectionClosed();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases a connection to the pool so it can be reused<br>
+     * The connection must be in auto-commit mode with no pending transaction, and must not be used anymore by the caller.
+     */
+    public void releaseConnection(Connection connection) {
+        synchronized (this) {
+            if ( !this.usedConnections.remove(connection) ) {
+                // the connection has already been released, it must not be handed out twice
+                logger.error("Connection to database "+this.databaseEntry.getName()+" has been released twice.");
+                return;
+            }
+
+            if ( !this.retired ) {
+                this.idleConnections.addLast(new IdleConnection(connection));
+                notifyAll();
+                return;
+            }
+        }
+
+        // the pool has been replaced, so the connection cannot be reused
+        discardConnection(connection);
+    }
+
+    /**
+     * Closes a connection that cannot be reused
+     */
+    public void discardConnection(Connection connection) {
+        synchronized (this) {
+            this.usedConnections.remove(connection);
+        }
+        closeQuietly(connection);
+        connectionClosed();
+    }
+
+    private synchronized Connection connectionUsed(Connection connection) {
+        this.usedConnections.add(connection);
+        return connection;
+    }
+
+    private synchronized void connectionClosed() {
+        --this.openedConnections;
+        notifyAll();
+    }
+
+    /**
+     * @return true if the database structure has already been checked at the specified version
+     */
+    public synchronized boolean isDatabaseVersionVerified(int version) {
+        return this.verifiedDatabaseVersion == version;
+    }
+
+    /**
+     * Remembers that the database structure has been checked at the specified version
+     */
+    public synchronized void setDatabaseVersionVerified(int version) {
+        this.verifiedDatabaseVersion = version;
+    }
+
+    /**
+     * Forgets the database structure check so it will be checked again the next time
+     */
+    public synchronized void resetDatabaseVersionVerified() {
+        this.verifiedDatabaseVersion = 0;
+    }
+
+    /**
+     * Closes all the connections of all the pools, including the connections that are still in use, and stops the eviction timer<br>
+     * The pools are forgotten, so new pools are created if connections are requested afterwards.
+     */
+    public static void closeAll() {
+        ArrayList<DBDatabaseConnectionPool> allPools;
+        synchronized (DBDatabaseConnectionPool.class) {
+            if ( evictionTimer != null ) {
+                evictionTimer.cancel();
+                evictionTimer = null;
+            }
+            allPools = new ArrayList<DBDatabaseConnectionPool>(pools.values());
+            pools.clear();
+        }
+
+        for ( DBDatabaseConnectionPool pool: allPools )
+            pool.close();
+    }
+
+    /**
+     * Closes the connections that have been idle for too long
+     */
+    static void evictIdleConnections() {
+        ArrayList<DBDatabaseConnectionPool> allPools;
+        synchronized (DBDatabaseConnectionPool.class) {
+            allPools = new ArrayList<DBDatabaseConnectionPool>(pools.values());
+        }
+
+        for ( DBDatabaseConnectionPool pool: allPools )
+            pool.evict(idleTimeout);
+    }
+
+    private void evict(long timeout) {
+        ArrayList<Connection> connectionsToClose = new ArrayList<Connection>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Iterator<IdleConnection> iterator = this.idleConnections.iterator();
+            while ( iterator.hasNext() ) {
+                IdleConnection idleConnection = iterator.next();
+                if ( (now - idleConnection.releaseTime) >= timeout ) {
+                    iterator.remove();
+                    connectionsToClose.add(idleConnection.connection);
+                }
+            }
+        }
+
+        if ( !connectionsToClose.isEmpty() && logger.isDebugEnabled() ) logger.debug("Closing "+connectionsToClose.size()+" idle connection(s) to database "+this.databaseEntry.getName());
+        for ( Connection connection: connectionsToClose )
+            discardConnection(connection);
+    }
+
+    /**
+     * Validates a connection using a validation request
+     */
+    private boolean isValid(Connection connection) {
+        String validationRequest;
+        if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.ORACLE.getDriverName()) )
+            validationRequest = "SELECT 1 FROM DUAL";
+        else if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) )
+            validationRequest = "RETURN 1";
+        else
+            validationRequest = "SELECT 1";
+
+        try ( Statement stmt = connection.createStatement() ) {
+            stmt.execute(validationRequest);
+            return true;
+        } catch (@SuppressWarnings("unused") SQLException ign) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (@SuppressWarnings("unused") SQLException ign) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Opens a new connection to the database using all the connection details
+     */
+    private Connection openConnection() throws ClassNotFoundException, SQLException {
+        if ( logger.isDebugEnabled() ) logger.debug("Opening connection to database "+this.databaseEntry.getName()+" : driver="+this.databaseEntry.getDriver()+", server="+this.databaseEntry.getServer()+", port="+this.databaseEntry.getPort()+", database="+this.databaseEntry.getDatabase()+", schema="+this.databaseEntry.getSchema()+", username="+this.databaseEntry.getUsername());
+
+        String clazz = null;
+        String connectionString = null;
+
+        switch (this.databaseEntry.getDriver()) {
+            case "postgresql" :
+                clazz = "org.postgresql.Driver";
+                connectionString = "jdbc:postgresql://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + "/" + this.databaseEntry.getDatabase();
+                break;
+            case "ms-sql"      :
+                clazz = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+                connectionString = "jdbc:sqlserver://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + ";databaseName=" + this.databaseEntry.getDatabase();
+                if ( DBPlugin.isEmpty(this.databaseEntry.getUsername()) && DBPlugin.isEmpty(this.databaseEntry.getPassword()) )
+                    connectionString += ";integratedSecurity=true";
+                break;
+            case "mysql"      :
+                clazz = "com.mysql.jdbc.Driver";
+                connectionString = "jdbc:mysql://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + "/" + this.databaseEntry.getDatabase();
+                break;
+            case "neo4j"      :
+                clazz = "org.neo4j.jdbc.Driver";
+                connectionString = "jdbc:neo4j:bolt://" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort();
+                break;
+            case "oracle"     :
+                clazz = "oracle.jdbc.driver.OracleDriver";
+                connectionString = "jdbc:oracle:thin:@" + this.databaseEntry.getServer() + ":" + this.databaseEntry.getPort() + ":" + this.databaseEntry.getDatabase();
+                break;
+            case "sqlite"     :
+                clazz = "org.sqlite.JDBC";
+                connectionString = "jdbc:sqlite:"+this.databaseEntry.getServer();
+                break;
+            default :
+                throw new SQLException("Unknonwn driver " + this.databaseEntry.getDriver());        // just in case
+        }
+
+        if ( logger.isDebugEnabled() ) logger.debug("JDBC class = " + clazz);
+        Class.forName(clazz);
+
+        if ( logger.isDebugEnabled() ) logger.debug("JDBC connection string = " + connectionString);
+        try {
+            if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.MSSQL.getDriverName()) && DBPlugin.isEmpty(this.databaseEntry.getUsername()) && DBPlugin.isEmpty(this.databaseEntry.getPassword()) ) {
+                if ( logger.isDebugEnabled() ) logger.debug("Connecting with Windows integrated security");
+                return DriverManager.getConnection(connectionString);
+            } else {
+                if ( logger.isDebugEnabled() ) logger.debug("Connecting with username = "+this.databaseEntry.getUsername());
+                return DriverManager.getConnection(connectionString, this.databaseEntry.getUsername(), this.databaseEntry.getPassword());
+            }
+        } catch (SQLException e) {
+            // if the JDBC driver fails to connect to the database using the specified driver, then it tries with all the other drivers
+            // and the exception is raised by the latest driver (log4j in our case)
+            // so we need to trap this exception and change the error message
+            // For JDBC people, this is not a bug but a functionality :( 
+            if ( DBPlugin.areEqual(e.getMessage(), "JDBC URL is not correct.\nA valid URL format is: 'jdbc:neo4j:http://<host>:<port>'") ) {
+                if ( this.databaseEntry.getDriver().equals(DBDatabase.MSSQL.getDriverName()) && DBPlugin.isEmpty(this.databaseEntry.getUsername()) && DBPlugin.isEmpty(this.databaseEntry.getPassword()) )	// integrated authentication
+                    throw new SQLException("Please verify the database configuration in the preferences.\n\nPlease also check that you installed the \"sqljdbc_auth.dll\" file in the JRE bin folder to enable the SQL Server integrated security mode.");
+                throw new SQLException("Please verify the database configuration in the preferences.");
+            }
+            throw e;
+        }
+    }
+}
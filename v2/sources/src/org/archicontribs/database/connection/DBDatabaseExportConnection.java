@@ -6,19 +6,25 @@
 
 package org.archicontribs.database.connection;
 
+import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import org.archicontribs.database.DBDatabaseEntry;
 import org.archicontribs.database.DBLogger;
 import org.archicontribs.database.DBPlugin;
-import org.archicontribs.database.GUI.DBGui;
+import org.archicontribs.database.data.DBChecksum;
 import org.archicontribs.database.data.DBDatabase;
 import org.archicontribs.database.data.DBVersion;
 import org.archicontribs.database.model.DBArchimateModel;
@@ -34,6 +40,7 @@ import com.archimatetool.model.IAccessRelationship;
 import com.archimatetool.model.IArchimateConcept;
 import com.archimatetool.model.IArchimateDiagramModel;
 import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.model.IArchimateModelObject;
 import com.archimatetool.model.IArchimateRelationship;
 import com.archimatetool.model.IBorderObject;
@@ -210,6 +217,13 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
         }
     }
 
+    /**
+     * Checks if the membership row of the current line of a ResultSet belongs to a model version, i.e. if the model version is between its model_version and to_model_version columns
+     */
+    private static boolean isInModelVersion(ResultSet result, int modelVersion) throws SQLException {
+        return (result.getInt("model_version") <= modelVersion) && (modelVersion <= result.getInt("to_model_version"));
+    }
+
     /**
      * Gets the versions and checksum of one model's components from the database and fills their DBMetadata.<br>
      * <br>
@@ -222,11 +236,16 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
         // This method can retrieve versions only if the database contains the whole model tables
         assert(!this.databaseEntry.isWholeModelExported());
 
+        if ( this.databaseEntry.isServerSideCompare() ) {
+            getDeltaFromDatabase(model);
+            getImagesVersionsFromDatabase(model);
+            return;
+        }
+
         String modelId = model.getId();
 
         int initialVersion = model.getInitialVersion().getVersion();
         int latestDatabaseVersion = model.getDatabaseVersion().getVersion();
-        int exportedVersion = model.getCurrentVersion().getVersion();
 
         // we get the components versions from the database.
 
@@ -250,7 +269,7 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
         // elements
         if ( logger.isDebugEnabled() ) logger.debug("Getting versions of the elements from the database");
         try ( ResultSet result = select(
-                "SELECT id, name, version, checksum, created_on, model_id, model_version"
+                "SELECT id, name, version, checksum, created_on, model_id, model_version, to_model_version"
                         + " FROM elements"
                         + " LEFT JOIN elements_in_model ON element_id = id AND element_version = version"
                         + " WHERE id IN (SELECT id FROM elements JOIN elements_in_model ON element_id = id AND element_version = version WHERE model_id = ?)"
@@ -278,11 +297,12 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
 
                 if ( DBPlugin.areEqual(result.getString("model_id"), modelId) ) {
                     // if the component is part of the model, we compare with the model's version
-                    if ( result.getInt("model_version") == initialVersion ) {
+                    if ( isInModelVersion(result, initialVersion) ) {
                         currentComponent.getInitialVersion().setVersion(result.getInt("version"));
                         currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
-                    } else if ( result.getInt("model_version") == latestDatabaseVersion ) {
+                    }
+                    if ( (latestDatabaseVersion != initialVersion) && isInModelVersion(result, latestDatabaseVersion) ) {
                         currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
                         currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
@@ -302,7 +322,7 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
         // relationships
         if ( logger.isDebugEnabled() ) logger.debug("Getting versions of the relationships from the database");
         try ( ResultSet result = select(
-                "SELECT id, name, version, checksum, created_on, model_id, model_version"
+                "SELECT id, name, version, checksum, created_on, model_id, model_version, to_model_version"
                         + " FROM relationships"
                         + " LEFT JOIN relationships_in_model ON relationship_id = id AND relationship_version = version"
                         + " WHERE id IN (SELECT id FROM relationships JOIN relationships_in_model ON relationship_id = id AND relationship_version = version WHERE model_id = ?)"
@@ -330,11 +350,12 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
 
                 if ( DBPlugin.areEqual(result.getString("model_id"), modelId) ) {
                     // if the component is part of the model, we compare with the model's version
-                    if ( result.getInt("model_version") == initialVersion ) {
+                    if ( isInModelVersion(result, initialVersion) ) {
                         currentComponent.getInitialVersion().setVersion(result.getInt("version"));
                         currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
-                    } else if ( result.getInt("model_version") == latestDatabaseVersion ) {
+                    }
+                    if ( (latestDatabaseVersion != initialVersion) && isInModelVersion(result, latestDatabaseVersion) ) {
                         currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
                         currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
@@ -353,7 +374,7 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
         // folders
         if ( logger.isDebugEnabled() ) logger.debug("Getting versions of the folders from the database");
         try ( ResultSet result = select(
-                "SELECT id, name, version, checksum, created_on, model_id, model_version"
+                "SELECT id, name, version, checksum, created_on, model_id, model_version, to_model_version"
                         + " FROM folders"
                         + " LEFT JOIN folders_in_model ON folder_id = id AND folder_version = version"
                         + " WHERE id IN (SELECT id FROM folders JOIN folders_in_model ON folder_id = id AND folder_version = version WHERE model_id = ?)"
@@ -381,11 +402,12 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
 
                 if ( DBPlugin.areEqual(result.getString("model_id"), modelId) ) {
                     // if the component is part of the model, we compare with the model's version
-                    if ( result.getInt("model_version") == initialVersion ) {
+                    if ( isInModelVersion(result, initialVersion) ) {
                         currentComponent.getInitialVersion().setVersion(result.getInt("version"));
                         currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
-                    } else if ( result.getInt("model_version") == latestDatabaseVersion ) {
+                    }
+                    if ( (latestDatabaseVersion != initialVersion) && isInModelVersion(result, latestDatabaseVersion) ) {
                         currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
                         currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
@@ -403,7 +425,7 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
 
         if ( logger.isDebugEnabled() ) logger.debug("Getting versions of the views from the database");
         try ( ResultSet result = select(
-                "SELECT id, name, version, checksum, container_checksum, created_on, model_id, model_version"
+                "SELECT id, name, version, checksum, container_checksum, created_on, model_id, model_version, to_model_version"
                         + " FROM views"
                         + " LEFT JOIN views_in_model ON view_id = id AND view_version = version"
                         + " WHERE id IN (SELECT id FROM views JOIN views_in_model ON view_id = id AND view_version = version WHERE model_id = ?)"
@@ -431,12 +453,13 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
 
                 if ( DBPlugin.areEqual(result.getString("model_id"), modelId) ) {
                     // if the component is part of the model, we compare with the model's version
-                    if ( result.getInt("model_version") == initialVersion ) {
+                    if ( isInModelVersion(result, initialVersion) ) {
                         currentComponent.getInitialVersion().setVersion(result.getInt("version"));
                         currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getInitialVersion().setContainerChecksum(result.getString("container_checksum"));
                         currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
-                    } else if ( result.getInt("model_version") == latestDatabaseVersion ) {
+                    }
+                    if ( (latestDatabaseVersion != initialVersion) && isInModelVersion(result, latestDatabaseVersion) ) {
                         currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
                         currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
                         currentComponent.getDatabaseVersion().setContainerChecksum(result.getString("container_checksum"));
@@ -454,7 +477,14 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
             }
         }
 
-        if ( exportedVersion == 1 ) {
+        getImagesVersionsFromDatabase(model);
+    }
+
+    /**
+     * Checks which images of the model are not in the database, and which images of the database model are not in the model
+     */
+    private void getImagesVersionsFromDatabase(DBArchimateModel model) throws SQLException {
+        if ( model.getCurrentVersion().getVersion() == 1 ) {
             // even if the model does not exist in the database, the images can exist in the database
             // images do not have a version as they cannot be modified. Their path is a checksum and loading a new image creates a new path.
 
@@ -476,7 +506,7 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
             try ( ResultSet result = select ("SELECT DISTINCT image_path FROM views_objects "
                     + "JOIN views_objects_in_view ON views_objects_in_view.object_id = views_objects.id AND views_objects_in_view.object_version = views_objects.version "
                     + "JOIN views_in_model ON views_in_model.view_id = views_objects_in_view.view_id AND views_in_model.view_version = views_objects_in_view.view_version "
-                    + "WHERE image_path IS NOT NULL AND views_in_model.model_id = ? AND views_in_model.model_version = ?"
+                    + "WHERE image_path IS NOT NULL AND views_in_model.model_id = ? AND "+getModelVersionPredicate("views_in_model")
                     ,model.getId()
                     ,model.getDatabaseVersion().getVersion()
                     ) ) {
@@ -489,86 +519,257 @@ public class DBDatabaseExportConnection extends DBDatabaseConnection {
         }
 }
 
-public void getViewObjectsAndConnectionsVersionsFromDatabase(DBArchimateModel model, IDiagramModel view) throws SQLException, RuntimeException {
-    String viewId = view.getId();
+/**
+ * Gets the versions of the model's elements, relationships, folders and views by letting the database compute the differences with the model.<br>
+ * <br>
+ * The id and checksum of the model's components are copied in the export_staging table, then the database computes for each component
+ * of the model its initial, database and latest versions and compares them to the model's checksums, the same way as
+ * {@link DBMetadata#getDatabaseStatus()} does.<br>
+ * Only the components that are not in sync are fully returned. The components in sync are returned with their latest version only,
+ * which is the version that will be assigned to the exported model.
+ */
+private void getDeltaFromDatabase(DBArchimateModel model) throws SQLException {
+    String sessionId = UUID.randomUUID().toString();
 
-    Iterator<Map.Entry<String, IDiagramModelObject>> itvo = model.getAllViewObjects().entrySet().iterator();
-    while (itvo.hasNext()) {
-        IDiagramModelObject object = itvo.next().getValue();
-        if ( object.getDiagramModel() == view ) {
-            DBMetadata metadata = ((IDBMetadata)object).getDBMetadata();
-            metadata.getCurrentVersion().setVersion(0);
-            metadata.getInitialVersion().reset();
-            metadata.getDatabaseVersion().reset();
-            metadata.getLatestDatabaseVersion().reset();
+    // the staging rows are sent in JDBC batches, which requires a transaction
+    boolean autoCommit = this.connection.getAutoCommit();
+    if ( autoCommit )
+        setAutoCommit(false);
+
+    try {
+        if ( logger.isDebugEnabled() ) logger.debug("Copying the checksums of the model's components in the staging table");
+        stageChecksums(sessionId, model.getAllElements());
+        stageChecksums(sessionId, model.getAllRelationships());
+        stageChecksums(sessionId, model.getAllFolders());
+        stageChecksums(sessionId, model.getAllViews());
+
+        getDeltaFromDatabase(model, sessionId, "elements", "elements_in_model", "element", model.getAllElements(), this.elementsNotInModel);
+        getDeltaFromDatabase(model, sessionId, "relationships", "relationships_in_model", "relationship", model.getAllRelationships(), this.relationshipsNotInModel);
+        getDeltaFromDatabase(model, sessionId, "folders", "folders_in_model", "folder", model.getAllFolders(), this.foldersNotInModel);
+        getDeltaFromDatabase(model, sessionId, "views", "views_in_model", "view", model.getAllViews(), this.viewsNotInModel);
+
+        request("DELETE FROM "+this.schema+"export_staging WHERE session_id = ?", sessionId);
+
+        if ( autoCommit ) {
+            commit();
+            setAutoCommit(true);
         }
+    } catch (SQLException err) {
+        if ( autoCommit ) {
+            rollback();
+            setAutoCommit(true);
+        }
+        throw err;
     }
+}
 
-    Iterator<Map.Entry<String, IDiagramModelConnection>> itvc = model.getAllViewConnections().entrySet().iterator();
-    while (itvc.hasNext()) {
-        IDiagramModelConnection cnct = itvc.next().getValue();
-        if ( cnct.getDiagramModel() == view ) {
-            DBMetadata metadata = ((IDBMetadata)cnct).getDBMetadata();
-            metadata.getCurrentVersion().setVersion(0);
-            metadata.getInitialVersion().reset();
-            metadata.getDatabaseVersion().reset();
-            metadata.getLatestDatabaseVersion().reset();
+/**
+ * Copies the id and checksum of the components in the export_staging table
+ */
+private void stageChecksums(String sessionId, Map<String, ? extends EObject> components) throws SQLException {
+    final String[] stagingColumns = {"session_id", "id", "checksum"};
+
+    for ( Map.Entry<String, ? extends EObject> entry: components.entrySet() )
+        insertInBatch(this.schema+"export_staging", stagingColumns, sessionId, entry.getKey(), ((IDBMetadata)entry.getValue()).getDBMetadata().getCurrentVersion().getChecksum());
+}
+
+/**
+ * Gets the differences between the model and the database for one type of components
+ * @param model the model to compare
+ * @param sessionId the id of the staging rows that contain the checksums of the model's components
+ * @param table the table that contains the components
+ * @param membershipTable the table that links the components to the models
+ * @param column the prefix of the columns of the membership table (i.e. "element" for element_id and element_version)
+ * @param modelComponents the model's components indexed by their id
+ * @param componentsNotInModel the map where the components that are in the database but not in the model are registered
+ */
+private void getDeltaFromDatabase(DBArchimateModel model, String sessionId, String table, String membershipTable, String column, Map<String, ? extends EObject> modelComponents, Map<String, DBMetadata> componentsNotInModel) throws SQLException {
+    boolean isView = DBPlugin.areEqual(table, "views");
+    int initialVersion = model.getInitialVersion().getVersion();
+    // when the model has not been updated in the database since it has been imported, the database version of the components is not set (as done in getVersionsFromDatabase)
+    int latestDatabaseVersion = model.isTheLatestModelIntheDatabase() ? -1 : model.getDatabaseVersion().getVersion();
+
+    // for each component of the model, we get the versions corresponding to the initial and the latest database version of the model
+    StringBuilder versionsRequest = new StringBuilder("SELECT c.id AS id");
+    for ( String version: new String[] {"initial", "database"} ) {
+        versionsRequest.append(", MAX(CASE WHEN "+getModelVersionPredicate("m")+" THEN c.version END) AS "+version+"_version");
+        versionsRequest.append(", MAX(CASE WHEN "+getModelVersionPredicate("m")+" THEN c.checksum END) AS "+version+"_checksum");
+        if ( isView )
+            versionsRequest.append(", MAX(CASE WHEN "+getModelVersionPredicate("m")+" THEN c.container_checksum END) AS "+version+"_container_checksum");
+        versionsRequest.append(", MAX(CASE WHEN "+getModelVersionPredicate("m")+" THEN c.created_on END) AS "+version+"_created_on");
+    }
+    versionsRequest.append(" FROM "+this.schema+table+" c");
+    versionsRequest.append(" JOIN "+this.schema+membershipTable+" m ON m."+column+"_id = c.id AND m."+column+"_version = c.version");
+    versionsRequest.append(" WHERE m.model_id = ?");
+    versionsRequest.append(" GROUP BY c.id");
+
+    String fromClause = " FROM ("+versionsRequest.toString()+") v"
+            + " JOIN "+this.schema+"latest_versions lv ON lv.id = v.id"
+            + " JOIN "+this.schema+table+" l ON l.id = lv.id AND l.version = lv.version"
+            + " LEFT JOIN "+this.schema+"export_staging s ON s.session_id = ? AND s.id = v.id";
+
+    // same rules as DBMetadata.getDatabaseStatus()
+    String syncedCondition;
+    if ( model.isTheLatestModelIntheDatabase() )
+        syncedCondition = "s.checksum IS NOT NULL AND v.initial_version IS NOT NULL AND s.checksum = v.initial_checksum";
+    else
+        syncedCondition = "s.checksum IS NOT NULL AND v.initial_version IS NOT NULL AND v.database_version IS NOT NULL AND (s.checksum = l.checksum OR s.checksum = v.database_checksum)";
+
+    ArrayList<Object> parameters = new ArrayList<Object>();
+    for ( int i = 0 ; i < (isView ? 4 : 3) ; ++i )
+        parameters.add(initialVersion);
+    for ( int i = 0 ; i < (isView ? 4 : 3) ; ++i )
+        parameters.add(latestDatabaseVersion);
+    parameters.add(model.getId());
+    parameters.add(sessionId);
+
+    // the components that are in sync only need their latest version, as it is the version that will be assigned to the exported model
+    if ( logger.isDebugEnabled() ) logger.debug("Getting the "+table+" that are in sync with the database");
+    try ( ResultSet result = select("SELECT v.id, l.version"+fromClause+" WHERE "+syncedCondition, parameters.toArray()) ) {
+        while ( result.next() ) {
+            EObject object = modelComponents.get(result.getString("id"));
+            if ( object != null ) {
+                DBMetadata metadata = ((IDBMetadata)object).getDBMetadata();
+                // the component is in sync, so we set the same version everywhere so its status is isSynced
+                for ( DBVersion version: new DBVersion[] {metadata.getInitialVersion(), metadata.getDatabaseVersion(), metadata.getLatestDatabaseVersion()} ) {
+                    version.setVersion(result.getInt("version"));
+                    version.setChecksum(metadata.getCurrentVersion().getChecksum());
+                    if ( isView )
+                        version.setContainerChecksum(metadata.getCurrentVersion().getContainerChecksum());
+                }
+                metadata.getCurrentVersion().setVersion(result.getInt("version"));
+            }
         }
     }
 
-    int initialVersion = ((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion();
-    int latestDatabaseVersion = ((IDBMetadata)view).getDBMetadata().getLatestDatabaseVersion().getVersion();
-
-    // view objects
-    if ( logger.isDebugEnabled() ) logger.debug("Getting versions of view objects from the database for "+((IDBMetadata)view).getDBMetadata().getDebugName());
+    // the other components are fully returned
+    if ( logger.isDebugEnabled() ) logger.debug("Getting the "+table+" that are not in sync with the database");
     try ( ResultSet result = select(
-            "SELECT id, name, version, checksum, created_on, view_id, view_version"
-                    + " FROM views_objects"
-                    + " LEFT JOIN views_objects_in_view ON object_id = id AND object_version = version"
-                    + " WHERE id IN (SELECT id FROM views_objects JOIN views_objects_in_view ON object_id = id AND object_version = version WHERE view_id = ?)"
-                    + " ORDER BY id, version"
-                    ,viewId
+            "SELECT v.*, l.version AS latest_version, l.checksum AS latest_checksum, l.created_on AS latest_created_on"+(isView ? ", l.container_checksum AS latest_container_checksum" : "")
+                    + fromClause
+                    + " WHERE NOT ("+syncedCondition+")"
+                    + " ORDER BY v.id"
+                    ,parameters.toArray()
             ) ) {
-        String previousId = null;
-        DBMetadata previousComponent = null;
         while ( result.next() ) {
+            String id = result.getString("id");
+            EObject object = modelComponents.get(id);
             DBMetadata currentComponent;
-            String currentId = result.getString("id");
-
-            if ( DBPlugin.areEqual(currentId, previousId) )
-                currentComponent = previousComponent;
+            if ( object != null )
+                currentComponent = ((IDBMetadata)object).getDBMetadata();
             else {
-                IDiagramModelObject object = model.getAllViewObjects().get(currentId);
-                currentComponent = (object == null ) ? null : ((IDBMetadata)object).getDBMetadata();
+                currentComponent = new DBMetadata(null);
+                componentsNotInModel.put(id, currentComponent);
             }
 
-            // the loop returns all the versions of all the model components
-            if ( currentComponent == null ) {
-                currentComponent = new DBMetadata(null);
-                this.viewObjectsNotInModel.put(result.getString("id"), currentComponent);
+            if ( result.getObject("initial_version") != null ) {
+                currentComponent.getInitialVersion().setVersion(result.getInt("initial_version"));
+                currentComponent.getInitialVersion().setChecksum(result.getString("initial_checksum"));
+                if ( isView )
+                    currentComponent.getInitialVersion().setContainerChecksum(result.getString("initial_container_checksum"));
+                currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("initial_created_on"));
             }
 
-            if ( DBPlugin.areEqual(result.getString("view_id"), viewId) ) {
-                // if the component is part of the model, we compare with the model's version
-                if ( result.getInt("view_version") == initialVersion ) {
-                    currentComponent.getInitialVersion().setVersion(result.getInt("version"));
-                    currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
-                    currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
-                } else if ( result.getInt("view_version") == latestDatabaseVersion ) {
-                    currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
-                    currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
-                    currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
-                }
+            if ( result.getObject("database_version") != null ) {
+                currentComponent.getDatabaseVersion().setVersion(result.getInt("database_version"));
+                currentComponent.getDatabaseVersion().setChecksum(result.getString("database_checksum"));
+                if ( isView )
+                    currentComponent.getDatabaseVersion().setContainerChecksum(result.getString("database_container_checksum"));
+                currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("database_created_on"));
             }
 
-            // components are sorted by version (so also by timestamp) so the latest found is the latest in time
-            currentComponent.getLatestDatabaseVersion().setVersion(result.getInt("version"));
-            currentComponent.getLatestDatabaseVersion().setChecksum(result.getString("checksum"));
-            currentComponent.getLatestDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
+            currentComponent.getLatestDatabaseVersion().setVersion(result.getInt("latest_version"));
+            currentComponent.getLatestDatabaseVersion().setChecksum(result.getString("latest_checksum"));
+            if ( isView )
+                currentComponent.getLatestDatabaseVersion().setContainerChecksum(result.getString("latest_container_checksum"));
+            currentComponent.getLatestDatabaseVersion().setTimestamp(result.getTimestamp("latest_created_on"));
 
-            currentComponent.getCurrentVersion().setVersion(result.getInt("version"));
+            currentComponent.getCurrentVersion().setVersion(result.getInt("latest_version"));
         }
     }
+}
+
+/**
+ * Gets the versions of the view objects and view connections of all the model's views in the database.<br>
+ * <br>
+ * The versions are fetched in two queries (one for the view objects and one for the view connections) and each row is resolved
+ * using the model's id-indexed maps, so the comparison is linear in the size of the model whatever the number of views.<br>
+ * Views that are not part of the model in the database (i.e. imported from another model) are compared one by one.
+ */
+public void getViewObjectsAndConnectionsVersionsFromDatabase(DBArchimateModel model) throws SQLException, RuntimeException {
+    Iterator<Map.Entry<String, IDiagramModelObject>> itvo = model.getAllViewObjects().entrySet().iterator();
+    while (itvo.hasNext())
+        resetVersions(((IDBMetadata)itvo.next().getValue()).getDBMetadata());
+
+    Iterator<Map.Entry<String, IDiagramModelConnection>> itvc = model.getAllViewConnections().entrySet().iterator();
+    while (itvc.hasNext())
+        resetVersions(((IDBMetadata)itvc.next().getValue()).getDBMetadata());
+
+    // view objects
+    if ( logger.isDebugEnabled() ) logger.debug("Getting versions of view objects from the database for all the views of the model");
+    try ( ResultSet result = select(
+            "SELECT id, version, checksum, created_on, view_id, view_version"
+                    + " FROM "+this.schema+"views_objects"
+                    + " LEFT JOIN "+this.schema+"views_objects_in_view ON object_id = id AND object_version = version"
+                    + " WHERE id IN (SELECT object_id FROM "+this.schema+"views_objects_in_view"
+                    + "     JOIN "+this.schema+"views_in_model ON views_in_model.view_id = views_objects_in_view.view_id AND views_in_model.view_version = views_objects_in_view.view_version"
+                    + "     WHERE model_id = ?)"
+                    + " ORDER BY id, version"
+                    ,model.getId()
+            ) ) {
+        getViewComponentsVersionsFromResultSet(result, model, null, model.getAllViewObjects(), this.viewObjectsNotInModel);
+    }
+
+    // view connections
+    if ( logger.isDebugEnabled() ) logger.debug("Getting versions of view connections from the database for all the views of the model");
+    try ( ResultSet result = select(
+            "SELECT id, version, checksum, created_on, view_id, view_version"
+                    + " FROM "+this.schema+"views_connections"
+                    + " LEFT JOIN "+this.schema+"views_connections_in_view ON connection_id = id AND connection_version = version"
+                    + " WHERE id IN (SELECT connection_id FROM "+this.schema+"views_connections_in_view"
+                    + "     JOIN "+this.schema+"views_in_model ON views_in_model.view_id = views_connections_in_view.view_id AND views_in_model.view_version = views_connections_in_view.view_version"
+                    + "     WHERE model_id = ?)"
+                    + " ORDER BY id, version"
+                    ,model.getId()
+            ) ) {
+        getViewComponentsVersionsFromResultSet(result, model, null, model.getAllViewConnections(), this.viewConnectionsNotInModel);
+    }
+
+    // the views that have been read from the database but that are not part of the model in the database are not covered by the requests above
+    Iterator<Map.Entry<String, IDiagramModel>> itv = model.getAllViews().entrySet().iterator();
+    while (itv.hasNext()) {
+        IDiagramModel view = itv.next().getValue();
+        DBMetadata metadata = ((IDBMetadata)view).getDBMetadata();
+        if ( (metadata.getLatestDatabaseVersion().getVersion() == 0) && (metadata.getInitialVersion().getVersion() != 0) )
+            getViewObjectsAndConnectionsVersionsFromDatabase(model, view);
+    }
+}
+
+/**
+ * Gets the versions of the view objects and view connections of a single view in the database.
+ */
+public void getViewObjectsAndConnectionsVersionsFromDatabase(DBArchimateModel model, IDiagramModel view) throws SQLException, RuntimeException {
+    String viewId = view.getId();
+
+    Iterator<EObject> iterator = view.eAllContents();
+    while (iterator.hasNext()) {
+        EObject eObject = iterator.next();
+        if ( (eObject instanceof IDiagramModelObject || eObject instanceof IDiagramModelConnection) && eObject instanceof IDBMetadata )
+            resetVersions(((IDBMetadata)eObject).getDBMetadata());
+    }
+
+    // view objects
+    if ( logger.isDebugEnabled() ) logger.debug("Getting versions of view objects from the database for "+((IDBMetadata)view).getDBMetadata().getDebugName());
+    try ( ResultSet result = select(
+            "SELECT id, name, version, checksum, created_on, view_id, view_version"
+                    + " FROM views_objects"
+                    + " LEFT JOIN views_objects_in_view ON object_id = id AND object_version = version"
+                    + " WHERE id IN (SELECT id FROM views_objects JOIN views_objects_in_view ON object_id = id AND object_version = version WHERE view_id = ?)"
+                    + " ORDER BY id, version"
+                    ,viewId
+            ) ) {
+        getViewComponentsVersionsFromResultSet(result, model, view, model.getAllViewObjects(), this.viewObjectsNotInModel);
+    }
 
     // view connections
     if ( logger.isDebugEnabled() ) logger.debug("Getting versions of view connections from the database for "+((IDBMetadata)view).getDBMetadata().getDebugName());
@@ -580,45 +781,73 @@ public void getViewObjectsAndConnectionsVersionsFromDatabase(DBArchimateModel mo
                     + " ORDER BY id, version"
                     ,viewId
             ) ) {
-        String previousId = null;
-        DBMetadata previousComponent = null;
-        while ( result.next() ) {
-            DBMetadata currentComponent;
-            String currentId = result.getString("id");
+        getViewComponentsVersionsFromResultSet(result, model, view, model.getAllViewConnections(), this.viewConnectionsNotInModel);
+    }
+}
 
-            if ( DBPlugin.areEqual(currentId, previousId) )
-                currentComponent = previousComponent;
-            else {
-                IDiagramModelConnection object = model.getAllViewConnections().get(currentId);
-                currentComponent = (object == null ) ? null : ((IDBMetadata)object).getDBMetadata();
-            }
+private static void resetVersions(DBMetadata metadata) {
+    metadata.getCurrentVersion().setVersion(0);
+    metadata.getInitialVersion().reset();
+    metadata.getDatabaseVersion().reset();
+    metadata.getLatestDatabaseVersion().reset();
+}
 
-            // the loop returns all the versions of all the model components
-            if ( currentComponent == null ) {
+/**
+ * Reads the versions of view objects or view connections, sorted by id and version, and sets the metadata of the corresponding components.
+ * @param result the result set to read
+ * @param model the model the components belong to
+ * @param view the view the request has been limited to, or null if the request covers all the views of the model
+ * @param modelComponents the model's components indexed by their id
+ * @param componentsNotInModel the map where the components that are in the database but not in the model are registered
+ */
+private static void getViewComponentsVersionsFromResultSet(ResultSet result, DBArchimateModel model, IDiagramModel view, Map<String, ? extends EObject> modelComponents, Map<String, DBMetadata> componentsNotInModel) throws SQLException {
+    String previousId = null;
+    DBMetadata previousComponent = null;
+    while ( result.next() ) {
+        DBMetadata currentComponent;
+        String currentId = result.getString("id");
+        String currentViewId = result.getString("view_id");
+
+        if ( DBPlugin.areEqual(currentId, previousId) )
+            currentComponent = previousComponent;
+        else {
+            EObject object = modelComponents.get(currentId);
+            if ( object != null )
+                currentComponent = ((IDBMetadata)object).getDBMetadata();
+            else if ( (view != null) || model.getAllViews().containsKey(currentViewId) ) {
+                // the component is in the database but not in the model
                 currentComponent = new DBMetadata(null);
-                this.viewConnectionsNotInModel.put(result.getString("id"), currentComponent);
-            }
+                componentsNotInModel.put(currentId, currentComponent);
+            } else
+                currentComponent = null;        // the component belongs to a view that is not in the model
+            previousId = currentId;
+            previousComponent = currentComponent;
+        }
 
-            if ( DBPlugin.areEqual(result.getString("view_id"), viewId) ) {
-                // if the component is part of the model, we compare with the model's version
-                if ( result.getInt("view_version") == initialVersion ) {
-                    currentComponent.getInitialVersion().setVersion(result.getInt("version"));
-                    currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
-                    currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
-                } else if ( result.getInt("view_version") == latestDatabaseVersion ) {
-                    currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
-                    currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
-                    currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
-                }
+        if ( currentComponent == null )
+            continue;
+
+        IDiagramModel currentView = (view != null) ? (DBPlugin.areEqual(currentViewId, view.getId()) ? view : null) : model.getAllViews().get(currentViewId);
+        if ( currentView != null ) {
+            // if the component is part of the view, we compare with the view's version
+            DBMetadata viewMetadata = ((IDBMetadata)currentView).getDBMetadata();
+            if ( result.getInt("view_version") == viewMetadata.getInitialVersion().getVersion() ) {
+                currentComponent.getInitialVersion().setVersion(result.getInt("version"));
+                currentComponent.getInitialVersion().setChecksum(result.getString("checksum"));
+                currentComponent.getInitialVersion().setTimestamp(result.getTimestamp("created_on"));
+            } else if ( result.getInt("view_version") == viewMetadata.getLatestDatabaseVersion().getVersion() ) {
+                currentComponent.getDatabaseVersion().setVersion(result.getInt("version"));
+                currentComponent.getDatabaseVersion().setChecksum(result.getString("checksum"));
+                currentComponent.getDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
             }
+        }
 
-            // components are sorted by version (so also by timestamp) so the latest found is the latest in time
-            currentComponent.getLatestDatabaseVersion().setVersion(result.getInt("version"));
-            currentComponent.getLatestDatabaseVersion().setChecksum(result.getString("checksum"));
-            currentComponent.getLatestDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
+        // components are sorted by version (so also by timestamp) so the latest found is the latest in time
+        currentComponent.getLatestDatabaseVersion().setVersion(result.getInt("version"));
+        currentComponent.getLatestDatabaseVersion().setChecksum(result.getString("checksum"));
+        currentComponent.getLatestDatabaseVersion().setTimestamp(result.getTimestamp("created_on"));
 
-            currentComponent.getCurrentVersion().setVersion(result.getInt("version"));
-        }
+        currentComponent.getCurrentVersion().setVersion(result.getInt("version"));
     }
 }
 
@@ -630,6 +859,52 @@ public void emptyNeo4jDB() throws Exception {
     request("MATCH (n) DETACH DELETE n");
 }
 
+/**
+ * Creates the Neo4J indexes on the id of the nodes that will be searched during the export of the model<br>
+ * The nodes are searched by label and id when the relationships and properties are exported, so an index is required on each label to avoid scanning the whole database.<br>
+ * <br>
+ * As Neo4J does not allow to update the schema in a transaction that updates data, this method must be called before the export transaction is started.
+ */
+public void createNeo4jIndexes(DBArchimateModel model) throws Exception {
+    Set<String> labels = new HashSet<String>();
+    labels.add("elements");
+    if ( !this.databaseEntry.isNeo4jNativeMode() ) {
+        for ( IArchimateRelationship relationship: model.getAllRelationships().values() )
+            labels.add(getNeo4jRelationshipType(relationship));
+    }
+
+    for ( String label: labels ) {
+        if ( logger.isDebugEnabled() ) logger.debug("Creating Neo4J index on :"+label+"(id)");
+        request("CREATE INDEX ON :"+label+"(id)");
+    }
+}
+
+/**
+ * Stages of the Neo4J UNWIND requests: the rows of a stage are sent after the rows of the previous stages, so the nodes matched by a request exist when it is executed<br>
+ * The relationships whose source or target is a relationship depend on requests of their own stage, so they are sent on their own (see {@link #exportRelationship}).
+ */
+private static final int NEO4J_ELEMENTS_STAGE = 0;
+private static final int NEO4J_RELATIONSHIPS_STAGE = 1;
+private static final int NEO4J_PROPERTIES_STAGE = 2;
+
+/**
+ * Gets the Neo4J type of a relationship, which is also the label of the relationship nodes when the relationships are not exported as native Neo4J relationships
+ */
+private String getNeo4jRelationshipType(IArchimateConcept relationship) {
+    return this.databaseEntry.isNeo4jTypedRelationship() ? (relationship.getClass().getSimpleName()+"s") : "relationships";
+}
+
+/**
+ * Gets the Neo4J label of the node of a component, or null if the component is not exported as a labelled node
+ */
+private String getNeo4jLabel(EObject eObject) {
+    if ( eObject instanceof IArchimateElement )
+        return "elements";
+    if ( (eObject instanceof IArchimateRelationship) && !this.databaseEntry.isNeo4jNativeMode() )
+        return getNeo4jRelationshipType((IArchimateRelationship)eObject);
+    return null;
+}
+
 
 /**
  * Exports the model metadata into the database
@@ -658,6 +933,9 @@ public void exportModel(DBArchimateModel model, String releaseNote) throws Excep
             ,model.getCurrentVersion().getChecksum()
             );
 
+    // the ranks in the folders are calculated from the content of the model being exported
+    this.ranksInFolder.clear();
+
     exportProperties(model);
     exportMetadata(model);
 }
@@ -665,15 +943,32 @@ public void exportModel(DBArchimateModel model, String releaseNote) throws Excep
 /**
  * Export a component to the database
  */
-public void exportEObject(EObject eObject, DBGui gui) throws Exception {
+public void exportEObject(EObject eObject) throws Exception {
     if ( eObject instanceof IArchimateElement ) 			exportElement((IArchimateElement)eObject);
     else if ( eObject instanceof IArchimateRelationship ) 	exportRelationship((IArchimateRelationship)eObject);
     else if ( eObject instanceof IFolder ) 					exportFolder((IFolder)eObject);
-    else if ( eObject instanceof IDiagramModel ) 			exportView((IDiagramModel)eObject, gui);
+    else if ( eObject instanceof IDiagramModel ) 			exportView((IDiagramModel)eObject);
     else if ( eObject instanceof IDiagramModelObject )		exportViewObject((IDiagramModelComponent)eObject);
     else if ( eObject instanceof IDiagramModelConnection )	exportViewConnection((IDiagramModelConnection)eObject);
     else
         throw new Exception("Do not know how to export "+eObject.getClass().getSimpleName());
+
+    if ( !DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) )
+        exportLatestVersion(eObject);
+}
+
+/**
+ * Stores the version of a component that has just been exported in the latest_versions table<br>
+ * This table allows to get the latest version of the components without computing the MAX(version) amongst all their versions.
+ */
+private void exportLatestVersion(EObject eObject) throws Exception {
+    final String[] latestVersionsColumns = {"id", "version"};
+
+    requestInBatch("DELETE FROM "+this.schema+"latest_versions WHERE id = ?", ((IIdentifier)eObject).getId());
+    insertInBatch(this.schema+"latest_versions", latestVersionsColumns
+            ,((IIdentifier)eObject).getId()
+            ,((IDBMetadata)eObject).getDBMetadata().getCurrentVersion().getVersion()
+            );
 }
 
 public void assignEObjectToModel(EObject eObject) throws Exception {
@@ -687,6 +982,194 @@ public void assignEObjectToModel(EObject eObject) throws Exception {
         throw new Exception("Do not know how to assign to the model : "+eObject.getClass().getSimpleName());
 }
 
+/**
+ * Membership tables linking the components to the models, with the prefix of their columns
+ */
+private static final String[][] membershipTables = {
+        {"elements_in_model",      "element"},
+        {"relationships_in_model", "relationship"},
+        {"folders_in_model",       "folder"},
+        {"views_in_model",         "view"}
+};
+
+/**
+ * Version of the model from which the memberships of the unchanged components are copied, or zero if all the memberships are sent from the client
+ */
+private int membershipsCopyVersion = 0;
+
+/**
+ * True if the memberships are stored as intervals of model versions, false if the memberships are stored as one row per model version
+ */
+private boolean membershipIntervals = false;
+
+/**
+ * Memberships of the components in the version of the model from which they are copied, indexed by membership table then by component id<br>
+ * Each membership is stored as an array containing the component version, its parent folder id and its rank.
+ */
+private Map<String, Map<String, Object[]>> previousMemberships = new HashMap<String, Map<String, Object[]>>();
+
+/**
+ * Ids of the components assigned to the exported model whose membership is the same as in the version of the model from which the memberships are copied, indexed by membership table
+ */
+private Map<String, Set<String>> unchangedComponents = new HashMap<String, Set<String>>();
+
+/**
+ * Number of membership rows sent from the client for the new, updated, moved or reordered components, indexed by membership table
+ */
+private Map<String, Integer> sentMemberships = new HashMap<String, Integer>();
+
+/**
+ * Switches on the copy of the memberships of the unchanged components<br>
+ * <br>
+ * Instead of sending one row per component to the elements_in_model, relationships_in_model, folders_in_model and views_in_model tables,
+ * only the rows of the new, updated, moved or reordered components are sent. The rows of the other components are handled by the database
+ * from the latest version of the model by {@link #copyUnchangedMemberships}.<br>
+ * <br>
+ * Each membership row links a component to the model versions between its model_version and to_model_version columns:
+ * <ul>
+ * <li>when the memberships are stored as intervals, the rows sent are valid until the component is updated, moved, reordered or removed (to_model_version is {@link #OPEN_MODEL_VERSION}),
+ *     so the unchanged components need no new row at all and the tables do not grow with the number of model versions</li>
+ * <li>else, the rows sent are only valid in the exported version of the model, and the rows of the unchanged components are copied by the database</li>
+ * </ul>
+ * Both storages can be used on the same database, as the requests that read the memberships always filter on the interval of model versions.
+ * @param membershipIntervals true if the memberships must be stored as intervals of model versions
+ */
+public void setMembershipsCopy(DBArchimateModel model, boolean membershipIntervals) {
+    this.previousMemberships.clear();
+    this.unchangedComponents.clear();
+    this.sentMemberships.clear();
+    this.membershipsCopyVersion = model.getDatabaseVersion().getVersion();
+    this.membershipIntervals = membershipIntervals;
+
+    if ( logger.isDebugEnabled() && (this.membershipsCopyVersion != 0) ) logger.debug("The memberships of the unchanged components will be "+(membershipIntervals ? "extended" : "copied")+" from version "+this.membershipsCopyVersion+" of the model");
+}
+
+/**
+ * Gets the value of the to_model_version column of the membership rows sent from the client
+ */
+private int getToModelVersion(DBArchimateModel model) {
+    return this.membershipIntervals ? OPEN_MODEL_VERSION : model.getCurrentVersion().getVersion();
+}
+
+/**
+ * Gets the memberships of a membership table in the version of the model from which the memberships are copied<br>
+ * The memberships are read from the database the first time they are needed.
+ */
+private Map<String, Object[]> getPreviousMemberships(DBArchimateModel model, String membershipTable, String column) throws SQLException {
+    Map<String, Object[]> memberships = this.previousMemberships.get(membershipTable);
+    if ( memberships == null ) {
+        if ( logger.isDebugEnabled() ) logger.debug("Getting the memberships of "+membershipTable+" in version "+this.membershipsCopyVersion+" of the model");
+        memberships = new HashMap<String, Object[]>();
+        try ( ResultSet result = select("SELECT "+column+"_id, "+column+"_version, parent_folder_id, rank FROM "+this.schema+membershipTable+" WHERE model_id = ? AND "+getModelVersionPredicate(membershipTable), model.getId(), this.membershipsCopyVersion) ) {
+            while ( result.next() )
+                memberships.put(result.getString(column+"_id"), new Object[] {result.getInt(column+"_version"), result.getString("parent_folder_id"), result.getInt("rank")});
+        }
+        this.previousMemberships.put(membershipTable, memberships);
+        this.unchangedComponents.put(membershipTable, new HashSet<String>());
+        this.sentMemberships.put(membershipTable, 0);
+    }
+    return memberships;
+}
+
+/**
+ * Checks if the membership of a component is the same as in the version of the model from which the memberships are copied<br>
+ * The rank is part of the membership, as the components are imported in the order of their rank: a component whose rank changed must be sent again.
+ * @return true if the membership row will be copied or extended by the database, false if it must be sent from the client
+ */
+private boolean isMembershipUnchanged(DBArchimateModel model, String membershipTable, String column, String id, int version, String parentFolderId, int rank) throws SQLException {
+    if ( this.membershipsCopyVersion == 0 )
+        return false;
+
+    Map<String, Object[]> memberships = getPreviousMemberships(model, membershipTable, column);
+
+    Object[] membership = memberships.get(id);
+    if ( (membership != null) && ((int)membership[0] == version) && DBPlugin.areEqual((String)membership[1], parentFolderId) && ((int)membership[2] == rank) ) {
+        this.unchangedComponents.get(membershipTable).add(id);
+        return true;
+    }
+    this.sentMemberships.put(membershipTable, this.sentMemberships.get(membershipTable) + 1);
+    return false;
+}
+
+/**
+ * Copies or extends the memberships of the unchanged components from the version of the model set by {@link #setMembershipsCopy}<br>
+ * <br>
+ * This method must be called once all the components have been assigned to the model. For each membership table:
+ * <ul>
+ * <li>when the memberships are stored as intervals, the intervals that have been closed in the previous version of the model are reopened,
+ *     then the intervals of the updated, moved, reordered and removed components are closed</li>
+ * <li>else, the ids of the updated, moved, reordered and removed components are copied in the export_staging table, then a single request
+ *     copies the rows of all the other components, and the intervals that are still opened are closed</li>
+ * </ul>
+ */
+public void copyUnchangedMemberships(DBArchimateModel model) throws SQLException {
+    final String[] stagingColumns = {"session_id", "id", "checksum"};
+
+    if ( this.membershipsCopyVersion == 0 )
+        return;
+
+    String sessionId = UUID.randomUUID().toString();
+    int staged = 0;
+
+    for ( String[] membershipTable: membershipTables ) {
+        String table = membershipTable[0];
+        String column = membershipTable[1];
+        Map<String, Object[]> memberships = getPreviousMemberships(model, table, column);
+
+        if ( this.membershipIntervals ) {
+            // the rows written without intervals in the previous version of the model are reopened
+            request("UPDATE "+this.schema+table+" SET to_model_version = ? WHERE model_id = ? AND to_model_version = ?", OPEN_MODEL_VERSION, model.getId(), this.membershipsCopyVersion);
+
+            Set<String> unchanged = this.unchangedComponents.get(table);
+            int closed = 0;
+            for ( String id: memberships.keySet() ) {
+                if ( !unchanged.contains(id) ) {
+                    requestInBatch("UPDATE "+this.schema+table+" SET to_model_version = ? WHERE model_id = ? AND "+column+"_id = ? AND model_version <= ? AND to_model_version = ?", this.membershipsCopyVersion, model.getId(), id, this.membershipsCopyVersion, OPEN_MODEL_VERSION);
+                    ++closed;
+                }
+            }
+            // the number of rows written in the table only depends on the number of changed components, not on the size of the model
+            int sent = this.sentMemberships.get(table);
+            logger.info(table+": extended "+unchanged.size()+" unchanged membership"+(unchanged.size()>1?"s":"")+", closed "+closed+" membership"+(closed>1?"s":"")+" and wrote "+sent+" new row"+(sent>1?"s":""));
+        } else {
+            // the components whose row has been sent from the client and the components that are not part of the model anymore must not be copied
+            // (the checksum column of the staging table is not used, it receives the name of the membership table)
+            Set<String> unchanged = this.unchangedComponents.get(table);
+            for ( String id: memberships.keySet() ) {
+                if ( !unchanged.contains(id) ) {
+                    insertInBatch(this.schema+"export_staging", stagingColumns, sessionId, id, table);
+                    ++staged;
+                }
+            }
+
+            int copied = request("INSERT INTO "+this.schema+table+" ("+column+"_id, "+column+"_version, parent_folder_id, model_id, model_version, to_model_version, rank)"
+                    + " SELECT p."+column+"_id, p."+column+"_version, p.parent_folder_id, p.model_id, ?, ?, p.rank"
+                    + " FROM "+this.schema+table+" p"
+                    + " WHERE p.model_id = ? AND "+getModelVersionPredicate("p")
+                    + " AND NOT EXISTS (SELECT 1 FROM "+this.schema+"export_staging s WHERE s.session_id = ? AND s.id = p."+column+"_id)"
+                    ,model.getCurrentVersion().getVersion()
+                    ,model.getCurrentVersion().getVersion()
+                    ,model.getId()
+                    ,this.membershipsCopyVersion
+                    ,sessionId
+                    );
+            int sent = this.sentMemberships.get(table);
+            logger.info(table+": copied "+copied+" unchanged membership"+(copied>1?"s":"")+" and wrote "+sent+" new row"+(sent>1?"s":""));
+
+            // the intervals opened by a previous export are closed as their rows have just been copied
+            request("UPDATE "+this.schema+table+" SET to_model_version = ? WHERE model_id = ? AND to_model_version = ?", this.membershipsCopyVersion, model.getId(), OPEN_MODEL_VERSION);
+        }
+    }
+
+    if ( staged != 0 )
+        request("DELETE FROM "+this.schema+"export_staging WHERE session_id = ?", sessionId);
+
+    this.previousMemberships.clear();
+    this.unchangedComponents.clear();
+    this.sentMemberships.clear();
+    this.membershipsCopyVersion = 0;
+}
+
 /**
  * Export an element to the database
  */
@@ -699,18 +1182,18 @@ private void exportElement(IArchimateConcept element) throws Exception {
     if ( logger.isDebugEnabled() ) logger.debug("Exporting "+((IDBMetadata)element).getDBMetadata().getDebugName()+" (initial version = "+((IDBMetadata)element).getDBMetadata().getInitialVersion().getVersion()+", exported version = "+((IDBMetadata)element).getDBMetadata().getCurrentVersion().getVersion()+", database_version = "+((IDBMetadata)element).getDBMetadata().getDatabaseVersion().getVersion()+", latest_database_version = "+((IDBMetadata)element).getDBMetadata().getLatestDatabaseVersion().getVersion()+")");
 
     if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) ) {
-        // TODO : USE MERGE instead to replace existing nodes
-        request("CREATE (new:elements {id:?, version:?, class:?, name:?, type:?, documentation:?, checksum:?})"
-                ,element.getId()
-                ,((IDBMetadata)element).getDBMetadata().getCurrentVersion().getVersion()
-                ,element.getClass().getSimpleName()
-                ,element.getName()
-                ,((element instanceof IJunction) ? ((IJunction)element).getType() : null)
-                ,element.getDocumentation()
-                ,((IDBMetadata)element).getDBMetadata().getCurrentVersion().getChecksum()
-                );
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("id", element.getId());
+        row.put("version", ((IDBMetadata)element).getDBMetadata().getCurrentVersion().getVersion());
+        row.put("class", element.getClass().getSimpleName());
+        row.put("name", element.getName());
+        row.put("type", ((element instanceof IJunction) ? ((IJunction)element).getType() : null));
+        row.put("documentation", element.getDocumentation());
+        row.put("checksum", ((IDBMetadata)element).getDBMetadata().getCurrentVersion().getChecksum());
+
+        unwindInBatch("UNWIND ? AS row MERGE (new:elements {id:row.id, version:row.version}) SET new += row", NEO4J_ELEMENTS_STAGE, row);
     } else {
-        insert(this.schema+"elements", elementsColumns
+        insertInBatch(this.schema+"elements", elementsColumns
                 ,element.getId()
                 ,((IDBMetadata)element).getDBMetadata().getCurrentVersion().getVersion()
                 ,element.getClass().getSimpleName()
@@ -726,28 +1209,27 @@ private void exportElement(IArchimateConcept element) throws Exception {
     exportProperties(element);
 }
 
-/**
- * This class variable allows to sort the exported elements that they are imported in the same order<br>
- * It is reset to zero each time a connection to a new database is done (connection() method).
- */
-private int elementRank = 0;
-
 /**
  * Assign an element to a model into the database
  */
 private void assignElementToModel(IArchimateConcept element) throws Exception {
-    final String[] elementsInModelColumns = {"element_id", "element_version", "parent_folder_id", "model_id", "model_version", "rank"};
+    final String[] elementsInModelColumns = {"element_id", "element_version", "parent_folder_id", "model_id", "model_version", "to_model_version", "rank"};
     DBArchimateModel model = (DBArchimateModel)element.getArchimateModel();
 
+    int rank = getRankInFolder(element);
+    if ( isMembershipUnchanged(model, "elements_in_model", "element", element.getId(), ((IDBMetadata)element).getDBMetadata().getCurrentVersion().getVersion(), ((IFolder)element.eContainer()).getId(), rank) )
+        return;
+
     if ( logger.isTraceEnabled() ) logger.trace("   Assigning element to model");
 
-    insert(this.schema+"elements_in_model", elementsInModelColumns
+    insertInBatch(this.schema+"elements_in_model", elementsInModelColumns
             ,element.getId()
             ,((IDBMetadata)element).getDBMetadata().getCurrentVersion().getVersion()   // we use currentVersion as it has been set in exportElement()
             ,((IFolder)element.eContainer()).getId()
             ,model.getId()
             ,model.getCurrentVersion().getVersion()
-            ,++this.elementRank
+            ,getToModelVersion(model)
+            ,rank
             );
 }
 
@@ -763,43 +1245,46 @@ private void exportRelationship(IArchimateConcept relationship) throws Exception
     if ( logger.isDebugEnabled() ) logger.debug("Exporting "+((IDBMetadata)relationship).getDBMetadata().getDebugName()+" (initial version = "+((IDBMetadata)relationship).getDBMetadata().getInitialVersion().getVersion()+", exported version = "+((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion()+", database_version = "+((IDBMetadata)relationship).getDBMetadata().getDatabaseVersion().getVersion()+", latest_database_version = "+((IDBMetadata)relationship).getDBMetadata().getLatestDatabaseVersion().getVersion()+")");
 
     if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) ) {
-        String relationshipType = (this.databaseEntry.isNeo4jTypedRelationship() ? (relationship.getClass().getSimpleName()+"s") : "relationships");
-        // TODO : USE MERGE instead to replace existing nodes
+        IArchimateConcept source = ((IArchimateRelationship)relationship).getSource();
+        IArchimateConcept target = ((IArchimateRelationship)relationship).getTarget();
+        String relationshipType = getNeo4jRelationshipType(relationship);
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("id", relationship.getId());
+        properties.put("version", ((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion());
+        properties.put("class", relationship.getClass().getSimpleName());
+        properties.put("name", relationship.getName());
+        properties.put("documentation", relationship.getDocumentation());
+        properties.put("strength", ((relationship instanceof IInfluenceRelationship) ? ((IInfluenceRelationship)relationship).getStrength() : null));
+        properties.put("access_type", ((relationship instanceof IAccessRelationship) ? ((IAccessRelationship)relationship).getAccessType() : null));
+        properties.put("checksum", ((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getChecksum());
+
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("source_id", source.getId());
+        row.put("source_version", ((IDBMetadata)source).getDBMetadata().getCurrentVersion().getVersion());
+        row.put("target_id", target.getId());
+        row.put("target_version", ((IDBMetadata)target).getDBMetadata().getCurrentVersion().getVersion());
+        row.put("properties", properties);
+
         if ( this.databaseEntry.isNeo4jNativeMode() ) {
-            if ( (((IArchimateRelationship)relationship).getSource() instanceof IArchimateElement) && (((IArchimateRelationship)relationship).getTarget() instanceof IArchimateElement) ) {
-                request("MATCH (source:elements {id:?, version:?}), (target:elements {id:?, version:?}) CREATE (source)-[relationship:"+relationshipType+" {id:?, version:?, class:?, name:?, documentation:?, strength:?, access_type:?, checksum:?}]->(target)"
-                        ,((IArchimateRelationship)relationship).getSource().getId()
-                        ,((IDBMetadata)((IArchimateRelationship)relationship).getSource()).getDBMetadata().getCurrentVersion().getVersion()
-                        ,((IArchimateRelationship)relationship).getTarget().getId()
-                        ,((IDBMetadata)((IArchimateRelationship)relationship).getTarget()).getDBMetadata().getCurrentVersion().getVersion()
-                        ,relationship.getId()
-                        ,((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion()
-                        ,relationship.getClass().getSimpleName()
-                        ,relationship.getName()
-                        ,relationship.getDocumentation()
-                        ,((relationship instanceof IInfluenceRelationship) ? ((IInfluenceRelationship)relationship).getStrength() : null)
-                        ,((relationship instanceof IAccessRelationship) ? ((IAccessRelationship)relationship).getAccessType() : null)
-                        ,((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getChecksum()
-                        );
-            }
+            // native relationships can only link nodes, so relationships on relationships cannot be exported
+            if ( (source instanceof IArchimateElement) && (target instanceof IArchimateElement) )
+                unwindInBatch("UNWIND ? AS row MATCH (source:elements {id:row.source_id, version:row.source_version}), (target:elements {id:row.target_id, version:row.target_version}) MERGE (source)-[relationship:"+relationshipType+" {id:row.properties.id, version:row.properties.version}]->(target) SET relationship += row.properties", NEO4J_RELATIONSHIPS_STAGE, row);
         } else {
-            request("MATCH (source {id:?, version:?}), (target {id:?, version:?}) CREATE (relationship:"+relationshipType+" {id:?, version:?, class:?, name:?, documentation:?, strength:?, access_type:?, checksum:?}), (source)-[rel1:relatedTo]->(relationship)-[rel2:relatedTo]->(target)"
-                    ,((IArchimateRelationship)relationship).getSource().getId()
-                    ,((IDBMetadata)((IArchimateRelationship)relationship).getSource()).getDBMetadata().getCurrentVersion().getVersion()
-                    ,((IArchimateRelationship)relationship).getTarget().getId()
-                    ,((IDBMetadata)((IArchimateRelationship)relationship).getTarget()).getDBMetadata().getCurrentVersion().getVersion()
-                    ,relationship.getId()
-                    ,((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion()
-                    ,relationship.getClass().getSimpleName()
-                    ,relationship.getName()
-                    ,relationship.getDocumentation()
-                    ,((relationship instanceof IInfluenceRelationship) ? ((IInfluenceRelationship)relationship).getStrength() : null)
-                    ,((relationship instanceof IAccessRelationship) ? ((IAccessRelationship)relationship).getAccessType() : null)
-                    ,((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getChecksum()
-                    );
+            // a relationship whose source or target is a relationship is sent on its own, once the pending relationships have been sent,
+            // as the rows of a request do not see the nodes created by the other rows of the same request
+            boolean isOnRelationship = (source instanceof IArchimateRelationship) || (target instanceof IArchimateRelationship);
+            if ( isOnRelationship )
+                executeBatches();
+
+            // the requests are grouped by source and target labels, so the source and target nodes are found using the labels indexes
+            unwindInBatch("UNWIND ? AS row MATCH (source:"+getNeo4jLabel(source)+" {id:row.source_id, version:row.source_version}), (target:"+getNeo4jLabel(target)+" {id:row.target_id, version:row.target_version}) MERGE (relationship:"+relationshipType+" {id:row.properties.id, version:row.properties.version}) SET relationship += row.properties MERGE (source)-[:relatedTo]->(relationship) MERGE (relationship)-[:relatedTo]->(target)", NEO4J_RELATIONSHIPS_STAGE, row);
+
+            if ( isOnRelationship )
+                executeBatches();
         }
     } else {
-        insert(this.schema+"relationships", relationshipsColumns
+        insertInBatch(this.schema+"relationships", relationshipsColumns
                 ,relationship.getId()
                 ,((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion()
                 ,relationship.getClass().getSimpleName()
@@ -818,29 +1303,28 @@ private void exportRelationship(IArchimateConcept relationship) throws Exception
     exportProperties(relationship);
 }
 
-/**
- * This class variable allows to sort the exported relationships that they are imported in the same order<br>
- * It is reset to zero each time a connection to a new database is done (connection() method).
- */
-private int relationshipRank = 0;
-
 /**
  * Assign a relationship to a model into the database
  */
 private void assignRelationshipToModel(IArchimateConcept relationship) throws Exception {
-    final String[] relationshipsInModelColumns = {"relationship_id", "relationship_version", "parent_folder_id", "model_id", "model_version", "rank"};
+    final String[] relationshipsInModelColumns = {"relationship_id", "relationship_version", "parent_folder_id", "model_id", "model_version", "to_model_version", "rank"};
 
     DBArchimateModel model = (DBArchimateModel)relationship.getArchimateModel();
 
+    int rank = getRankInFolder(relationship);
+    if ( isMembershipUnchanged(model, "relationships_in_model", "relationship", relationship.getId(), ((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion(), ((IFolder)relationship.eContainer()).getId(), rank) )
+        return;
+
     if ( logger.isTraceEnabled() ) logger.trace("   Assigning relationship to model");
 
-    insert(this.schema+"relationships_in_model", relationshipsInModelColumns
+    insertInBatch(this.schema+"relationships_in_model", relationshipsInModelColumns
             ,relationship.getId()
             ,((IDBMetadata)relationship).getDBMetadata().getCurrentVersion().getVersion()
             ,((IFolder)relationship.eContainer()).getId()
             ,model.getId()
             ,model.getCurrentVersion().getVersion()
-            ,++this.relationshipRank
+            ,getToModelVersion(model)
+            ,rank
             );
 }
 
@@ -855,7 +1339,7 @@ private void exportFolder(IFolder folder) throws Exception {
 
     if ( logger.isDebugEnabled() ) logger.debug("Exporting "+((IDBMetadata)folder).getDBMetadata().getDebugName()+" (initial version = "+((IDBMetadata)folder).getDBMetadata().getInitialVersion().getVersion()+", exported version = "+((IDBMetadata)folder).getDBMetadata().getCurrentVersion().getVersion()+", database_version = "+((IDBMetadata)folder).getDBMetadata().getDatabaseVersion().getVersion()+", latest_database_version = "+((IDBMetadata)folder).getDBMetadata().getLatestDatabaseVersion().getVersion()+")");
 
-    insert(this.schema+"folders", foldersColumns
+    insertInBatch(this.schema+"folders", foldersColumns
             ,folder.getId()
             ,((IDBMetadata)folder).getDBMetadata().getCurrentVersion().getVersion()
             ,folder.getType().getValue()
@@ -872,47 +1356,88 @@ private void exportFolder(IFolder folder) throws Exception {
 
 
 /**
- * This class variable allows to sort the exported folders that they are imported in the same order<br>
- * It is reset to zero each time a connection to a new database is done (connection() method).
+ * Ranks of the components in their parent folder, calculated for all the components of a folder the first time one of them is assigned to the model
+ */
+private Map<EObject, Integer> ranksInFolder = new HashMap<EObject, Integer>();
+
+/**
+ * Offset added to the rank of the folders for each level of depth, so that the folders sorted by rank are imported after their parent folder
+ */
+private static final int FOLDER_DEPTH_RANK = 1000000;
+
+/**
+ * Gets the rank of a component in its parent folder, starting at 1<br>
+ * The rank only depends on the position of the component among the components of the same folder, so adding, removing or moving
+ * a component only changes the rank of the components that follow it in the same folder.
+ */
+private int getRankInFolder(EObject eObject) {
+    Integer rank = this.ranksInFolder.get(eObject);
+    if ( rank == null ) {
+        EObject container = eObject.eContainer();
+        List<? extends EObject> siblings;
+        if ( eObject instanceof IFolder )
+            siblings = (container instanceof IFolder) ? ((IFolder)container).getFolders() : ((IArchimateModel)container).getFolders();
+        else
+            siblings = ((IFolder)container).getElements();
+
+        int position = 0;
+        for ( EObject sibling: siblings )
+            this.ranksInFolder.put(sibling, ++position);
+        rank = this.ranksInFolder.get(eObject);
+    }
+    return rank;
+}
+
+/**
+ * Gets the rank of a folder: its rank in its parent folder, plus {@link #FOLDER_DEPTH_RANK} for each of its parent folders<br>
+ * The folders are imported sorted by rank, so the root folders are imported first, then their sub-folders, and so on.
  */
-private int folderRank = 0;
+private int getFolderRank(IFolder folder) {
+    int rank = getRankInFolder(folder);
+    for ( EObject container = folder.eContainer(); container instanceof IFolder; container = container.eContainer() )
+        rank += FOLDER_DEPTH_RANK;
+    return rank;
+}
 
 /**
  * Assign a folder to a model into the database
  */
 private void assignFolderToModel(IFolder folder) throws Exception {
-    final String[] foldersInModelColumns = {"folder_id", "folder_version", "parent_folder_id", "model_id", "model_version", "rank"};
+    final String[] foldersInModelColumns = {"folder_id", "folder_version", "parent_folder_id", "model_id", "model_version", "to_model_version", "rank"};
     DBArchimateModel model = (DBArchimateModel)folder.getArchimateModel();
 
+    String parentFolderId = (((IIdentifier)((Folder)folder).eContainer()).getId() == model.getId() ? null : ((IIdentifier)((Folder)folder).eContainer()).getId());
+
+    int rank = getFolderRank(folder);
+    if ( isMembershipUnchanged(model, "folders_in_model", "folder", folder.getId(), ((IDBMetadata)folder).getDBMetadata().getCurrentVersion().getVersion(), parentFolderId, rank) )
+        return;
+
     if ( logger.isTraceEnabled() ) logger.trace("   Assigning folder to model");
 
-    insert(this.schema+"folders_in_model", foldersInModelColumns
+    insertInBatch(this.schema+"folders_in_model", foldersInModelColumns
             ,folder.getId()
             ,((IDBMetadata)folder).getDBMetadata().getCurrentVersion().getVersion()
-            ,(((IIdentifier)((Folder)folder).eContainer()).getId() == model.getId() ? null : ((IIdentifier)((Folder)folder).eContainer()).getId())
+            ,parentFolderId
             ,model.getId()
             ,model.getCurrentVersion().getVersion()
-            ,++this.folderRank
+            ,getToModelVersion(model)
+            ,rank
             );
 }
 
 /**
- * Export a view into the database.
+ * Export a view into the database.<br>
+ * The screenshot of the view is not part of the exported row: it is set afterwards by {@link #exportViewScreenshot} or {@link #copyViewScreenshot}.
  */
-private void exportView(IDiagramModel view, DBGui gui) throws Exception {
-    final String[] ViewsColumns = {"id", "version", "class", "created_by", "created_on", "name", "connection_router_type", "documentation", "hint_content", "hint_title", "viewpoint", "background", "screenshot", "checksum", "container_checksum"};
+private void exportView(IDiagramModel view) throws Exception {
+    final String[] ViewsColumns = {"id", "version", "class", "created_by", "created_on", "name", "connection_router_type", "documentation", "hint_content", "hint_title", "viewpoint", "background", "checksum", "container_checksum"};
 
     // if the view is exported, the we increase its exportedVersion
     ((IDBMetadata)view).getDBMetadata().getCurrentVersion().setVersion(((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion() + 1);
 
     if ( logger.isDebugEnabled() ) logger.debug("Exporting "+((IDBMetadata)view).getDBMetadata().getDebugName()+" (initial version = "+((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion()+", exported version = "+((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion()+", database_version = "+((IDBMetadata)view).getDBMetadata().getDatabaseVersion().getVersion()+", latest_database_version = "+((IDBMetadata)view).getDBMetadata().getLatestDatabaseVersion().getVersion()+")");
 
-    byte[] viewImage = null;
-
-    if ( this.databaseEntry.isViewSnapshotRequired() )
-        viewImage = gui.createImage(view, this.databaseEntry.getViewsImagesScaleFactor()/100.0, this.databaseEntry.getViewsImagesBorderWidth());
-
-    insert(this.schema+"views", ViewsColumns
+    insertInBatch(this.schema+"views", ViewsColumns
             ,view.getId()
             ,((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion()
             ,view.getClass().getSimpleName()
@@ -925,38 +1450,82 @@ private void exportView(IDiagramModel view, DBGui gui) throws Exception {
             ,((view instanceof IHintProvider) ? ((IHintProvider)view).getHintTitle() : null)
             ,((view instanceof IArchimateDiagramModel) ? ((IArchimateDiagramModel)view).getViewpoint() : null)
             ,((view instanceof ISketchModel) ? ((ISketchModel)view).getBackground() : null)
-            ,viewImage
             ,((IDBMetadata)view).getDBMetadata().getCurrentVersion().getChecksum()
             ,((IDBMetadata)view).getDBMetadata().getCurrentVersion().getContainerChecksum()
             );
 
-    viewImage = null;		// to force memory release
-
     exportProperties(view);
 }
 
 /**
- * This class variable allows to sort the exported views that they are imported in the same order<br>
- * It is reset to zero each time a connection to a new database is done (connection() method).
+ * Sets the screenshot of a view that has already been exported<br>
+ * The request is batched, so the view row must have been sent to the database before (see {@link #executeBatches()}).
+ */
+public void exportViewScreenshot(IDiagramModel view, String screenshotChecksum, byte[] screenshot) throws SQLException {
+    if ( logger.isDebugEnabled() ) logger.debug("Exporting screenshot of "+((IDBMetadata)view).getDBMetadata().getDebugName()+" ("+screenshot.length/1024+" Ko)");
+
+    requestInBatch("UPDATE "+this.schema+"views SET screenshot = ?, screenshot_checksum = ? WHERE id = ? AND version = ?"
+            ,screenshot
+            ,screenshotChecksum
+            ,view.getId()
+            ,((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion()
+            );
+}
+
+/**
+ * Copies the screenshot of a previous version of a view, without transferring it between the database and the plugin<br>
+ * The previous version must have been got using {@link #getViewScreenshotVersion}, so its screenshot is not empty and has been rendered from the same content with the same scale factor and border width.<br>
+ * The request is batched, so the view row must have been sent to the database before (see {@link #executeBatches()}).
+ */
+public void copyViewScreenshot(IDiagramModel view, String screenshotChecksum, int fromVersion) throws SQLException {
+    if ( logger.isDebugEnabled() ) logger.debug("Copying screenshot of "+((IDBMetadata)view).getDBMetadata().getDebugName()+" from version "+fromVersion);
+
+    // the sub-select is wrapped in a derived table as MySQL refuses to select from the table being updated
+    requestInBatch("UPDATE "+this.schema+"views SET screenshot = (SELECT screenshot FROM (SELECT screenshot FROM "+this.schema+"views WHERE id = ? AND version = ?) previous_view), screenshot_checksum = ? WHERE id = ? AND version = ?"
+            ,view.getId()
+            ,fromVersion
+            ,screenshotChecksum
+            ,view.getId()
+            ,((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion()
+            );
+}
+
+/**
+ * Gets a version of a view in the database whose screenshot has got the requested screenshot checksum
+ * @return the version number, or zero if there is no such version or if its screenshot is empty
  */
-private int viewRank = 0;
+public int getViewScreenshotVersion(IDiagramModel view, String screenshotChecksum) throws SQLException {
+    if ( screenshotChecksum == null )
+        return 0;
+
+    try ( ResultSet result = select("SELECT MAX(version) AS version FROM "+this.schema+"views WHERE id = ? AND screenshot_checksum = ? AND screenshot IS NOT NULL", view.getId(), screenshotChecksum) ) {
+        if ( result.next() )
+            return result.getInt("version");		// getInt returns zero when the max is null
+    }
+    return 0;
+}
 
 /**
  * Assign a view to a model into the database
  */
 private void assignViewToModel(IDiagramModel view) throws Exception {
-    final String[] viewsInModelColumns = {"view_id", "view_version", "parent_folder_id", "model_id", "model_version", "rank"};
+    final String[] viewsInModelColumns = {"view_id", "view_version", "parent_folder_id", "model_id", "model_version", "to_model_version", "rank"};
     DBArchimateModel model = (DBArchimateModel)view.getArchimateModel();
 
+    int rank = getRankInFolder(view);
+    if ( isMembershipUnchanged(model, "views_in_model", "view", view.getId(), ((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion(), ((IFolder)view.eContainer()).getId(), rank) )
+        return;
+
     if ( logger.isTraceEnabled() ) logger.trace("   Assigning view to model");
 
-    insert(this.schema+"views_in_model", viewsInModelColumns
+    insertInBatch(this.schema+"views_in_model", viewsInModelColumns
             ,view.getId()
             ,((IDBMetadata)view).getDBMetadata().getCurrentVersion().getVersion()
             ,((IFolder)view.eContainer()).getId()
             ,model.getId()
             ,model.getCurrentVersion().getVersion()
-            ,++this.viewRank
+            ,getToModelVersion(model)
+            ,rank
             );
 }
 
@@ -978,7 +1547,7 @@ private void exportViewObject(IDiagramModelComponent viewObject) throws Exceptio
     
     if ( logger.isDebugEnabled() ) logger.debug("Exporting "+((IDBMetadata)viewObject).getDBMetadata().getDebugName()+" (initial version = "+((IDBMetadata)viewObject).getDBMetadata().getInitialVersion().getVersion()+", exported version = "+((IDBMetadata)viewObject).getDBMetadata().getCurrentVersion().getVersion()+", database_version = "+((IDBMetadata)viewObject).getDBMetadata().getDatabaseVersion().getVersion()+", latest_database_version = "+((IDBMetadata)viewObject).getDBMetadata().getLatestDatabaseVersion().getVersion()+")");
 
-    insert(this.schema+"views_objects", ViewsObjectsColumns
+    insertInBatch(this.schema+"views_objects", ViewsObjectsColumns
             ,((IIdentifier)viewObject).getId()
             ,((IDBMetadata)viewObject).getDBMetadata().getCurrentVersion().getVersion()
             ,viewObject.getClass().getSimpleName()
@@ -1027,7 +1596,7 @@ private void assignViewObjectToView(IDiagramModelComponent viewObject) throws Ex
 
     if ( logger.isTraceEnabled() ) logger.trace("   Assigning view object to view");
 
-    insert(this.schema+"views_objects_in_view", viewObjectInViewColumns
+    insertInBatch(this.schema+"views_objects_in_view", viewObjectInViewColumns
             ,viewObject.getId()
             ,((IDBMetadata)viewObject).getDBMetadata().getCurrentVersion().getVersion()
             ,viewContainer.getId()
@@ -1057,7 +1626,7 @@ private void exportViewConnection(IDiagramModelConnection viewConnection) throws
     
     if ( logger.isDebugEnabled() ) logger.debug("Exporting "+((IDBMetadata)viewConnection).getDBMetadata().getDebugName()+" (initial version = "+((IDBMetadata)viewConnection).getDBMetadata().getInitialVersion().getVersion()+", exported version = "+((IDBMetadata)viewConnection).getDBMetadata().getCurrentVersion().getVersion()+", database_version = "+((IDBMetadata)viewConnection).getDBMetadata().getDatabaseVersion().getVersion()+", latest_database_version = "+((IDBMetadata)viewConnection).getDBMetadata().getLatestDatabaseVersion().getVersion()+")");
 
-    insert(this.schema+"views_connections", ViewsConnectionsColumns
+    insertInBatch(this.schema+"views_connections", ViewsConnectionsColumns
             ,((IIdentifier)viewConnection).getId()
             ,((IDBMetadata)viewConnection).getDBMetadata().getCurrentVersion().getVersion()
             ,viewConnection.getClass().getSimpleName()
@@ -1083,7 +1652,7 @@ private void exportViewConnection(IDiagramModelConnection viewConnection) throws
 
     for ( int pos = 0 ; pos < viewConnection.getBendpoints().size(); ++pos) {
         IDiagramModelBendpoint bendpoint = viewConnection.getBendpoints().get(pos);
-        insert(this.schema+"bendpoints", bendpointsColumns
+        insertInBatch(this.schema+"bendpoints", bendpointsColumns
                 ,((IIdentifier)viewConnection).getId()
                 ,((IDBMetadata)viewConnection).getDBMetadata().getCurrentVersion().getVersion()
                 ,pos
@@ -1104,7 +1673,7 @@ private void assignViewConnectionToView(IDiagramModelConnection viewConnection)
 
     if ( logger.isTraceEnabled() ) logger.trace("   Assigning view connection to view");
 
-    insert(this.schema+"views_connections_in_view", viewObjectInViewColumns
+    insertInBatch(this.schema+"views_connections_in_view", viewObjectInViewColumns
             ,viewConnection.getId()
             ,((IDBMetadata)viewConnection).getDBMetadata().getCurrentVersion().getVersion()
             ,viewContainer.getId()
@@ -1130,16 +1699,22 @@ private void exportProperties(IProperties parent) throws Exception {
     for ( int propRank = 0 ; propRank < parent.getProperties().size(); ++propRank) {
         IProperty prop = parent.getProperties().get(propRank);
         if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.NEO4J.getDriverName()) ) {
-            request("MATCH (parent {id:?, version:?}) CREATE (prop:property {rank:?, name:?, value:?}), (parent)-[:hasProperty]->(prop)"
-                    ,((IIdentifier)parent).getId()
-                    ,exportedVersion
-                    ,propRank
-                    ,prop.getKey()
-                    ,prop.getValue()
-                    );
+            // in native mode, the relationships are not nodes so they cannot be linked to their properties
+            if ( (parent instanceof IArchimateRelationship) && this.databaseEntry.isNeo4jNativeMode() )
+                break;
+
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("parent_id", ((IIdentifier)parent).getId());
+            row.put("parent_version", exportedVersion);
+            row.put("rank", propRank);
+            row.put("name", prop.getKey());
+            row.put("value", prop.getValue());
+
+            String label = getNeo4jLabel(parent);
+            unwindInBatch("UNWIND ? AS row MATCH (parent"+(label == null ? "" : ":"+label)+" {id:row.parent_id, version:row.parent_version}) MERGE (parent)-[:hasProperty]->(prop:property {rank:row.rank}) SET prop.name = row.name, prop.value = row.value", NEO4J_PROPERTIES_STAGE, row);
         }
         else
-            insert(this.schema+"properties", propertiesColumns
+            insertInBatch(this.schema+"properties", propertiesColumns
                     ,((IIdentifier)parent).getId()
                     ,exportedVersion
                     ,propRank
@@ -1167,7 +1742,7 @@ private void exportMetadata(DBArchimateModel parent) throws Exception {
                     );
         }
         else
-            insert(this.schema+"metadata", metadataColumns
+            insertInBatch(this.schema+"metadata", metadataColumns
                     ,parent.getId()
                     ,parent.getCurrentVersion().getVersion()
                     ,propRank
@@ -1177,33 +1752,62 @@ private void exportMetadata(DBArchimateModel parent) throws Exception {
     }
 }
 
+/**
+ * Exports an image to the database<br>
+ * <br>
+ * The images contents are stored once in the images_content table, indexed by their checksum, and the images table maps the images paths to their content.<br>
+ * So the image content is sent to the database only if no image with the same content has already been exported, whatever its path.
+ * @return true if the image has been exported, false if the database already contains the same image with the same path
+ */
 public boolean exportImage(String path, byte[] image) throws SQLException {
+    final String[] imagesColumns = {"path", "checksum"};
+    final String[] imagesContentColumns = {"checksum", "image"};
+
     // we do not export null images (should never happen, but it sometimes does)
     if ( image == null ) 
         return true;
 
-    boolean exported = false;
-
-    try ( ResultSet result = select("SELECT path FROM "+this.schema+"images WHERE path = ?", path) ) {
+    String checksum;
+    try {
+        checksum = DBChecksum.calculateChecksum(image);
+    } catch (NoSuchAlgorithmException e) {
+        throw new SQLException("Failed to calculate the checksum of image "+path, e);
+    }
 
+    String databaseChecksum = null;
+    boolean pathExists = false;
+    try ( ResultSet result = select("SELECT checksum FROM "+this.schema+"images WHERE path = ?", path) ) {
         if ( result.next() ) {
-            // if the image exists in the database, we update it
-            request("UPDATE "+this.schema+"images SET image = ? WHERE path = ?"
-                    ,image
-                    ,path
-                    );
-            exported = true;
-        } else {
-            // if the image is not yet in the db, we insert it
-            String[] databaseColumns = {"path", "image"};
-            insert(this.schema+"images", databaseColumns
-                    ,path
-                    ,image							
-                    );
-            exported = true;
+            pathExists = true;
+            databaseChecksum = result.getString("checksum");
+        }
+    }
+
+    if ( DBPlugin.areEqual(checksum, databaseChecksum) ) {
+        if ( logger.isDebugEnabled() ) logger.debug("Image "+path+" is already in the database");
+        return false;
+    }
+
+    // the image content is sent only if it is not yet in the database
+    if ( DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.POSTGRESQL.getDriverName()) ) {
+        // on PostgreSQL, a duplicate key would abort the transaction, so we let the database ignore the content if it is already there
+        if ( (request("INSERT INTO "+this.schema+"images_content (checksum, image) VALUES (?, ?) ON CONFLICT (checksum) DO NOTHING", checksum, image) == 0) && logger.isDebugEnabled() )
+            logger.debug("The content of image "+path+" is already in the database");
+    } else {
+        try ( ResultSet result = select("SELECT checksum FROM "+this.schema+"images_content WHERE checksum = ?", checksum) ) {
+            if ( !result.next() )
+                insert(this.schema+"images_content", imagesContentColumns, checksum, image);
+            else if ( logger.isDebugEnabled() )
+                logger.debug("The content of image "+path+" is already in the database");
         }
     }
-    return exported;
+
+    if ( pathExists )
+        request("UPDATE "+this.schema+"images SET checksum = ? WHERE path = ?", checksum, path);
+    else
+        insert(this.schema+"images", imagesColumns, path, checksum);
+
+    return true;
 }
 
 public static String getTargetConnectionsString(EList<IDiagramModelConnection> connections) {
@@ -1240,10 +1844,7 @@ public void commit() throws SQLException {
 
 public void reset() {
     // We reset all "ranks" to zero
-    this.elementRank = 0;
-    this.relationshipRank = 0;
-    this.folderRank = 0;
-    this.viewRank = 0;
+    this.ranksInFolder.clear();
     this.viewObjectRank = 0;
     this.viewConnectionRank = 0;
 
@@ -1254,6 +1855,16 @@ public void reset() {
     this.viewsNotInModel.clear();
     this.imagesNotInModel.clear();
     this.imagesNotInDatabase.clear();
+
+    // we forget the memberships to copy
+    this.membershipsCopyVersion = 0;
+    this.membershipIntervals = false;
+    this.previousMemberships.clear();
+    this.unchangedComponents.clear();
+    this.sentMemberships.clear();
+
+    // we close the cached PreparedStatements
+    resetPreparedStatementsCache();
 }
 
 /**
@@ -6,7 +6,11 @@
 
 package org.archicontribs.database.connection;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -24,6 +28,7 @@ import org.archicontribs.database.data.DBDatabase;
 import org.archicontribs.database.model.DBArchimateModel;
 import org.archicontribs.database.model.DBArchimateFactory;
 import org.archicontribs.database.model.DBCanvasFactory;
+import org.archicontribs.database.model.DBLazyArchiveManager;
 import org.archicontribs.database.model.DBMetadata;
 import org.archicontribs.database.model.IDBMetadata;
 import org.eclipse.emf.ecore.EObject;
@@ -127,12 +132,12 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		try {
 			if ( version == 0 ) {
 				// because of PostGreSQL, we need to split the request in two
-				if ( DBPlugin.areEqual(clazz,  "IArchimateElement") ) result = select("SELECT id, version, class, name, documentation, type, created_by, created_on, checksum FROM "+this.schema+"elements e WHERE id = ? AND version = (SELECT MAX(version) FROM "+this.schema+"elements WHERE id = e.id)", id);
-				else if ( DBPlugin.areEqual(clazz,  "IArchimateRelationship") ) result = select("SELECT id, version, class, name, documentation, source_id, target_id, strength, access_type, created_by, created_on, checksum FROM "+this.schema+"relationships r WHERE id = ? AND version = (SELECT MAX(version) FROM "+this.schema+"relationships WHERE id = r.id)", id);
-				else if ( DBPlugin.areEqual(clazz,  "IFolder") ) result = select("SELECT id, version, type, name, documentation, created_by, created_on, checksum FROM folders f WHERE id = ? AND version = (SELECT MAX(version) FROM "+this.schema+"folders WHERE id = f.id)", id);
-				else if ( DBPlugin.areEqual(clazz,  "IDiagramModel") ) result = select("SELECT id, version, class, name, documentation, hint_content, hint_title, created_by, created_on, background, connection_router_type, viewpoint, checksum, container_checksum FROM "+this.schema+"views v WHERE id = ? AND version = (SELECT MAX(version) FROM "+this.schema+"views WHERE id = v.id)", id);
-				else if ( DBPlugin.areEqual(clazz,  "IDiagramModelArchimateObject") ) result = select("SELECT id, version, class, container_id, element_id, diagram_ref_id, border_color, border_type, content, documentation, hint_content, hint_title, is_locked, image_path, image_position, line_color, line_width, fill_color, font, font_color, name, notes, text_alignment, text_position, type, x, y, width, height, created_by, created_on, checksum FROM "+this.schema+"views_objects v WHERE id = ? AND version = (SELECT MAX(version) FROM "+this.schema+"views_objects WHERE id = v.id)", id);
-				else if ( DBPlugin.areEqual(clazz,  "IDiagramModelArchimateConnection") ) result = select("SELECT id, version, class, container_id, name, documentation, is_locked, line_color, line_width, font, font_color, relationship_id, relationship_version, source_object_id, target_object_id, text_position, type, created_by, created_on, checksum FROM "+this.schema+"views_connections v WHERE id = ? AND version = (SELECT MAX(version) FROM "+this.schema+"views_connections WHERE id = v.id)", id);
+				if ( DBPlugin.areEqual(clazz,  "IArchimateElement") ) result = select("SELECT id, version, class, name, documentation, type, created_by, created_on, checksum FROM "+this.schema+"elements e WHERE id = ? AND version = "+getLatestVersionRequest("e.id"), id);
+				else if ( DBPlugin.areEqual(clazz,  "IArchimateRelationship") ) result = select("SELECT id, version, class, name, documentation, source_id, target_id, strength, access_type, created_by, created_on, checksum FROM "+this.schema+"relationships r WHERE id = ? AND version = "+getLatestVersionRequest("r.id"), id);
+				else if ( DBPlugin.areEqual(clazz,  "IFolder") ) result = select("SELECT id, version, type, name, documentation, created_by, created_on, checksum FROM folders f WHERE id = ? AND version = "+getLatestVersionRequest("f.id"), id);
+				else if ( DBPlugin.areEqual(clazz,  "IDiagramModel") ) result = select("SELECT id, version, class, name, documentation, hint_content, hint_title, created_by, created_on, background, connection_router_type, viewpoint, checksum, container_checksum FROM "+this.schema+"views v WHERE id = ? AND version = "+getLatestVersionRequest("v.id"), id);
+				else if ( DBPlugin.areEqual(clazz,  "IDiagramModelArchimateObject") ) result = select("SELECT id, version, class, container_id, element_id, diagram_ref_id, border_color, border_type, content, documentation, hint_content, hint_title, is_locked, image_path, image_position, line_color, line_width, fill_color, font, font_color, name, notes, text_alignment, text_position, type, x, y, width, height, created_by, created_on, checksum FROM "+this.schema+"views_objects v WHERE id = ? AND version = "+getLatestVersionRequest("v.id"), id);
+				else if ( DBPlugin.areEqual(clazz,  "IDiagramModelArchimateConnection") ) result = select("SELECT id, version, class, container_id, name, documentation, is_locked, line_color, line_width, font, font_color, relationship_id, relationship_version, source_object_id, target_object_id, text_position, type, created_by, created_on, checksum FROM "+this.schema+"views_connections v WHERE id = ? AND version = "+getLatestVersionRequest("v.id"), id);
 				else throw new Exception("Do not know how to get a "+clazz+" from the database.");
 			} else {        
 				if ( DBPlugin.areEqual(clazz,  "IArchimateElement") ) result = select("SELECT id, version, class, name, documentation, type, created_by, created_on, checksum FROM "+this.schema+"elements WHERE id = ? AND version = ?", id, version);
@@ -271,11 +276,11 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		String toCharDocumentationAsDocumentation = DBPlugin.areEqual(this.databaseEntry.getDriver(), DBDatabase.ORACLE.getDriverName()) ? "TO_CHAR(documentation) AS documentation" : "documentation";
 
 
-		String versionToImport = model.isLatestVersionImported() ? "(SELECT MAX(version) FROM "+this.schema+"elements WHERE id = element_id)" : "element_version";
+		String versionToImport = model.isLatestVersionImported() ? getLatestVersionRequest("element_id") : "element_version";
 		this.importElementsRequest = "SELECT DISTINCT element_id, parent_folder_id, version, class, name, type, "+toCharDocumentationAsDocumentation+", created_on, checksum"
 				+ " FROM "+this.schema+"elements_in_model"
 				+ " JOIN "+this.schema+"elements ON elements.id = element_id AND version = "+versionToImport
-				+ " WHERE model_id = ? AND model_version = ?"
+				+ " WHERE model_id = ? AND "+getModelVersionPredicate("elements_in_model")
 				+ " GROUP BY element_id, parent_folder_id, version, class, name, type, "+toCharDocumentation+", created_on, checksum";
 		try (ResultSet resultElements = select("SELECT COUNT(*) AS countElements FROM ("+this.importElementsRequest+") elts", model.getId(), model.getInitialVersion().getVersion()) ) {
 			resultElements.next();
@@ -284,11 +289,11 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		}
 
 
-		versionToImport = model.isLatestVersionImported() ? "(SELECT MAX(version) FROM "+this.schema+"relationships WHERE id = relationship_id)" : "relationship_version";
+		versionToImport = model.isLatestVersionImported() ? getLatestVersionRequest("relationship_id") : "relationship_version";
 		this.importRelationshipsRequest = "SELECT relationship_id, parent_folder_id, version, class, name, "+toCharDocumentationAsDocumentation+", source_id, target_id, strength, access_type, created_on, checksum"
 				+ " FROM "+this.schema+"relationships_in_model"
 				+ " INNER JOIN "+this.schema+"relationships ON id = relationship_id AND version = "+versionToImport
-				+ " WHERE model_id = ? AND model_version = ?"
+				+ " WHERE model_id = ? AND "+getModelVersionPredicate("relationships_in_model")
 				+ " GROUP BY relationship_id, parent_folder_id, version, class, name, "+toCharDocumentation+", source_id, target_id, strength, access_type, created_on, checksum";
 		try ( ResultSet resultRelationships = select("SELECT COUNT(*) AS countRelationships FROM ("+this.importRelationshipsRequest+") relts"
 				,model.getId()
@@ -299,11 +304,11 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 			this.countRelationshipsImported = 0;
 		}
 
-		versionToImport = model.isLatestVersionImported() ? "(SELECT MAX(version) FROM "+this.schema+"folders WHERE folders.id = folders_in_model.folder_id)" : "folders_in_model.folder_version";
+		versionToImport = model.isLatestVersionImported() ? getLatestVersionRequest("folders_in_model.folder_id") : "folders_in_model.folder_version";
 		String selectFoldersRequest = "SELECT folder_id, folder_version, parent_folder_id, type, root_type, name, documentation, created_on, checksum"
 				+ " FROM "+this.schema+"folders_in_model"
 				+ " JOIN "+this.schema+"folders ON folders.id = folders_in_model.folder_id AND folders.version = "+versionToImport
-				+ " WHERE model_id = ? AND model_version = ?";
+				+ " WHERE model_id = ? AND "+getModelVersionPredicate("folders_in_model");
 		try ( ResultSet resultFolders = select("SELECT COUNT(*) AS countFolders FROM ("+selectFoldersRequest+") fldrs", model.getId(), model.getInitialVersion().getVersion()) ) {
 			resultFolders.next();
 			this.countFoldersToImport = resultFolders.getInt("countFolders");
@@ -311,11 +316,11 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		}
 		this.importFoldersRequest = selectFoldersRequest + " ORDER BY folders_in_model.rank";				// we need to put aside the ORDER BY from the SELECT FROM SELECT because of SQL Server
 
-		versionToImport = model.isLatestVersionImported() ? "(select max(version) from "+this.schema+"views where views.id = views_in_model.view_id)" : "views_in_model.view_version";
+		versionToImport = model.isLatestVersionImported() ? getLatestVersionRequest("views_in_model.view_id") : "views_in_model.view_version";
 		String selectViewsRequest = "SELECT id, version, parent_folder_id, class, name, documentation, background, connection_router_type, hint_content, hint_title, viewpoint, created_on, checksum, container_checksum"
 				+ " FROM "+this.schema+"views_in_model"
 				+ " JOIN "+this.schema+"views ON views.id = views_in_model.view_id AND views.version = "+versionToImport
-				+ " WHERE model_id = ? AND model_version = ?";
+				+ " WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model");
 		try ( ResultSet resultViews = select("SELECT COUNT(*) AS countViews FROM ("+selectViewsRequest+") vws", model.getId(), model.getInitialVersion().getVersion()) ) {
 			resultViews.next();
 			this.countViewsToImport = resultViews.getInt("countViews");
@@ -328,7 +333,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				+ " FROM "+this.schema+"views_objects"
 				+ " JOIN "+this.schema+"views_objects_in_view ON views_objects_in_view.object_id = views_objects.id AND views_objects_in_view.object_version = views_objects.version"
 				+ " JOIN "+this.schema+"views_in_model ON views_objects_in_view.view_id = views_in_model.view_id AND views_objects_in_view.view_version = "+versionToImport
-				+ " WHERE model_id = ? AND model_version = ?";
+				+ " WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model");
 		try ( ResultSet resultViewObjects = select("SELECT COUNT(*) AS countViewsObjects FROM ("+selectViewsObjectsRequest+") vobjs", model.getId(), model.getInitialVersion().getVersion()) ) {
 			resultViewObjects.next();
 			this.countViewObjectsToImport = resultViewObjects.getInt("countViewsObjects");
@@ -341,7 +346,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				+ " FROM "+this.schema+"views_connections"
 				+ " JOIN "+this.schema+"views_connections_in_view ON views_connections_in_view.connection_id = views_connections.id AND views_connections_in_view.connection_version = views_connections.version"
 				+ " JOIN "+this.schema+"views_in_model ON views_connections_in_view.view_id = views_in_model.view_id AND views_connections_in_view.view_version = "+versionToImport
-				+ " WHERE model_id = ? AND model_version = ?";
+				+ " WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model");
 		try ( ResultSet resultViewConnections = select("SELECT COUNT(*) AS countViewsConnections FROM ("+selectViewsConnectionsRequest+") vcons", model.getId(), model.getInitialVersion().getVersion()) ) {
 			resultViewConnections.next();
 			this.countViewConnectionsToImport = resultViewConnections.getInt("countViewsConnections");
@@ -354,7 +359,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				" INNER JOIN "+this.schema+"views ON views_in_model.view_id = views.id AND views_in_model.view_version = views.version"+
 				" INNER JOIN "+this.schema+"views_objects_in_view ON views_objects_in_view.view_id = views.id AND views_objects_in_view.view_version = views.version"+
 				" INNER JOIN "+this.schema+"views_objects ON views_objects.id = views_objects_in_view.object_id AND views_objects.version = views_objects_in_view.object_version"+
-				" WHERE model_id = ? AND model_version = ? AND image_path IS NOT NULL" 
+				" WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model")+" AND image_path IS NOT NULL" 
 				,model.getId()
 				,model.getInitialVersion().getVersion()
 				))
@@ -369,9 +374,92 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		// initializing the HashMaps that will be used to reference imported objects
 		this.allImagePaths.clear();
 
+		// we get all the properties of the model's components at once rather than one request per component
+		prepareImportProperties(model);
+
 		return this.countElementsToImport + this.countRelationshipsToImport + this.countFoldersToImport + this.countViewsToImport + this.countViewObjectsToImport + this.countViewConnectionsToImport + this.countImagesToImport;
 	}
 
+	/**
+	 * Properties of all the components of the model being imported, indexed by the component's id and version<br>
+	 * They are retrieved by a single request in the importModel() method and attached to the components as they are imported.
+	 */
+	private HashMap<String, List<IProperty>> modelProperties = null;
+
+	/**
+	 * Gets the properties of all the folders, elements, relationships, views, views objects and views connections of the model from the database
+	 */
+	private void prepareImportProperties(DBArchimateModel model) throws SQLException {
+		String elementVersion = model.isLatestVersionImported() ? getLatestVersionRequest("element_id") : "element_version";
+		String relationshipVersion = model.isLatestVersionImported() ? getLatestVersionRequest("relationship_id") : "relationship_version";
+		String folderVersion = model.isLatestVersionImported() ? getLatestVersionRequest("folders_in_model.folder_id") : "folders_in_model.folder_version";
+		String viewVersion = model.isLatestVersionImported() ? getLatestVersionRequest("views_in_model.view_id") : "views_in_model.view_version";
+
+		String componentsRequest = "SELECT element_id AS id, "+elementVersion+" AS version FROM "+this.schema+"elements_in_model WHERE model_id = ? AND "+getModelVersionPredicate("elements_in_model")
+				+ " UNION SELECT relationship_id, "+relationshipVersion+" FROM "+this.schema+"relationships_in_model WHERE model_id = ? AND "+getModelVersionPredicate("relationships_in_model")
+				+ " UNION SELECT folder_id, "+folderVersion+" FROM "+this.schema+"folders_in_model WHERE model_id = ? AND "+getModelVersionPredicate("folders_in_model")
+				+ " UNION SELECT view_id, "+viewVersion+" FROM "+this.schema+"views_in_model WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model")
+				+ " UNION SELECT object_id, object_version FROM "+this.schema+"views_objects_in_view"
+				+ "    JOIN "+this.schema+"views_in_model ON views_objects_in_view.view_id = views_in_model.view_id AND views_objects_in_view.view_version = "+viewVersion
+				+ "    WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model")
+				+ " UNION SELECT connection_id, connection_version FROM "+this.schema+"views_connections_in_view"
+				+ "    JOIN "+this.schema+"views_in_model ON views_connections_in_view.view_id = views_in_model.view_id AND views_connections_in_view.view_version = "+viewVersion
+				+ "    WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model");
+
+		this.modelProperties = new HashMap<String, List<IProperty>>();
+		int countProperties = 0;
+
+		String modelId = model.getId();
+		int modelVersion = model.getInitialVersion().getVersion();
+		try ( ResultSet result = select("SELECT parent_id, parent_version, name, value"
+				+ " FROM "+this.schema+"properties"
+				+ " JOIN ("+componentsRequest+") components ON properties.parent_id = components.id AND properties.parent_version = components.version"
+				+ " ORDER BY parent_id, parent_version, rank"
+				, modelId, modelVersion, modelId, modelVersion, modelId, modelVersion, modelId, modelVersion, modelId, modelVersion, modelId, modelVersion
+				) ) {
+			// as the properties are sorted, all the properties of a component are consecutive
+			String currentKey = null;
+			List<IProperty> currentProperties = null;
+			while ( result.next() ) {
+				String key = getComponentKey(result.getString("parent_id"), result.getInt("parent_version"));
+				if ( !DBPlugin.areEqual(key, currentKey) ) {
+					currentKey = key;
+					currentProperties = new ArrayList<IProperty>();
+					this.modelProperties.put(currentKey, currentProperties);
+				}
+				IProperty prop = DBArchimateFactory.eINSTANCE.createProperty();
+				prop.setKey(result.getString("name"));
+				prop.setValue(result.getString("value"));
+				currentProperties.add(prop);
+				++countProperties;
+			}
+		}
+
+		if ( logger.isDebugEnabled() ) logger.debug("Got "+countProperties+" properties for "+this.modelProperties.size()+" components.");
+	}
+
+	private static String getComponentKey(String id, int version) {
+		return id+"/"+version;
+	}
+
+	/**
+	 * Attaches to a component the properties that have been retrieved by the importModel() method<br>
+	 * If they have not been retrieved, then the properties are imported from the database.
+	 */
+	private void importModelProperties(IProperties parent) throws Exception {
+		if ( this.modelProperties == null ) {
+			importProperties(parent);
+			return;
+		}
+
+		parent.getProperties().clear();
+
+		// the properties are removed from the map as they are not needed anymore
+		List<IProperty> properties = this.modelProperties.remove(getComponentKey(((IIdentifier)parent).getId(), ((IDBMetadata)parent).getDBMetadata().getInitialVersion().getVersion()));
+		if ( properties != null )
+			parent.getProperties().addAll(properties);
+	}
+
 	/**
 	 * Prepare the import of the folders from the database
 	 */
@@ -417,7 +505,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 					model.getFolders().add(folder);
 				}
 
-				importProperties(folder);
+				importModelProperties(folder);
 				if ( logger.isDebugEnabled() ) logger.debug("   imported version "+((IDBMetadata)folder).getDBMetadata().getInitialVersion().getVersion()+" of "+((IDBMetadata)folder).getDBMetadata().getDebugName());
 
 				// we reference this folder for future use (storing sub-folders or components into it ...)
@@ -469,7 +557,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				}
 				folder.getElements().add(element);
 
-				importProperties(element);
+				importModelProperties(element);
 
 				if ( logger.isDebugEnabled() ) logger.debug("   imported version "+((IDBMetadata)element).getDBMetadata().getInitialVersion().getVersion()+" of "+((IDBMetadata)element).getDBMetadata().getDebugName());
 
@@ -543,7 +631,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
                     model.registerTargetRelationship(relationship, this.currentResultSet.getString("target_id"));
                 }
 
-				importProperties(relationship);
+				importModelProperties(relationship);
 
 				if ( logger.isDebugEnabled() ) logger.debug("   imported version "+((IDBMetadata)relationship).getDBMetadata().getInitialVersion().getVersion()+" of "+((IDBMetadata)relationship).getDBMetadata().getDebugName());
 
@@ -599,7 +687,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 
 				model.getAllFolders().get(this.currentResultSet.getString("parent_folder_id")).getElements().add(view);
 
-				importProperties(view);
+				importModelProperties(view);
 
 				if ( logger.isDebugEnabled() ) logger.debug("   imported version "+((IDBMetadata)view).getDBMetadata().getInitialVersion().getVersion()+" of "+((IDBMetadata)view).getDBMetadata().getDebugName());
 
@@ -628,12 +716,39 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				);
 	}
 
+	/**
+	 * Prepare the import of the views objects of all the views of the model from the database<br>
+	 * The views objects are sorted by view and by rank, so a single request is needed for the whole model.
+	 */
+	public void prepareImportViewsObjects(DBArchimateModel model) throws Exception {
+		String versionToImport = model.isLatestVersionImported() ? getLatestVersionRequest("views_in_model.view_id") : "views_in_model.view_version";
+		this.currentResultSet = select("SELECT views_objects_in_view.view_id AS view_id, id, version, class, container_id, element_id, diagram_ref_id, border_color, border_type, content, documentation, hint_content, hint_title, is_locked, image_path, image_position, line_color, line_width, fill_color, font, font_color, name, notes, text_alignment, text_position, type, x, y, width, height, checksum, created_on"
+				+" FROM "+this.schema+"views_objects"
+				+" JOIN "+this.schema+"views_objects_in_view ON views_objects_in_view.object_id = views_objects.id AND views_objects_in_view.object_version = views_objects.version"
+				+" JOIN "+this.schema+"views_in_model ON views_in_model.view_id = views_objects_in_view.view_id AND views_objects_in_view.view_version = "+versionToImport
+				+" WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model")
+				+" ORDER BY views_in_model.rank, views_in_model.view_id, views_objects_in_view.rank"
+				,model.getId()
+				,model.getInitialVersion().getVersion()
+				);
+	}
+
+	/**
+	 * import the views objects from the database, when they have been prepared for the whole model<br>
+	 * Each view object is created in the view it belongs to.
+	 */
+	public boolean importViewsObjects(DBArchimateModel model) throws Exception {
+		return importViewsObjects(model, null);
+	}
+
 	/**
 	 * import the views objects from the database
+	 * @param view the view the objects belong to, or null if the view must be determined from the view_id column
 	 */
 	public boolean importViewsObjects(DBArchimateModel model, IDiagramModel view) throws Exception {
 		if ( this.currentResultSet != null ) {
 			if ( this.currentResultSet.next() ) {
+				IDiagramModel viewContainer = (view != null) ? view : model.getAllViews().get(this.currentResultSet.getString("view_id"));
 				EObject eObject;
 
 				if ( this.currentResultSet.getString("class").startsWith("Canvas") )
@@ -680,14 +795,14 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				metadata.setBounds(this.currentResultSet.getInt("x"), this.currentResultSet.getInt("y"), this.currentResultSet.getInt("width"), this.currentResultSet.getInt("height"));
 
 				// The container is either the view, or a container in the view
-				if ( DBPlugin.areEqual(this.currentResultSet.getString("container_id"), view.getId()) )
-					view.getChildren().add((IDiagramModelObject)eObject);
+				if ( DBPlugin.areEqual(this.currentResultSet.getString("container_id"), viewContainer.getId()) )
+					viewContainer.getChildren().add((IDiagramModelObject)eObject);
 				else
 					((IDiagramModelContainer)model.getAllViewObjects().get(this.currentResultSet.getString("container_id"))).getChildren().add((IDiagramModelObject)eObject);
 
 				// If the object has got properties but does not have a linked element, then it may have distinct properties
 				if ( eObject instanceof IProperties && this.currentResultSet.getString("element_id")==null ) {
-					importProperties((IProperties)eObject);
+					importModelProperties((IProperties)eObject);
 				}
 
 				if ( logger.isDebugEnabled() ) logger.debug("   imported version "+((IDBMetadata)eObject).getDBMetadata().getInitialVersion().getVersion()+" of "+((IDBMetadata)eObject).getDBMetadata().getDebugName());
@@ -708,10 +823,81 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		return false;
 	}
 
+	/**
+	 * Bendpoints of the views connections being imported, indexed by the connection's id and version<br>
+	 * They are retrieved by a single request when the import of the views connections is prepared, and attached to the connections as they are imported.
+	 */
+	private HashMap<String, List<IDiagramModelBendpoint>> connectionsBendpoints = null;
+
+	/**
+	 * Gets the bendpoints of all the connections returned by the connectionsRequest from the database
+	 * @param connectionsRequest request that returns the id and version of the connections, in columns named connection_id and connection_version
+	 */
+	@SafeVarargs
+	private final <T> void prepareImportBendpoints(String connectionsRequest, T... parameters) throws SQLException {
+		this.connectionsBendpoints = new HashMap<String, List<IDiagramModelBendpoint>>();
+		int countBendpoints = 0;
+
+		try ( ResultSet result = select("SELECT parent_id, parent_version, start_x, start_y, end_x, end_y"
+				+ " FROM "+this.schema+"bendpoints"
+				+ " JOIN ("+connectionsRequest+") connections ON bendpoints.parent_id = connections.connection_id AND bendpoints.parent_version = connections.connection_version"
+				+ " ORDER BY parent_id, parent_version, rank"
+				, parameters
+				) ) {
+			// as the bendpoints are sorted, all the bendpoints of a connection are consecutive
+			String currentKey = null;
+			List<IDiagramModelBendpoint> currentBendpoints = null;
+			while ( result.next() ) {
+				String key = getComponentKey(result.getString("parent_id"), result.getInt("parent_version"));
+				if ( !DBPlugin.areEqual(key, currentKey) ) {
+					currentKey = key;
+					currentBendpoints = new ArrayList<IDiagramModelBendpoint>();
+					this.connectionsBendpoints.put(currentKey, currentBendpoints);
+				}
+				IDiagramModelBendpoint bendpoint = DBArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
+				bendpoint.setStartX(result.getInt("start_x"));
+				bendpoint.setStartY(result.getInt("start_y"));
+				bendpoint.setEndX(result.getInt("end_x"));
+				bendpoint.setEndY(result.getInt("end_y"));
+				currentBendpoints.add(bendpoint);
+				++countBendpoints;
+			}
+		}
+
+		if ( logger.isDebugEnabled() ) logger.debug("Got "+countBendpoints+" bendpoints for "+this.connectionsBendpoints.size()+" connections.");
+	}
+
+	/**
+	 * Attaches to a connection the bendpoints that have been retrieved when the import of the views connections has been prepared<br>
+	 * If they have not been retrieved, then the bendpoints are imported from the database.
+	 */
+	private void importConnectionBendpoints(IDiagramModelConnection connection) throws SQLException {
+		if ( this.connectionsBendpoints == null ) {
+			try ( ResultSet resultBendpoints = select("SELECT start_x, start_y, end_x, end_y FROM "+this.schema+"bendpoints WHERE parent_id = ? AND parent_version = ? ORDER BY rank", connection.getId(), ((IDBMetadata)connection).getDBMetadata().getInitialVersion().getVersion()) ) {
+				while(resultBendpoints.next()) {
+					IDiagramModelBendpoint bendpoint = DBArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
+					bendpoint.setStartX(resultBendpoints.getInt("start_x"));
+					bendpoint.setStartY(resultBendpoints.getInt("start_y"));
+					bendpoint.setEndX(resultBendpoints.getInt("end_x"));
+					bendpoint.setEndY(resultBendpoints.getInt("end_y"));
+					connection.getBendpoints().add(bendpoint);
+				}
+			}
+			return;
+		}
+
+		// the bendpoints are removed from the map as they are not needed anymore
+		List<IDiagramModelBendpoint> bendpoints = this.connectionsBendpoints.remove(getComponentKey(connection.getId(), ((IDBMetadata)connection).getDBMetadata().getInitialVersion().getVersion()));
+		if ( bendpoints != null )
+			connection.getBendpoints().addAll(bendpoints);
+	}
+
 	/**
 	 * Prepare the import of the views connections of a specific view from the database
 	 */
 	public void prepareImportViewsConnections(String id, int version) throws Exception {
+		prepareImportBendpoints("SELECT connection_id, connection_version FROM "+this.schema+"views_connections_in_view WHERE view_id = ? AND view_version = ?", id, version);
+
 		this.currentResultSet = select("SELECT id, version, class, container_id, name, documentation, is_locked, line_color, line_width, font, font_color, relationship_id, source_object_id, target_object_id, text_position, type, checksum"
 				+" FROM "+this.schema+"views_connections"
 				+" JOIN "+this.schema+"views_connections_in_view ON views_connections_in_view.connection_id = views_connections.id AND views_connections_in_view.connection_version = views_connections.version"
@@ -722,6 +908,31 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				);
 	}
 
+	/**
+	 * Prepare the import of the views connections of all the views of the model from the database<br>
+	 * The views connections are sorted by view and by rank, so a single request is needed for the whole model.
+	 */
+	public void prepareImportViewsConnections(DBArchimateModel model) throws Exception {
+		String versionToImport = model.isLatestVersionImported() ? getLatestVersionRequest("views_in_model.view_id") : "views_in_model.view_version";
+
+		prepareImportBendpoints("SELECT connection_id, connection_version FROM "+this.schema+"views_connections_in_view"
+				+" JOIN "+this.schema+"views_in_model ON views_in_model.view_id = views_connections_in_view.view_id AND views_connections_in_view.view_version = "+versionToImport
+				+" WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model")
+				,model.getId()
+				,model.getInitialVersion().getVersion()
+				);
+
+		this.currentResultSet = select("SELECT views_connections_in_view.view_id AS view_id, id, version, class, container_id, name, documentation, is_locked, line_color, line_width, font, font_color, relationship_id, source_object_id, target_object_id, text_position, type, checksum"
+				+" FROM "+this.schema+"views_connections"
+				+" JOIN "+this.schema+"views_connections_in_view ON views_connections_in_view.connection_id = views_connections.id AND views_connections_in_view.connection_version = views_connections.version"
+				+" JOIN "+this.schema+"views_in_model ON views_in_model.view_id = views_connections_in_view.view_id AND views_connections_in_view.view_version = "+versionToImport
+				+" WHERE model_id = ? AND "+getModelVersionPredicate("views_in_model")
+				+" ORDER BY views_in_model.rank, views_in_model.view_id, views_connections_in_view.rank"
+				,model.getId()
+				,model.getInitialVersion().getVersion()
+				);
+	}
+
 	/**
 	 * import the views connections from the database
 	 */
@@ -785,18 +996,8 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
                     }
 				}
 
-				if ( eObject instanceof IDiagramModelConnection ) {
-					try ( ResultSet resultBendpoints = select("SELECT start_x, start_y, end_x, end_y FROM "+this.schema+"bendpoints WHERE parent_id = ? AND parent_version = ? ORDER BY rank", ((IIdentifier)eObject).getId(), ((IDBMetadata)eObject).getDBMetadata().getInitialVersion().getVersion()) ) {
-						while(resultBendpoints.next()) {
-							IDiagramModelBendpoint bendpoint = DBArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
-							bendpoint.setStartX(resultBendpoints.getInt("start_x"));
-							bendpoint.setStartY(resultBendpoints.getInt("start_y"));
-							bendpoint.setEndX(resultBendpoints.getInt("end_x"));
-							bendpoint.setEndY(resultBendpoints.getInt("end_y"));
-							((IDiagramModelConnection)eObject).getBendpoints().add(bendpoint);
-						}
-					}
-				}
+				if ( eObject instanceof IDiagramModelConnection )
+					importConnectionBendpoints((IDiagramModelConnection)eObject);
 
 				// we reference the connection for future use
 				model.countObject(eObject, false, null);
@@ -804,7 +1005,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 
 				// If the connection has got properties but does not have a linked relationship, then it may have distinct properties
 				if ( eObject instanceof IProperties && this.currentResultSet.getString("relationship_id")==null ) {
-					importProperties((IProperties)eObject);
+					importModelProperties((IProperties)eObject);
 				}
 
 				if ( logger.isDebugEnabled() ) logger.debug("   imported version "+((IDBMetadata)eObject).getDBMetadata().getInitialVersion().getVersion()+" of "+((IDBMetadata)eObject).getDBMetadata().getDebugName());
@@ -813,51 +1014,145 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 			}
 			this.currentResultSet.close();
 			this.currentResultSet = null;
+			this.connectionsBendpoints = null;
 		}
 		return false;
 	}
 
 	/**
-	 * import the views from the database
+	 * import an image from the database into the model's archive manager
 	 */
 	public void importImage(DBArchimateModel model, String path) throws Exception {
-		try ( ResultSet result = select("SELECT image FROM "+this.schema+"images WHERE path = ?", path) ) {
-			if (result.next() ) {
-				IArchiveManager archiveMgr = (IArchiveManager)model.getAdapter(IArchiveManager.class);
-				try {
-					String imagePath;
-					byte[] imageContent = result.getBytes("image");
-
-					if ( logger.isDebugEnabled() ) {
-						if ( (imageContent.length/1024)/2014 > 1 )
-							logger.debug( "Importing "+path+" with "+(imageContent.length/1024)/1024+" Mo of data");
-						else
-							logger.debug( "Importing "+path+" with "+imageContent.length/1024+" Ko of data");
-					}
-					imagePath = archiveMgr.addByteContentEntry(path, imageContent);
+		importImage(model, path, getImageContentFromDatabase(path));
+	}
+
+	/**
+	 * gets the content of an image from the database<br>
+	 * This method does not need the model's archive manager, so it can be called before the model is registered in the models tree.
+	 */
+	public byte[] getImageContentFromDatabase(String path) throws Exception {
+		try ( ResultSet result = select("SELECT image FROM "+this.schema+"images JOIN "+this.schema+"images_content ON images_content.checksum = images.checksum WHERE path = ?", path) ) {
+			if ( result.next() ) {
+				byte[] imageContent = result.getBytes("image");
 
-                    if ( logger.isDebugEnabled() && !DBPlugin.areEqual(imagePath, path) )
-                        logger.debug( "... image imported but with new path "+imagePath);
+				if ( logger.isDebugEnabled() ) {
+					if ( (imageContent.length/1024)/2014 > 1 )
+						logger.debug( "Importing "+path+" with "+(imageContent.length/1024)/1024+" Mo of data");
+					else
+						logger.debug( "Importing "+path+" with "+imageContent.length/1024+" Ko of data");
+				}
+				return imageContent;
+			}
+		}
+		throw new Exception("Import of image failed : unkwnown image path "+path);
+	}
 
-				} catch (Exception e) {
-					throw new Exception("Import of image failed !", e.getCause()!=null ? e.getCause() : e);
+	/**
+	 * streams the content of an image from the database into a temporary file<br>
+	 * This avoids to keep the content of all the images in memory until they can be stored in the model's archive manager.
+	 */
+	public File getImageFileFromDatabase(String path) throws Exception {
+		try ( ResultSet result = select("SELECT image FROM "+this.schema+"images JOIN "+this.schema+"images_content ON images_content.checksum = images.checksum WHERE path = ?", path) ) {
+			if ( result.next() ) {
+				File imageFile = File.createTempFile("archi-image-", null);
+				imageFile.deleteOnExit();
+				try ( InputStream imageContent = result.getBinaryStream("image") ) {
+					Files.copy(imageContent, imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					Files.deleteIfExists(imageFile.toPath());
+					throw e;
 				}
-				++this.countImagesImported;
+
+				if ( logger.isDebugEnabled() ) logger.debug( "Importing "+path+" with "+imageFile.length()/1024+" Ko of data");
+				return imageFile;
 			}
-			else
-				throw new Exception("Import of image failed : unkwnown image path "+path);
-		} 
+		}
+		throw new Exception("Import of image failed : unkwnown image path "+path);
+	}
+
+	/**
+	 * import an image that has been streamed from the database to a temporary file into the model's archive manager<br>
+	 * The temporary file is deleted once the image is imported.
+	 */
+	public void importImage(DBArchimateModel model, String path, File imageFile) throws Exception {
+		try {
+			importImage(model, path, Files.readAllBytes(imageFile.toPath()));
+		} finally {
+			Files.deleteIfExists(imageFile.toPath());
+		}
+	}
+
+	/**
+	 * import an image that has already been retrieved from the database into the model's archive manager
+	 */
+	public void importImage(DBArchimateModel model, String path, byte[] imageContent) throws Exception {
+		IArchiveManager archiveMgr = (IArchiveManager)model.getAdapter(IArchiveManager.class);
+		try {
+			String imagePath = archiveMgr.addByteContentEntry(path, imageContent);
+
+			if ( logger.isDebugEnabled() && !DBPlugin.areEqual(imagePath, path) )
+				logger.debug( "... image imported but with new path "+imagePath);
+
+		} catch (Exception e) {
+			throw new Exception("Import of image failed !", e.getCause()!=null ? e.getCause() : e);
+		}
+		++this.countImagesImported;
+	}
+
+	/**
+	 * gets the checksum of an image from the database, without retrieving its content
+	 */
+	public String getImageChecksumFromDatabase(String path) throws Exception {
+		try ( ResultSet result = select("SELECT checksum FROM "+this.schema+"images WHERE path = ?", path) ) {
+			if ( result.next() )
+				return result.getString("checksum");
+		}
+		throw new Exception("Import of image failed : unkwnown image path "+path);
+	}
+
+	/**
+	 * streams the content of an image from the database into a file, using the image checksum
+	 */
+	public void copyImageContentFromDatabase(String checksum, File imageFile) throws Exception {
+		try ( ResultSet result = select("SELECT image FROM "+this.schema+"images_content WHERE checksum = ?", checksum) ) {
+			if ( result.next() ) {
+				try ( InputStream imageContent = result.getBinaryStream("image") ) {
+					Files.copy(imageContent, imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				if ( logger.isDebugEnabled() ) logger.debug( "Got image "+checksum+" with "+imageFile.length()/1024+" Ko of data");
+				return;
+			}
+		}
+		throw new Exception("Import of image failed : unkwnown image checksum "+checksum);
+	}
+
+	/**
+	 * registers an image in the model's lazy archive manager, so its content is retrieved from the database only when Archi requests it<br>
+	 * The model must have been registered in the model manager as registering a model replaces its archive manager.
+	 */
+	public void importLazyImage(DBArchimateModel model, String path, String checksum) {
+		DBLazyArchiveManager archiveMgr;
+		if ( model.getAdapter(IArchiveManager.class) instanceof DBLazyArchiveManager )
+			archiveMgr = (DBLazyArchiveManager)model.getAdapter(IArchiveManager.class);
+		else {
+			archiveMgr = new DBLazyArchiveManager(model, this.databaseEntry);
+			model.setAdapter(IArchiveManager.class, archiveMgr);
+		}
+		archiveMgr.registerImage(path, checksum);
+		++this.countImagesImported;
 	}
 
 	/**
 	 * import an image from the database
 	 */
 	public Image getImageFromDatabase(String path) throws Exception {
-		try ( ResultSet result = select("SELECT image FROM "+this.schema+"images WHERE path = ?", path) ) {
+		try ( ResultSet result = select("SELECT image FROM "+this.schema+"images JOIN "+this.schema+"images_content ON images_content.checksum = images.checksum WHERE path = ?", path) ) {
 			if ( result.next() ) {
-				byte[] imageContent = result.getBytes("image");
-				if ( logger.isDebugEnabled() ) logger.debug( "Importing "+path+" with "+imageContent.length/1024+" Ko of data");
-				return new Image(Display.getDefault(), new ImageData(new ByteArrayInputStream(imageContent)));
+				if ( logger.isDebugEnabled() ) logger.debug( "Importing "+path);
+				// the image is decoded directly from the database stream, without copying its content in memory first
+				try ( InputStream imageContent = result.getBinaryStream("image") ) {
+					return new Image(Display.getDefault(), new ImageData(imageContent));
+				}
 			}
 		}
 		return null;
@@ -978,7 +1273,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				logger.debug("Importing folder id "+id+".");
 		}
 
-		String versionString = (version==0) ? "(SELECT MAX(version) FROM "+this.schema+"folders WHERE id = f.id)" : String.valueOf(version);
+		String versionString = (version==0) ? getLatestVersionRequest("f.id") : String.valueOf(version);
 
 		try ( ResultSet result = select("SELECT version, type, root_type, name, documentation, checksum, created_on FROM "+this.schema+"folders f WHERE id = ? AND version = "+versionString, id) ) {
 			if ( !result.next() ) {
@@ -1079,7 +1374,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 
 		// TODO add an option to import elements recursively
 
-		String versionString = (version==0) ? "(SELECT MAX(version) FROM "+this.schema+"elements WHERE id = e.id)" : String.valueOf(version);
+		String versionString = (version==0) ? getLatestVersionRequest("e.id") : String.valueOf(version);
 
 		try ( ResultSet result = select("SELECT version, class, name, documentation, type, checksum, created_on FROM "+this.schema+"elements e WHERE id = ? AND version = "+versionString, id) ) {
 			if ( !result.next() ) {
@@ -1192,7 +1487,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 				logger.debug("Importing relationship id "+id+".");
 		}
 
-		String versionString = (version==0) ? "(SELECT MAX(version) FROM "+this.schema+"relationships WHERE id = r.id)" : String.valueOf(version);
+		String versionString = (version==0) ? getLatestVersionRequest("r.id") : String.valueOf(version);
 
 		try ( ResultSet result = select("SELECT version, class, name, documentation, source_id, target_id, strength, access_type, checksum, created_on FROM "+this.schema+"relationships r WHERE id = ? AND version = "+versionString, id) ) {
 			if ( !result.next() ) {
@@ -1311,7 +1606,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		}
 
 		// 1 : we create or update the view
-		String versionString = (version==0) ? "(SELECT MAX(version) FROM "+this.schema+"views WHERE id = v.id)" : String.valueOf(version);
+		String versionString = (version==0) ? getLatestVersionRequest("v.id") : String.valueOf(version);
 
 		try ( ResultSet result = select("SELECT version, class, name, documentation, background, connection_router_type, hint_content, hint_title, viewpoint, checksum, container_checksum, created_on FROM "+this.schema+"views v WHERE id = ? AND version = "+versionString, id) ) {
 			if ( !result.next() ) {
@@ -1421,7 +1716,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 
 		// 1 : we create or update the view object
 		EObject viewObject = null;
-		String versionString = (version==0) ? "(SELECT MAX(version) FROM "+this.schema+"views_objects WHERE id = v.id)" : String.valueOf(version);
+		String versionString = (version==0) ? getLatestVersionRequest("v.id") : String.valueOf(version);
 
 		try ( ResultSet resultViewObject = select("SELECT id, version, class, container_id, element_id, diagram_ref_id, border_color, border_type, content, documentation, hint_content, hint_title, is_locked, image_path, image_position, line_color, line_width, fill_color, font, font_color, name, notes, text_alignment, text_position, type, x, y, width, height, checksum, created_on FROM "+this.schema+"views_objects v WHERE id = ? AND version = "+versionString, id) ) {
 			resultViewObject.next();
@@ -1552,7 +1847,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 
 		// 1 : we create or update the view connection
 		EObject viewConnection = null;
-		String versionString = (version==0) ? "(SELECT MAX(version) FROM "+this.schema+"views_connections WHERE id = v.id)" : String.valueOf(version);
+		String versionString = (version==0) ? getLatestVersionRequest("v.id") : String.valueOf(version);
 
 		try ( ResultSet resultViewConnection = select("SELECT id, version, class, container_id, name, documentation, is_locked, line_color, line_width, font, font_color, relationship_id, source_object_id, target_object_id, text_position, type, checksum, created_on FROM "+this.schema+"views_connections v WHERE id = ? AND version = "+versionString, id) ) {
 			resultViewConnection.next();
@@ -1691,8 +1986,13 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
 		this.countImagesToImport = 0;
 		this.countImagesImported = 0;
 
-		// we empty the hashmap
+		// we empty the hashmaps
 		this.allImagePaths.clear();
+		this.modelProperties = null;
+		this.connectionsBendpoints = null;
+
+		// we close the cached PreparedStatements
+		resetPreparedStatementsCache();
 	}
 
 	@Override
@@ -1718,7 +2018,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
         try ( ResultSet result = select("SELECT m2.element_id AS element_id, m2.parent_folder_id AS parent_folder_id"
                 + " FROM "+this.schema+"elements_in_model m1"
                 + " JOIN "+this.schema+"elements_in_model m2 ON m1.element_id = m2.element_id AND m1.model_id = m2.model_id"
-                + " WHERE m1.model_id = ? AND m1.model_version = ? AND m2.model_version = ? AND m1.parent_folder_id <> m2.parent_folder_id"
+                + " WHERE m1.model_id = ? AND "+getModelVersionPredicate("m1")+" AND "+getModelVersionPredicate("m2")+" AND m1.parent_folder_id <> m2.parent_folder_id"
                 , model.getId()
                 , model.getInitialVersion().getVersion()
                 , model.getDatabaseVersion().getVersion()
@@ -1737,7 +2037,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
         try ( ResultSet result = select("SELECT m2.relationship_id AS relationship_id, m2.parent_folder_id AS parent_folder_id"
                 + " FROM "+this.schema+"relationships_in_model m1"
                 + " JOIN "+this.schema+"relationships_in_model m2 ON m1.relationship_id = m2.relationship_id AND m1.model_id = m2.model_id"
-                + " WHERE m1.model_id = ? AND m1.model_version = ? AND m2.model_version = ? AND m1.parent_folder_id <> m2.parent_folder_id"
+                + " WHERE m1.model_id = ? AND "+getModelVersionPredicate("m1")+" AND "+getModelVersionPredicate("m2")+" AND m1.parent_folder_id <> m2.parent_folder_id"
                 , model.getId()
                 , model.getInitialVersion().getVersion()
                 , model.getDatabaseVersion().getVersion()
@@ -1756,7 +2056,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
         try ( ResultSet result = select("SELECT m2.folder_id AS folder_id, m2.parent_folder_id AS parent_folder_id"
                 + " FROM "+this.schema+"folders_in_model m1"
                 + " JOIN "+this.schema+"folders_in_model m2 ON m1.folder_id = m2.folder_id AND m1.model_id = m2.model_id"
-                + " WHERE m1.model_id = ? AND m1.model_version = ? AND m2.model_version = ? AND m1.parent_folder_id <> m2.parent_folder_id"
+                + " WHERE m1.model_id = ? AND "+getModelVersionPredicate("m1")+" AND "+getModelVersionPredicate("m2")+" AND m1.parent_folder_id <> m2.parent_folder_id"
                 , model.getId()
                 , model.getInitialVersion().getVersion()
                 , model.getDatabaseVersion().getVersion()
@@ -1775,7 +2075,7 @@ public class DBDatabaseImportConnection extends DBDatabaseConnection {
         try ( ResultSet result = select("SELECT m2.view_id AS view_id, m2.parent_folder_id AS parent_folder_id"
                 + " FROM "+this.schema+"views_in_model m1"
                 + " JOIN "+this.schema+"views_in_model m2 ON m1.view_id = m2.view_id AND m1.model_id = m2.model_id"
-                + " WHERE m1.model_id = ? AND m1.model_version = ? AND m2.model_version = ? AND m1.parent_folder_id <> m2.parent_folder_id"
+                + " WHERE m1.model_id = ? AND "+getModelVersionPredicate("m1")+" AND "+getModelVersionPredicate("m2")+" AND m1.parent_folder_id <> m2.parent_folder_id"
                 , model.getId()
                 , model.getInitialVersion().getVersion()
                 , model.getDatabaseVersion().getVersion()
@@ -6,6 +6,8 @@
 
 package org.archicontribs.database.data;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -63,14 +65,14 @@ public class DBChecksum {
 	 * @throws UnsupportedEncodingException 
 	 */
 	public static String calculateChecksum(IArchimateModel model, String releaseNote) throws NoSuchAlgorithmException, UnsupportedEncodingException {
-		StringBuilder checksumBuilder = new StringBuilder();
+		ChecksumStream checksumBuilder = checksumStream.get().start();
 		
 		append(checksumBuilder, "id", model.getId());
 		append(checksumBuilder, "name", model.getName());
 		append(checksumBuilder, "purpose", model.getPurpose());
 		append(checksumBuilder, "note", releaseNote);
 		
-		return calculateChecksum(checksumBuilder);
+		return checksumBuilder.digest();
 	}
 
 	/**
@@ -80,7 +82,7 @@ public class DBChecksum {
 	 * @throws UnsupportedEncodingException 
 	 */
 	public static String calculateChecksum(EObject eObject) throws NoSuchAlgorithmException, UnsupportedEncodingException {
-		StringBuilder checksumBuilder = new StringBuilder();
+		ChecksumStream checksumBuilder = checksumStream.get().start();
 		
 		if ( eObject instanceof IIdentifier )						append(checksumBuilder, "id", ((IIdentifier)eObject).getId());
 		
@@ -151,7 +153,7 @@ public class DBChecksum {
 		        													}
 		}
 		
-		return calculateChecksum(checksumBuilder);
+		return checksumBuilder.digest();
 	}
 	
 	/**
@@ -161,9 +163,10 @@ public class DBChecksum {
 	 * @param value value to add
 	 */
 	public static void append(StringBuilder sb, String name, String value) {
-		String sValue = (value == null ? "" : value);
-
-	    sb.append(startOfText+sValue+endOfText);
+	    sb.append(startOfText);
+	    if ( value != null )
+	    	sb.append(value);
+	    sb.append(endOfText);
 	}
 	
 	/**
@@ -186,13 +189,50 @@ public class DBChecksum {
 		append(sb, name, String.valueOf(value));
 	}
 	
+	/**
+	 * Adds the value to the stream that is used to calculate the checksum.
+	 * @param stream stream that is used to calculate the checksum
+	 * @param name was used for log purpose but is not used anymore
+	 * @param value value to add
+	 */
+	private static void append(ChecksumStream stream, String name, String value) {
+		stream.write(startOfText);
+		if ( value != null )
+			stream.write(value);
+		stream.write(endOfText);
+	}
+	
+	/**
+	 * Adds the value to the stream that is used to calculate the checksum.
+	 * @param stream stream that is used to calculate the checksum
+	 * @param name was used for log purpose but is not used anymore
+	 * @param value value to add
+	 */
+	private static void append(ChecksumStream stream, String name, int value) {
+		stream.write(startOfText);
+		stream.writeNumber(value);
+		stream.write(endOfText);
+	}
+	
+	/**
+	 * Adds the value to the stream that is used to calculate the checksum.
+	 * @param stream stream that is used to calculate the checksum
+	 * @param name was used for log purpose but is not used anymore
+	 * @param value value to add
+	 */
+	private static void append(ChecksumStream stream, String name, boolean value) {
+		append(stream, name, value ? "true" : "false");
+	}
+	
 	/**
 	 * Calculate a MD5 from a StringBuilder
 	 * @throws NoSuchAlgorithmException 
 	 * @throws UnsupportedEncodingException 
 	 */
 	public static String calculateChecksum(StringBuilder input) throws NoSuchAlgorithmException, UnsupportedEncodingException {
-		return calculateChecksum(input.toString().getBytes("UTF-8"));
+		ChecksumStream stream = checksumStream.get().start();
+		stream.write(input);
+		return stream.digest();
 	}
 	
 	/**
@@ -201,7 +241,9 @@ public class DBChecksum {
 	 * @throws UnsupportedEncodingException 
 	 */
 	public static String calculateChecksum(String input) throws NoSuchAlgorithmException, UnsupportedEncodingException {
-		return calculateChecksum(input.getBytes("UTF-8"));
+		ChecksumStream stream = checksumStream.get().start();
+		stream.write(input);
+		return stream.digest();
 	}
 	
 	/**
@@ -212,28 +254,165 @@ public class DBChecksum {
 	    if ( bytes == null )
 	    	return null;
 	    
-        MessageDigest md;
-        StringBuilder md5 = new StringBuilder();
+	    ChecksumStream stream = checksumStream.get().start();
+	    stream.write(bytes);
+	    return stream.digest();
+	}
+	
+	/**
+	 * Calculate a MD5 from an input stream, without loading the whole content in memory
+	 * @throws NoSuchAlgorithmException 
+	 * @throws IOException 
+	 */
+	public static String calculateChecksum(InputStream input) throws NoSuchAlgorithmException, IOException {
+	    if ( input == null )
+	    	return null;
 	    
-		try {
-
-			md = MessageDigest.getInstance("MD5");
-	    	md.update(bytes);
-	    	
-	    	byte[] digest = md.digest();
-
-	    	for (int i = 0; i < digest.length; i++) {
-	    	    if ((0xff & digest[i]) < 0x10) {
-	    	    	md5.append("0").append(Integer.toHexString((0xFF & digest[i])));
-	    	    } else {
-	    	    	md5.append(Integer.toHexString(0xFF & digest[i]));
-	    	    }
-	    	}
-		} catch (NoSuchAlgorithmException e) {
-			DBGui.popup(Level.ERROR, "Failed to calculate checksum.", e);
-			throw e;
+	    ChecksumStream stream = checksumStream.get().start();
+	    stream.write(input);
+	    return stream.digest();
+	}
+	
+	private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+	
+	/**
+	 * Converts a digest to its lower case hexadecimal representation
+	 */
+	private static String toHexString(byte[] digest) {
+		char[] hex = new char[digest.length * 2];
+		for ( int i = 0; i < digest.length; ++i ) {
+			hex[2*i] = hexDigits[(digest[i] >> 4) & 0x0F];
+			hex[2*i+1] = hexDigits[digest[i] & 0x0F];
+		}
+		return new String(hex);
+	}
+	
+	/**
+	 * Each thread reuses its own MD5 digest, as MessageDigest instances are expensive to get but are not thread safe
+	 */
+	private static final ThreadLocal<ChecksumStream> checksumStream = new ThreadLocal<ChecksumStream>() {
+		@Override
+		protected ChecksumStream initialValue() {
+			return new ChecksumStream();
+		}
+	};
+	
+	/**
+	 * MD5 digest fed with the UTF-8 encoding of the values, without creating intermediate Strings or byte arrays.<br>
+	 * The encoding is done exactly as String.getBytes("UTF-8") does (including the replacement of malformed surrogates by '?') so that the checksums are unchanged.
+	 */
+	private static final class ChecksumStream {
+		private MessageDigest md = null;
+		private final byte[] buffer = new byte[1024];
+		private final byte[] digits = new byte[10];
+		private int position = 0;
+		
+		ChecksumStream() {
+		}
+		
+		/**
+		 * Starts a new checksum calculation
+		 */
+		ChecksumStream start() throws NoSuchAlgorithmException {
+			if ( this.md == null ) {
+				try {
+					this.md = MessageDigest.getInstance("MD5");
+				} catch (NoSuchAlgorithmException e) {
+					DBGui.popup(Level.ERROR, "Failed to calculate checksum.", e);
+					throw e;
+				}
+			}
+			this.md.reset();
+			this.position = 0;
+			return this;
+		}
+		
+		private void writeByte(int b) {
+			if ( this.position == this.buffer.length )
+				flush();
+			this.buffer[this.position++] = (byte)b;
+		}
+		
+		private void flush() {
+			this.md.update(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+		
+		void write(byte[] bytes) {
+			flush();
+			this.md.update(bytes);
+		}
+		
+		void write(InputStream input) throws IOException {
+			flush();
+			int length;
+			while ( (length = input.read(this.buffer)) != -1 )
+				this.md.update(this.buffer, 0, length);
+		}
+		
+		void write(CharSequence chars) {
+			int length = chars.length();
+			for ( int i = 0; i < length; ++i ) {
+				char c = chars.charAt(i);
+				if ( c < 0x80 )
+					writeByte(c);
+				else if ( c < 0x800 ) {
+					writeByte(0xC0 | (c >> 6));
+					writeByte(0x80 | (c & 0x3F));
+				} else if ( Character.isSurrogate(c) ) {
+					if ( Character.isHighSurrogate(c) && (i+1 < length) && Character.isLowSurrogate(chars.charAt(i+1)) ) {
+						int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+						writeByte(0xF0 | (codePoint >> 18));
+						writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+						writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+						writeByte(0x80 | (codePoint & 0x3F));
+					} else
+						writeByte('?');
+				} else {
+					writeByte(0xE0 | (c >> 12));
+					writeByte(0x80 | ((c >> 6) & 0x3F));
+					writeByte(0x80 | (c & 0x3F));
+				}
+			}
+		}
+		
+		void write(char c) {
+			// only used for the ASCII delimiters
+			writeByte(c);
+		}
+		
+		/**
+		 * Writes the decimal representation of the value, as String.valueOf(int) does
+		 */
+		void writeNumber(int value) {
+			if ( value == Integer.MIN_VALUE ) {
+				write(String.valueOf(value));
+				return;
+			}
+			
+			int remaining = value;
+			if ( remaining < 0 ) {
+				writeByte('-');
+				remaining = -remaining;
+			}
+			
+			int count = 0;
+			do {
+				this.digits[count++] = (byte)('0' + (remaining % 10));
+				remaining /= 10;
+			} while ( remaining != 0 );
+			
+			while ( count > 0 )
+				writeByte(this.digits[--count]);
+		}
+		
+		/**
+		 * Ends the checksum calculation
+		 * @return the hexadecimal representation of the MD5 digest
+		 */
+		String digest() {
+			flush();
+			return toHexString(this.md.digest());
 		}
-
-		return md5.toString();
 	}
 }
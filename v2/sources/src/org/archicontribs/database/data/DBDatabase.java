@@ -13,12 +13,28 @@ import lombok.Getter;
  * @author Herve Jouin
  */
 public enum DBDatabase {
-	MSSQL(0, "ms-sql", 1433, true),
-	MYSQL(1, "mysql", 3306, false),
-	NEO4J(2, "neo4j", 7687, false),
-	ORACLE(3, "oracle", 1521, true),
-	POSTGRESQL(4, "postgresql", 5432, true),
-	SQLITE(5, "sqlite", 0, false);
+	MSSQL(0, "ms-sql", 1433, true, BulkLoadMode.BULK_COPY),
+	MYSQL(1, "mysql", 3306, false, BulkLoadMode.MULTI_ROW_INSERT),
+	NEO4J(2, "neo4j", 7687, false, BulkLoadMode.NONE),
+	ORACLE(3, "oracle", 1521, true, BulkLoadMode.BATCH),
+	POSTGRESQL(4, "postgresql", 5432, true, BulkLoadMode.COPY),
+	SQLITE(5, "sqlite", 0, false, BulkLoadMode.BATCH);
+	
+	/**
+	 * Native path used to insert a large number of rows in the database
+	 */
+	public enum BulkLoadMode {
+		/** no bulk load, the rows are inserted using the usual requests */
+		NONE,
+		/** COPY FROM STDIN command */
+		COPY,
+		/** INSERT requests with multiple VALUES clauses */
+		MULTI_ROW_INSERT,
+		/** bulk copy API of the JDBC driver */
+		BULK_COPY,
+		/** JDBC batches of a single PreparedStatement (array binding for Oracle) */
+		BATCH
+	}
 	
 	public static final int NEO4J_VALUE = 0;
 	public static final int MSSQL_VALUE = 1;
@@ -55,12 +71,18 @@ public enum DBDatabase {
     public boolean hasSchema() {
         return this.hasSchema;
     }
+    
+    /**
+     * native path used to insert the rows when a model is exported in the database for the first time
+     */
+    @Getter private final BulkLoadMode bulkLoadMode;
 	
-    private DBDatabase(int value, String driverName, int defaultPort, boolean hasSchema) {
+    private DBDatabase(int value, String driverName, int defaultPort, boolean hasSchema, BulkLoadMode bulkLoadMode) {
         this.value = value;
         this.driverName = driverName.toLowerCase();
         this.defaultPort = defaultPort;
         this.hasSchema = hasSchema;
+        this.bulkLoadMode = bulkLoadMode;
     }
     
     /**
@@ -0,0 +1,183 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.archicontribs.database.DBLogger;
+import org.archicontribs.database.DBPlugin;
+
+/**
+ * Local disk cache of the views screenshots<br>
+ * <br>
+ * The screenshots are indexed by a key calculated from the checksum of the view (which includes the checksums of its children), the scale factor and the border width,
+ * so a view whose content has not changed does not need to be rendered again, whatever the model or the export.<br>
+ * <br>
+ * The size of the cache is bounded: when it is exceeded, the least recently used screenshots are removed.
+ * 
+ * @author Herve Jouin
+ */
+public class DBScreenshotCache {
+	private static final DBLogger logger = new DBLogger(DBScreenshotCache.class);
+	
+	/**
+	 * Maximum size of the cache, in bytes
+	 */
+	public static final long MAX_CACHE_SIZE = 256L * 1024L * 1024L;
+	
+	private static DBScreenshotCache instance = null;
+	
+	private final File cacheFolder;
+	private final long maxSize;
+	
+	/**
+	 * Size of the cached screenshots, in least recently used order
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long size = 0;
+	
+	/**
+	 * Gets the cache, located in the plugin's state folder
+	 */
+	public static synchronized DBScreenshotCache getInstance() throws IOException {
+		if ( instance == null )
+			instance = new DBScreenshotCache(DBPlugin.INSTANCE.getStateLocation().append("screenshots").toFile(), MAX_CACHE_SIZE);
+		return instance;
+	}
+	
+	private DBScreenshotCache(File cacheFolder, long maxSize) throws IOException {
+		this.cacheFolder = cacheFolder;
+		this.maxSize = maxSize;
+		
+		if ( !cacheFolder.isDirectory() && !cacheFolder.mkdirs() )
+			throw new IOException("Cannot create screenshots cache folder "+cacheFolder.getPath());
+		
+		// the screenshots already in the cache folder are sorted by last access time
+		File[] files = cacheFolder.listFiles();
+		if ( files != null ) {
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File file1, File file2) {
+					return Long.compare(file1.lastModified(), file2.lastModified());
+				}
+			});
+			for ( File file: files ) {
+				if ( file.isFile() ) {
+					this.entries.put(file.getName(), file.length());
+					this.size += file.length();
+				}
+			}
+		}
+		
+		if ( logger.isDebugEnabled() ) logger.debug("Screenshots cache contains "+this.entries.size()+" screenshots ("+this.size/1024+" Ko)");
+		evict();
+	}
+	
+	/**
+	 * Calculates the key of a screenshot
+	 * @param viewChecksum the checksum of the view, not its container checksum that does not change when only its children change
+	 * @return the key, or null if the view has got no checksum
+	 */
+	public static String getKey(String viewChecksum, int scaleFactor, int borderWidth) throws NoSuchAlgorithmException, UnsupportedEncodingException {
+		if ( viewChecksum == null )
+			return null;
+		return DBChecksum.calculateChecksum(viewChecksum+"/"+scaleFactor+"/"+borderWidth);
+	}
+	
+	/**
+	 * Gets a screenshot from the cache
+	 * @return the content of the PNG image, or null if the screenshot is not in the cache
+	 */
+	public synchronized byte[] get(String key) {
+		if ( key == null || this.entries.get(key) == null )
+			return null;
+		
+		File file = new File(this.cacheFolder, key);
+		try {
+			byte[] content = Files.readAllBytes(file.toPath());
+			// the last modification date is used to restore the least recently used order when the cache is reloaded
+			file.setLastModified(System.currentTimeMillis());
+			if ( logger.isTraceEnabled() ) logger.trace("Got screenshot "+key+" from the cache");
+			return content;
+		} catch (IOException err) {
+			logger.warn("Failed to read screenshot cache file "+file.getPath(), err);
+			remove(key);
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores a screenshot in the cache, removing the least recently used screenshots if the cache is full
+	 */
+	public synchronized void put(String key, byte[] content) {
+		if ( key == null || content == null || content.length > this.maxSize )
+			return;
+		
+		File file = new File(this.cacheFolder, key);
+		try {
+			// the content is written to a temporary file first so an interrupted write never leaves a truncated file in the cache
+			File tempFile = File.createTempFile(key, ".tmp", this.cacheFolder);
+			try {
+				Files.write(tempFile.toPath(), content);
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tempFile.toPath());
+			}
+		} catch (IOException err) {
+			logger.warn("Failed to write screenshot cache file "+file.getPath(), err);
+			return;
+		}
+		
+		Long previousLength = this.entries.put(key, (long)content.length);
+		this.size += content.length - (previousLength == null ? 0 : previousLength);
+		evict();
+	}
+	
+	/**
+	 * Removes a screenshot from the cache
+	 */
+	private void remove(String key) {
+		Long length = this.entries.remove(key);
+		if ( length != null )
+			this.size -= length;
+		
+		try {
+			Files.deleteIfExists(new File(this.cacheFolder, key).toPath());
+		} catch (IOException err) {
+			logger.warn("Failed to delete screenshot cache file "+key, err);
+		}
+	}
+	
+	/**
+	 * Removes the least recently used screenshots until the size of the cache is below its maximum size
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+		while ( this.size > this.maxSize && iterator.hasNext() ) {
+			Map.Entry<String, Long> entry = iterator.next();
+			iterator.remove();
+			this.size -= entry.getValue();
+			
+			if ( logger.isTraceEnabled() ) logger.trace("Removing screenshot "+entry.getKey()+" from the cache");
+			try {
+				Files.deleteIfExists(new File(this.cacheFolder, entry.getKey()).toPath());
+			} catch (IOException err) {
+				logger.warn("Failed to delete screenshot cache file "+entry.getKey(), err);
+			}
+		}
+	}
+}
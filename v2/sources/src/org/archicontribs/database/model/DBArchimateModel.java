@@ -6,9 +6,14 @@
 
 package org.archicontribs.database.model;
 
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.archicontribs.database.DBLogger;
 import org.archicontribs.database.data.DBChecksum;
 import org.archicontribs.database.data.DBVersion;
@@ -45,6 +50,9 @@ public class DBArchimateModel extends com.archimatetool.model.impl.ArchimateMode
         if ( logger.isDebugEnabled() ) logger.debug("Creating new ArchimateModel");
         super.setVersion(ModelVersion.VERSION);
         super.setMetadata(DBArchimateFactory.eINSTANCE.createMetadata());
+        
+        // we follow the changes on the model components to recalculate only the checksums of the modified components
+        eAdapters().add(new DBChecksumAdapter());
     }
 
     /**
@@ -218,9 +226,18 @@ public class DBArchimateModel extends com.archimatetool.model.impl.ArchimateMode
 
     /**
      * Counts the number of objects in the model.<br>
-     * At the same time, we calculate the current checksums
+     * At the same time, we calculate the current checksums, in parallel if several processors are available
      */
     public void countAllObjects() throws Exception {
+        countAllObjects(Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    /**
+     * Counts the number of objects in the model.<br>
+     * At the same time, we calculate the current checksums
+     * @param inParallel if true, the checksums of the components are calculated in parallel once all the components have been counted, else they are calculated during the model traversal
+     */
+    public void countAllObjects(boolean inParallel) throws Exception {
         resetCounters();
 
         if ( logger.isDebugEnabled() ) logger.debug("Counting objects in selected model.");
@@ -238,7 +255,141 @@ public class DBArchimateModel extends com.archimatetool.model.impl.ArchimateMode
         }
 
         for (IFolder folder: getFolders() ) {
-            countObject(folder, true, null);
+            countObject(folder, !inParallel, null);
+        }
+
+        if ( inParallel )
+            calculateAllChecksums();
+    }
+
+    /**
+     * Number of components under which the checksums are calculated in the current thread rather than split between the threads of the pool
+     */
+    private static final int checksumTaskThreshold = 256;
+
+    /**
+     * Calculates the checksums of all the components counted by the countAllObjects method.<br>
+     * <br>
+     * The checksums of the components are independent from each other, so they are calculated in parallel using the common fork/join pool.<br>
+     * As each component is referenced only once in the counters, the connections are not checksummed twice (as sources and as targets).<br>
+     * Only the components that have been modified since their last calculation are recalculated (see {@link DBChecksumAdapter}).<br>
+     * The container checksums of the views are then assembled in the views children order, giving the same result as the countObject method.
+     */
+    private void calculateAllChecksums() throws Exception {
+        List<EObject> allComponents = new ArrayList<EObject>(this.allFolders.size() + this.allElements.size() + this.allRelationships.size() + this.allViews.size() + this.allViewObjects.size() + this.allViewConnections.size());
+        allComponents.addAll(this.allFolders.values());
+        allComponents.addAll(this.allElements.values());
+        allComponents.addAll(this.allRelationships.values());
+        allComponents.addAll(this.allViews.values());
+        allComponents.addAll(this.allViewObjects.values());
+        allComponents.addAll(this.allViewConnections.values());
+
+        // the checksums of the components that have not been modified since their last calculation are kept
+        List<EObject> components = new ArrayList<EObject>();
+        for ( EObject component: allComponents ) {
+            if ( getComponentChecksum(component) == null )
+                components.add(component);
+        }
+
+        if ( logger.isDebugEnabled() ) logger.debug("Calculating checksum of "+components.size()+" modified components (out of "+allComponents.size()+") in parallel.");
+
+        String[] checksums = new String[components.size()];
+        try {
+            ForkJoinPool.commonPool().invoke(new ChecksumTask(components, checksums, 0, components.size()));
+        } catch (ChecksumException err) {
+            Throwable cause = err.getCause();
+            while ( cause instanceof ChecksumException )
+                cause = cause.getCause();
+            throw (Exception)cause;
+        }
+
+        for ( int i = 0; i < checksums.length; ++i ) {
+            EObject eObject = components.get(i);
+            DBMetadata dbMetadata = ((IDBMetadata)eObject).getDBMetadata();
+
+            dbMetadata.getCurrentVersion().setChecksum(checksums[i]);
+            if ( eObject instanceof IFolder || eObject instanceof IDiagramModel )
+                dbMetadata.getCurrentVersion().setContainerChecksum(checksums[i]);
+            if ( !(eObject instanceof IDiagramModel) )
+                dbMetadata.setChecksumValid(true);
+        }
+
+        // the view checksum is calculated from its own checksum and its children's ones
+        for ( IDiagramModel view: this.allViews.values() ) {
+            DBMetadata dbMetadata = ((IDBMetadata)view).getDBMetadata();
+
+            if ( view.getChildren().isEmpty() )
+                dbMetadata.getCurrentVersion().setChecksum(dbMetadata.getCurrentVersion().getContainerChecksum());
+            else {
+                StringBuilder checksumBuilder = new StringBuilder(dbMetadata.getCurrentVersion().getContainerChecksum());
+                for ( EObject child: view.getChildren() )
+                    checksumBuilder.append(((IDBMetadata)child).getDBMetadata().getCurrentVersion().getChecksum());
+                dbMetadata.getCurrentVersion().setChecksum(DBChecksum.calculateChecksum(checksumBuilder));
+            }
+            dbMetadata.setChecksumValid(true);
+        }
+    }
+
+    /**
+     * Gets the checksum of the component itself (i.e. without its children) if it has not been modified since it has been calculated
+     * @return the checksum, or null if it needs to be recalculated
+     */
+    private static String getComponentChecksum(EObject eObject) {
+        if ( !(eObject instanceof IDBMetadata) )
+            return null;
+
+        DBMetadata dbMetadata = ((IDBMetadata)eObject).getDBMetadata();
+        if ( !dbMetadata.isChecksumValid() )
+            return null;
+
+        // the checksum of a view is calculated from its children's ones, so its own checksum is kept in the container checksum
+        if ( eObject instanceof IDiagramModel )
+            return dbMetadata.getCurrentVersion().getContainerChecksum();
+        return dbMetadata.getCurrentVersion().getChecksum();
+    }
+
+    /**
+     * Fork/join task that calculates the checksums of a range of components
+     */
+    private static class ChecksumTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<EObject> components;
+        private final String[] checksums;
+        private final int from;
+        private final int to;
+
+        ChecksumTask(List<EObject> components, String[] checksums, int from, int to) {
+            this.components = components;
+            this.checksums = checksums;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( (this.to - this.from) <= checksumTaskThreshold ) {
+                try {
+                    for ( int i = this.from; i < this.to; ++i )
+                        this.checksums[i] = DBChecksum.calculateChecksum(this.components.get(i));
+                } catch (NoSuchAlgorithmException | UnsupportedEncodingException err) {
+                    throw new ChecksumException(err);
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new ChecksumTask(this.components, this.checksums, this.from, middle), new ChecksumTask(this.components, this.checksums, middle, this.to));
+            }
+        }
+    }
+
+    /**
+     * Unchecked exception used to get the checksum exceptions out of the fork/join pool
+     */
+    private static class ChecksumException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChecksumException(Exception cause) {
+            super(cause);
         }
     }
 
@@ -253,8 +404,10 @@ public class DBArchimateModel extends com.archimatetool.model.impl.ArchimateMode
         int len = 0;
 
         if ( mustCalculateChecksum ) {
-            //TODO: find a way to avoid to calculate the checksum twice for connections (they are counted twice : as sources and targets) 
-            checksumBuilder = new StringBuilder(DBChecksum.calculateChecksum(eObject));
+            // we recalculate the checksum only if the component has been modified since its last calculation
+            // this also avoids to calculate the checksum twice for connections (they are counted twice : as sources and targets)
+            String componentChecksum = getComponentChecksum(eObject);
+            checksumBuilder = new StringBuilder(componentChecksum != null ? componentChecksum : DBChecksum.calculateChecksum(eObject));
             len = checksumBuilder.length();
         }
 
@@ -355,6 +508,7 @@ public class DBArchimateModel extends com.archimatetool.model.impl.ArchimateMode
             // else, we calculate a new checksum from the list of checksums
             String checksum = (checksumBuilder.length() != len) ? DBChecksum.calculateChecksum(checksumBuilder) : checksumBuilder.toString();
             ((IDBMetadata)eObject).getDBMetadata().getCurrentVersion().setChecksum(checksum);
+            ((IDBMetadata)eObject).getDBMetadata().setChecksumValid(true);
             return checksum;
         }
 
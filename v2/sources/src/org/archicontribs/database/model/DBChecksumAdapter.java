@@ -0,0 +1,89 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database.model;
+
+import java.util.Collection;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelComponent;
+
+/**
+ * Adapter that follows the changes made on the model components and invalidates their checksum.<br>
+ * <br>
+ * When a component is modified (or one of its properties, bounds, bendpoints, ...), its checksum is tagged as invalid so that
+ * the countAllObjects method recalculates it. When the component is in a view, the view checksum is invalidated as well
+ * as it is calculated from the checksums of its children.<br>
+ * <br>
+ * The checksums of the components that have not been modified are kept as they are.
+ * 
+ * @author Herve Jouin
+ * @see DBMetadata#isChecksumValid()
+ */
+public class DBChecksumAdapter extends EContentAdapter {
+    @Override
+    public void notifyChanged(Notification notification) {
+        // we let the EContentAdapter follow the new contents
+        super.notifyChanged(notification);
+
+        if ( notification.isTouch() )
+            return;
+
+        if ( notification.getNotifier() instanceof EObject )
+            invalidateChecksum((EObject)notification.getNotifier());
+
+        // a component that is moved to another container needs its checksum to be recalculated as it may contain its container's id
+        switch ( notification.getEventType() ) {
+            case Notification.ADD:
+            case Notification.SET:
+                if ( notification.getNewValue() instanceof IDBMetadata )
+                    invalidateChecksum((EObject)notification.getNewValue());
+                break;
+            case Notification.ADD_MANY:
+                if ( notification.getNewValue() instanceof Collection<?> ) {
+                    for ( Object newValue: (Collection<?>)notification.getNewValue() ) {
+                        if ( newValue instanceof IDBMetadata )
+                            invalidateChecksum((EObject)newValue);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The model references are not followed, so there is no need to resolve them
+     */
+    @Override
+    protected boolean resolve() {
+        return false;
+    }
+
+    /**
+     * Invalidates the checksum of the component that contains the eObject, and the checksum of its view if any
+     */
+    private static void invalidateChecksum(EObject eObject) {
+        EObject component = eObject;
+        while ( (component != null) && !(component instanceof IDBMetadata) )
+            component = component.eContainer();
+
+        if ( component == null )
+            return;
+
+        ((IDBMetadata)component).getDBMetadata().setChecksumValid(false);
+
+        if ( component instanceof IDiagramModelComponent ) {
+            IDiagramModel view = ((IDiagramModelComponent)component).getDiagramModel();
+            if ( view != null )
+                ((IDBMetadata)view).getDBMetadata().setChecksumValid(false);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.archicontribs.database.DBDatabaseEntry;
+import org.archicontribs.database.DBLogger;
+import org.archicontribs.database.DBPlugin;
+import org.archicontribs.database.connection.DBDatabaseImportConnection;
+import org.archicontribs.database.data.DBChecksum;
+import org.eclipse.swt.graphics.Image;
+
+import com.archimatetool.editor.model.impl.ArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+
+/**
+ * Archive manager that fetches the images of a model imported from a database only when Archi requests them.<br>
+ * <br>
+ * The import only registers the path and the checksum of the images. Their content is retrieved from the database the first time
+ * Archi needs it (to draw a view, to export or to save the model) and is then stored in the archive manager like any other image.<br>
+ * <br>
+ * The images contents are also kept in a local cache folder, keyed by their checksum, so an image that has already been downloaded
+ * is not retrieved from the database again, even from another model or after a restart of Archi.
+ * 
+ * @author Herve Jouin
+ */
+public class DBLazyArchiveManager extends ArchiveManager {
+    private static final DBLogger logger = new DBLogger(DBLazyArchiveManager.class);
+    
+    /**
+     * Database the images are fetched from
+     */
+    private final DBDatabaseEntry databaseEntry;
+    
+    /**
+     * Images that have not been fetched from the database yet (path -> checksum)
+     */
+    private final Map<String, String> pendingImages = new ConcurrentHashMap<String, String>();
+    
+    public DBLazyArchiveManager(IArchimateModel model, DBDatabaseEntry databaseEntry) {
+        super(model);
+        this.databaseEntry = databaseEntry;
+    }
+    
+    /**
+     * Registers an image that will be fetched from the database on first request
+     */
+    public void registerImage(String path, String checksum) {
+        this.pendingImages.put(path, checksum);
+    }
+    
+    /**
+     * Gets the number of images that have not been fetched from the database yet
+     */
+    public int countPendingImages() {
+        return this.pendingImages.size();
+    }
+    
+    @Override
+    public byte[] getBytesFromEntry(String path) {
+        try {
+            loadImage(path);
+        } catch (Exception err) {
+            logger.error("Failed to get image "+path+" from the database.", err);
+        }
+        return super.getBytesFromEntry(path);
+    }
+    
+    @Override
+    public Image createImage(String path) throws Exception {
+        loadImage(path);
+        return super.createImage(path);
+    }
+    
+    /**
+     * All the images must be fetched before the model is saved as the archive file must contain them
+     */
+    @Override
+    public void saveModel() throws IOException {
+        try {
+            loadAllImages();
+        } catch (IOException err) {
+            throw err;
+        } catch (Exception err) {
+            throw new IOException("Failed to get the model's images from the database.", err);
+        }
+        super.saveModel();
+    }
+    
+    /**
+     * Fetches all the images that have not been requested yet, using a single database connection
+     */
+    public void loadAllImages() throws Exception {
+        if ( this.pendingImages.isEmpty() )
+            return;
+        
+        if ( logger.isDebugEnabled() ) logger.debug("Getting "+this.pendingImages.size()+" remaining images from the database");
+        try ( DBDatabaseImportConnection connection = new DBDatabaseImportConnection(this.databaseEntry) ) {
+            for ( String path: new ArrayList<String>(this.pendingImages.keySet()) )
+                loadImage(connection, path);
+        }
+    }
+    
+    /**
+     * Fetches an image if it has not been requested yet
+     */
+    private void loadImage(String path) throws Exception {
+        if ( path == null || !this.pendingImages.containsKey(path) )
+            return;
+        
+        try ( DBDatabaseImportConnection connection = new DBDatabaseImportConnection(this.databaseEntry) ) {
+            loadImage(connection, path);
+        }
+    }
+    
+    /**
+     * Stores the content of an image in the archive manager, from the local cache if available or from the database
+     */
+    private synchronized void loadImage(DBDatabaseImportConnection connection, String path) throws Exception {
+        String checksum = this.pendingImages.get(path);
+        if ( checksum == null )
+            return;         // the image has been loaded by another thread in the meantime
+        
+        File cacheFile = getCacheFile(checksum);
+        if ( !isValidCacheFile(cacheFile, checksum) ) {
+            if ( logger.isDebugEnabled() ) logger.debug("Getting image "+path+" from the database");
+            // the content is written to a temporary file first so an interrupted download never leaves a truncated file in the cache
+            File tempFile = File.createTempFile(checksum, ".tmp", cacheFile.getParentFile());
+            try {
+                connection.copyImageContentFromDatabase(checksum, tempFile);
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        } else if ( logger.isDebugEnabled() )
+            logger.debug("Getting image "+path+" from the local cache");
+        
+        super.addByteContentEntry(path, Files.readAllBytes(cacheFile.toPath()));
+        this.pendingImages.remove(path);
+    }
+    
+    /**
+     * Gets the cache file of an image content
+     */
+    private static File getCacheFile(String checksum) throws IOException {
+        File cacheFolder = DBPlugin.INSTANCE.getStateLocation().append("images").toFile();
+        if ( !cacheFolder.isDirectory() && !cacheFolder.mkdirs() )
+            throw new IOException("Cannot create images cache folder "+cacheFolder.getPath());
+        return new File(cacheFolder, checksum);
+    }
+    
+    /**
+     * Checks that a cache file exists and that its content has not been altered
+     */
+    private static boolean isValidCacheFile(File cacheFile, String checksum) {
+        if ( !cacheFile.isFile() )
+            return false;
+        
+        try ( InputStream content = new FileInputStream(cacheFile) ) {
+            if ( DBPlugin.areEqual(DBChecksum.calculateChecksum(content), checksum) )
+                return true;
+        } catch (Exception err) {
+            logger.warn("Failed to read image cache file "+cacheFile.getPath(), err);
+        }
+        
+        if ( logger.isDebugEnabled() ) logger.debug("Ignoring invalid image cache file "+cacheFile.getPath());
+        return false;
+    }
+}
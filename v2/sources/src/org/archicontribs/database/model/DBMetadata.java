@@ -96,9 +96,10 @@ public class DBMetadata  {
     @Getter @Setter private boolean hasBeenExported = false;
 
     /**
-     * Used by views, set to false if some components are removed during the export process so their checksum needs to be recalculated
+     * Tells if the current checksum is up to date with the component, or if it needs to be recalculated.<br>
+     * Set to false by the {@link DBChecksumAdapter} when the component is modified, and by the export process when components are removed from views
      */
-    @Getter @Setter private boolean checksumValid = true;
+    @Getter @Setter private volatile boolean checksumValid = false;
 
     /**
      * If the component is a folder, stores the type of its root folder<br>
@@ -120,7 +120,7 @@ public class DBImportElementFromIdCommand extends Command {
 
         // TODO add an option to import elements recursively
 
-        String versionString = (this.version==0) ? "(SELECT MAX(version) FROM "+this.importConnection.getSchema()+"elements WHERE id = e.id)" : String.valueOf(this.version);
+        String versionString = (this.version==0) ? this.importConnection.getLatestVersionRequest("e.id") : String.valueOf(this.version);
 
         try ( ResultSet result = this.importConnection.select("SELECT version, class, name, documentation, type, checksum, created_on FROM "+this.importConnection.getSchema()+"elements e WHERE id = ? AND version = "+versionString, this.id) ) {
             if ( !result.next() ) {
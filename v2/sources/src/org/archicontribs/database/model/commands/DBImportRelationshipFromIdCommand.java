@@ -123,7 +123,7 @@ public class DBImportRelationshipFromIdCommand extends Command {
                 logger.debug("Importing relationship id "+this.id+".");
         }
 
-        String versionString = (this.version==0) ? "(SELECT MAX(version) FROM "+this.importConnection.getSchema()+"relationships WHERE id = e.id)" : String.valueOf(this.version);
+        String versionString = (this.version==0) ? this.importConnection.getLatestVersionRequest("r.id") : String.valueOf(this.version);
 
         try ( ResultSet result = this.importConnection.select("SELECT version, class, name, documentation, source_id, target_id, strength, access_type, checksum, created_on FROM "+this.importConnection.getSchema()+"relationships r WHERE id = ? AND version = "+versionString, this.id) ) {
             if ( !result.next() ) {
@@ -14,6 +14,7 @@ import org.apache.log4j.Level;
 import org.archicontribs.database.DBDatabaseEntry;
 import org.archicontribs.database.DBPlugin;
 import org.archicontribs.database.GUI.DBGui;
+import org.archicontribs.database.connection.DBDatabaseConnectionPool;
 import org.archicontribs.database.connection.DBDatabaseImportConnection;
 import org.archicontribs.database.data.DBDatabase;
 import org.eclipse.jface.preference.FieldEditor;
@@ -78,6 +79,16 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 	Text txtScaleFactor;
 	Label lblScaleFactorPercent;
 	
+	private Label lblExportBatchSize;
+	private Composite compoExportBatchSize;
+	private Text txtExportBatchSize;
+	private Label lblExportBatchSizeRows;
+	
+	private Label lblServerSideCompare;
+	private Composite compoServerSideCompare;
+	private Button btnServerSideCompare;
+	private Button btnClientSideCompare;
+	
 	private Label lblNeo4jMode;
 	private Composite compoNeo4jMode;
 	private Button btnNeo4jNativeMode;
@@ -808,6 +819,100 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 		
 		this.compoExportViewImages.layout();
 		
+		this.lblExportBatchSize = new Label(this.grpDatabases, SWT.NONE);
+		this.lblExportBatchSize.setText("Export batch size:");
+		this.lblExportBatchSize.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		fd = new FormData();
+		fd.top = new FormAttachment(this.lblExportViewImages, 8);
+		fd.left = new FormAttachment(this.lblExportViewImages, 0 , SWT.LEFT);
+		this.lblExportBatchSize.setLayoutData(fd);
+		this.lblExportBatchSize.setVisible(false);
+		this.lblExportBatchSize.setToolTipText("Please choose how many rows the plugin should group in a single request during the export.");
+		
+		this.compoExportBatchSize = new Composite(this.grpDatabases, SWT.NONE);
+		this.compoExportBatchSize.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		this.compoExportBatchSize.setVisible(false);
+		fd = new FormData();
+		fd.top = new FormAttachment(this.lblExportBatchSize, -1, SWT.TOP);
+		fd.bottom = new FormAttachment(this.lblExportBatchSize, 5, SWT.BOTTOM);
+		fd.left = new FormAttachment(this.txtName, 50, SWT.LEFT);
+		fd.right = new FormAttachment(this.txtName, 0, SWT.RIGHT);
+		this.compoExportBatchSize.setLayoutData(fd);
+		this.compoExportBatchSize.setLayout(new FormLayout());
+		
+		this.txtExportBatchSize = new Text(this.compoExportBatchSize, SWT.RIGHT | SWT.BORDER);
+		this.txtExportBatchSize.setText("100");
+		fd = new FormData();
+		fd.top = new FormAttachment(0);
+		fd.left = new FormAttachment(0);
+		fd.right = new FormAttachment(0, 40);
+		this.txtExportBatchSize.setLayoutData(fd);
+		this.txtExportBatchSize.setToolTipText("Please choose the number of rows grouped in a single request during the export (between 1 and 10000).\n   --> A value of 1 disables the batches: each row is then sent separately to the database.");
+		this.txtExportBatchSize.addVerifyListener(new VerifyListener() {
+	        @Override
+	        public void verifyText(VerifyEvent e) {
+	            // get old text and create new text by using the VerifyEvent.text
+	            final String oldString = ((Text)e.widget).getText();
+	            String newString = oldString.substring(0, e.start) + e.text + oldString.substring(e.end);
+	            try {
+	                if ( DBPlugin.isEmpty(newString) )
+	                	e.doit = true;
+	                else {
+	                	int batchSize = Integer.parseInt(newString);
+	                	e.doit = batchSize > 0 && batchSize <= 10000;
+	                }
+	            } catch(NumberFormatException ign) {
+	            	e.doit = false;
+	            }
+	        }
+		});
+		
+		this.lblExportBatchSizeRows = new Label(this.compoExportBatchSize, SWT.NONE);
+		this.lblExportBatchSizeRows.setText("rows");
+		this.lblExportBatchSizeRows.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		fd = new FormData();
+		fd.top = new FormAttachment(5);
+		fd.left = new FormAttachment(this.txtExportBatchSize, 3);
+		this.lblExportBatchSizeRows.setLayoutData(fd);
+		
+		this.compoExportBatchSize.layout();
+		
+		this.lblServerSideCompare = new Label(this.grpDatabases, SWT.NONE);
+		this.lblServerSideCompare.setText("Compare model:");
+		this.lblServerSideCompare.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		fd = new FormData();
+		fd.top = new FormAttachment(this.lblExportBatchSize, 8);
+		fd.left = new FormAttachment(this.lblExportBatchSize, 0 , SWT.LEFT);
+		this.lblServerSideCompare.setLayoutData(fd);
+		this.lblServerSideCompare.setVisible(false);
+		this.lblServerSideCompare.setToolTipText("Please choose where the differences between the model and the database should be calculated during the export.");
+		
+		this.compoServerSideCompare = new Composite(this.grpDatabases, SWT.NONE);
+		this.compoServerSideCompare.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		this.compoServerSideCompare.setVisible(false);
+		fd = new FormData();
+		fd.top = new FormAttachment(this.lblServerSideCompare, 0, SWT.TOP);
+		fd.bottom = new FormAttachment(this.lblServerSideCompare, 0, SWT.BOTTOM);
+		fd.left = new FormAttachment(this.txtName, 50, SWT.LEFT);
+		fd.right = new FormAttachment(this.txtName, 0, SWT.RIGHT);
+		this.compoServerSideCompare.setLayoutData(fd);
+		rl = new RowLayout();
+		rl.marginTop = 0;
+		rl.marginLeft = 0;
+		rl.spacing = 10;
+		this.compoServerSideCompare.setLayout(rl);
+		
+		this.btnClientSideCompare = new Button(this.compoServerSideCompare, SWT.RADIO);
+		this.btnClientSideCompare.setText("In the plugin");
+		this.btnClientSideCompare.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		this.btnClientSideCompare.setToolTipText("The plugin gets the versions of all the model's components from the database and compares them to the model.");
+		
+		this.btnServerSideCompare = new Button(this.compoServerSideCompare, SWT.RADIO);
+		this.btnServerSideCompare.setText("In the database");
+		this.btnServerSideCompare.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		this.btnServerSideCompare.setToolTipText("The plugin sends the checksums of the model's components to the database that returns only the components that are not in sync."+
+				"\n   --> This mode is quicker on big models as much less data is transferred from the database to the plugin.");
+		
 		this.btnSave = new Button(this.grpDatabases, SWT.NONE);
 		this.btnSave.setText("Save");
 		fd = new FormData();
@@ -839,12 +944,12 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 		this.btnDiscard.setVisible(false);
 
 
-		this.grpDatabases.setTabList(new Control[] {this.txtName, this.comboDriver, this.txtFile, this.btnBrowse, this.txtServer, this.txtPort, this.txtDatabase, this.txtSchema, this.txtUsername, this.txtPassword, this.compoExportType, this.compoExportViewImages, this.compoNeo4jMode, this.compoExportMode, this.btnDiscard, this.btnSave});
+		this.grpDatabases.setTabList(new Control[] {this.txtName, this.comboDriver, this.txtFile, this.btnBrowse, this.txtServer, this.txtPort, this.txtDatabase, this.txtSchema, this.txtUsername, this.txtPassword, this.compoExportType, this.compoExportViewImages, this.compoExportBatchSize, this.compoServerSideCompare, this.compoNeo4jMode, this.compoExportMode, this.btnDiscard, this.btnSave});
 
 		this.grpDatabases.layout();
 
 		GridData gd = new GridData();
-		gd.heightHint = this.compoExportViewImages.getLocation().y + this.compoExportViewImages.getSize().y - 10;
+		gd.heightHint = this.compoServerSideCompare.getLocation().y + this.compoServerSideCompare.getSize().y - 10;
 		gd.horizontalAlignment = GridData.FILL;
 		gd.grabExcessHorizontalSpace = true;
 		this.grpDatabases.setLayoutData(gd);
@@ -946,6 +1051,13 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 		
 		this.lblExportViewImages.setVisible(this.btnWholeType.getSelection() && !isNeo4j);
 		this.compoExportViewImages.setVisible(this.btnWholeType.getSelection() && !isNeo4j);
+		
+		this.lblExportBatchSize.setVisible(!isNeo4j);
+		this.compoExportBatchSize.setVisible(!isNeo4j);
+		
+		// the database can only compute the differences when it contains the whole model
+		this.lblServerSideCompare.setVisible(this.btnWholeType.getSelection() && !isNeo4j);
+		this.compoServerSideCompare.setVisible(this.btnWholeType.getSelection() && !isNeo4j);
 
 		FormData fd = new FormData();
 		fd.top = new FormAttachment(isFile ? this.lblFile: this.lblUsername, 8);
@@ -1040,6 +1152,8 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 		databaseEntry.setViewSnapshotRequired(this.btnExportViewImages.getSelection());
 		databaseEntry.setViewsImagesBorderWidth(Integer.valueOf(this.txtBorderWidth.getText()));
 		databaseEntry.setViewsImagesScaleFactor(Integer.valueOf(this.txtScaleFactor.getText())<10 ? 10 : Integer.valueOf(this.txtScaleFactor.getText()));
+		databaseEntry.setExportBatchSize(this.txtExportBatchSize.getText().isEmpty() ? 1 : Integer.valueOf(this.txtExportBatchSize.getText()));
+		databaseEntry.setServerSideCompare(this.btnServerSideCompare.getSelection());
 		databaseEntry.setCollaborativeMode(this.btnCollaborativeMode.getSelection());
 		databaseEntry.setNeo4jNativeMode(this.btnNeo4jNativeMode.getSelection());
 		databaseEntry.setShouldEmptyNeo4jDB(this.btnNeo4jEmptyDB.getSelection());
@@ -1076,6 +1190,9 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 			this.txtBorderWidth.setText("10");
 			this.txtScaleFactor.setText("100");
 	        this.btnDoNotExportViewImages.setSelection(true);
+	        this.txtExportBatchSize.setText("100");
+	        this.btnServerSideCompare.setSelection(false);
+	        this.btnClientSideCompare.setSelection(true);
 		} else {
 			databaseEntry = (DBDatabaseEntry)this.tblDatabases.getItem(this.tblDatabases.getSelectionIndex()).getData();
 
@@ -1102,6 +1219,9 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
             this.btnDoNotExportViewImages.setSelection(!databaseEntry.isViewSnapshotRequired());
             this.txtBorderWidth.setText(String.valueOf(databaseEntry.getViewsImagesBorderWidth()));
             this.txtScaleFactor.setText(String.valueOf(databaseEntry.getViewsImagesScaleFactor()));
+            this.txtExportBatchSize.setText(String.valueOf(databaseEntry.getExportBatchSize()));
+            this.btnServerSideCompare.setSelection(databaseEntry.isServerSideCompare());
+            this.btnClientSideCompare.setSelection(!databaseEntry.isServerSideCompare());
             
             shouldExportViewSnapshots = databaseEntry.isViewSnapshotRequired();
 		}
@@ -1147,6 +1267,10 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 	    this.lblScaleFactor.setEnabled(editMode && shouldExportViewSnapshots);
 	    this.txtScaleFactor.setEnabled(editMode && shouldExportViewSnapshots);
 	    this.lblScaleFactorPercent.setEnabled(editMode && shouldExportViewSnapshots);
+	    
+	    this.txtExportBatchSize.setEnabled(editMode);
+	    this.btnServerSideCompare.setEnabled(editMode);
+	    this.btnClientSideCompare.setEnabled(editMode);
 
 		driverChanged();
 
@@ -1176,6 +1300,9 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 			return;
 		}
 
+		// the check is explicitly requested, so we do not rely on the result of a previous check
+		DBDatabaseConnectionPool.getPool(databaseEntry).resetDatabaseVersionVerified();
+
 		try ( DBDatabaseImportConnection connection = new DBDatabaseImportConnection(databaseEntry) ) {
 			connection.checkDatabase(null);
 			DBGui.popup(Level.INFO, "Database successfully checked.");
@@ -1233,6 +1360,10 @@ public class DBDatabaseEntryTableEditor extends FieldEditor {
 			this.btnShowPassword.setVisible(false);
 			this.lblExportViewImages.setVisible(false);
 			this.compoExportViewImages.setVisible(false);
+			this.lblExportBatchSize.setVisible(false);
+			this.compoExportBatchSize.setVisible(false);
+			this.lblServerSideCompare.setVisible(false);
+			this.compoServerSideCompare.setVisible(false);
 			this.lblExportMode.setVisible(false);
 			this.compoExportMode.setVisible(false);
 
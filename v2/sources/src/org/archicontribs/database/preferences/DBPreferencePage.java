@@ -69,7 +69,9 @@ public class DBPreferencePage extends FieldEditorPreferencePage	implements IWork
 	private Button btnShowZeroValues;
 	private Button btnRemoveDirtyFlag;
 	private Button btnCompareToDatabaseBeforeExport;
+	private Button btnMembershipIntervals;
 	private Button btnKeepPartiallyImportedModel;
+	private Button btnLazyImageLoading;
 	private Button btnImportShared;
 	private Button btnShowIdInContextMenu;
 	
@@ -228,21 +230,39 @@ public class DBPreferencePage extends FieldEditorPreferencePage	implements IWork
         fd.left = new FormAttachment(0, 10);
         this.btnCompareToDatabaseBeforeExport.setLayoutData(fd);
 		
+		this.btnMembershipIntervals = new Button(grpMiscellaneous, SWT.CHECK);
+		this.btnMembershipIntervals.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		this.btnMembershipIntervals.setText("Store the components of the models as intervals of model versions");
+		this.btnMembershipIntervals.setSelection(preferenceStore.getBoolean("membershipIntervals"));
+		fd = new FormData();
+		fd.top = new FormAttachment(this.btnCompareToDatabaseBeforeExport, 5);
+		fd.left = new FormAttachment(0, 10);
+		this.btnMembershipIntervals.setLayoutData(fd);
+		
 		this.btnKeepPartiallyImportedModel = new Button(grpMiscellaneous, SWT.CHECK);
 		this.btnKeepPartiallyImportedModel.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
 		this.btnKeepPartiallyImportedModel.setText("Keep partially imported model in case of error");
 		this.btnKeepPartiallyImportedModel.setSelection(!preferenceStore.getBoolean("deleteIfImportError"));
 		fd = new FormData();
-		fd.top = new FormAttachment(this.btnCompareToDatabaseBeforeExport, 5);
+		fd.top = new FormAttachment(this.btnMembershipIntervals, 5);
 		fd.left = new FormAttachment(0, 10);
 		this.btnKeepPartiallyImportedModel.setLayoutData(fd);
 		
+		this.btnLazyImageLoading = new Button(grpMiscellaneous, SWT.CHECK);
+		this.btnLazyImageLoading.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
+		this.btnLazyImageLoading.setText("Get the images from the database only when they are displayed");
+		this.btnLazyImageLoading.setSelection(preferenceStore.getBoolean("lazyImageLoading"));
+		fd = new FormData();
+		fd.top = new FormAttachment(this.btnKeepPartiallyImportedModel, 5);
+		fd.left = new FormAttachment(0, 10);
+		this.btnLazyImageLoading.setLayoutData(fd);
+		
 		this.btnShowIdInContextMenu = new Button(grpMiscellaneous, SWT.CHECK);
 		this.btnShowIdInContextMenu.setBackground(DBGui.COMPO_BACKGROUND_COLOR);
 		this.btnShowIdInContextMenu.setText("Show debugging information in context menu");
 		this.btnShowIdInContextMenu.setSelection(preferenceStore.getBoolean("showIdInContextMenu"));
 		fd = new FormData();
-		fd.top = new FormAttachment(this.btnKeepPartiallyImportedModel, 5);
+		fd.top = new FormAttachment(this.btnLazyImageLoading, 5);
 		fd.left = new FormAttachment(0, 10);
 		this.btnShowIdInContextMenu.setLayoutData(fd);
 		
@@ -446,7 +466,9 @@ public class DBPreferencePage extends FieldEditorPreferencePage	implements IWork
     	preferenceStore.setValue("showZeroValues", this.btnShowZeroValues.getSelection());
     	preferenceStore.setValue("removeDirtyFlag", this.btnRemoveDirtyFlag.getSelection());
     	preferenceStore.setValue("compareBeforeExport", this.btnCompareToDatabaseBeforeExport.getSelection());
+    	preferenceStore.setValue("membershipIntervals", this.btnMembershipIntervals.getSelection());
     	preferenceStore.setValue("deleteIfImportError", !this.btnKeepPartiallyImportedModel.getSelection());
+    	preferenceStore.setValue("lazyImageLoading", this.btnLazyImageLoading.getSelection());
     	preferenceStore.setValue("showIdInContextMenu", this.btnShowIdInContextMenu.getSelection());
     	preferenceStore.setValue("importShared", this.btnImportShared.getSelection());
     	
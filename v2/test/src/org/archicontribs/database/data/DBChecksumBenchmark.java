@@ -0,0 +1,194 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+
+package org.archicontribs.database.data;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.ecore.EObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.archimatetool.model.IAccessRelationship;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.IInfluenceRelationship;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+
+/**
+ * JMH benchmark of the checksum calculation of the elements and relationships<br>
+ * <br>
+ * The benchmark compares {@link DBChecksum#calculateChecksum(EObject)} to the previous implementation that built a String
+ * for each component, encoded it to a byte array and got a new MessageDigest for each checksum.<br>
+ * The components are generated from a fixed seed, so successive runs calculate the checksums of exactly the same content.
+ * The setup checks that both implementations return the same checksums.<br>
+ * <br>
+ * This folder is not part of the plugin bundle. The benchmark is run with JMH, the plugin classes and the Archi model and EMF bundles on the classpath,
+ * adding "-prof gc" to the JMH command line to compare the allocations as well.
+ * 
+ * @author Herve Jouin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class DBChecksumBenchmark {
+	private static final long seed = 42;
+	
+	private static final String[] words = {"application", "service", "process", "donn\u00e9es", "Stra\u00dfe", "componente", "interface", "acteur", "node", "syst\u00e8me", "r\u00e9seau", "\u5317\u4eac", "function"};
+	
+	/**
+	 * Number of elements, the same number of relationships being generated between them
+	 */
+	@Param({"10000"})
+	public int nbElements;
+	
+	private List<EObject> components;
+	
+	@Setup
+	public void setup() throws Exception {
+		this.components = generateComponents(this.nbElements);
+		
+		// both implementations must calculate the same checksums, else the comparison is meaningless
+		for ( EObject component: this.components ) {
+			if ( !DBChecksum.calculateChecksum(component).equals(previousChecksum(component)) )
+				throw new IllegalStateException("The checksums of component "+((IIdentifier)component).getId()+" differ between the current and the previous implementations.");
+		}
+	}
+	
+	@Benchmark
+	public void currentImplementation(Blackhole blackhole) throws Exception {
+		for ( EObject component: this.components )
+			blackhole.consume(DBChecksum.calculateChecksum(component));
+	}
+	
+	@Benchmark
+	public void previousImplementation(Blackhole blackhole) throws Exception {
+		for ( EObject component: this.components )
+			blackhole.consume(previousChecksum(component));
+	}
+	
+	/**
+	 * Generates the elements and relationships, with names, documentation and properties mixing ASCII and non ASCII characters
+	 */
+	private static List<EObject> generateComponents(int nbElements) {
+		Random random = new Random(seed);
+		List<EObject> components = new ArrayList<EObject>();
+		List<IArchimateElement> elements = new ArrayList<IArchimateElement>();
+		
+		for ( int i = 0; i < nbElements; ++i ) {
+			IArchimateElement element;
+			switch ( i % 3 ) {
+				case 0:  element = IArchimateFactory.eINSTANCE.createBusinessActor(); break;
+				case 1:  element = IArchimateFactory.eINSTANCE.createApplicationComponent(); break;
+				default: element = IArchimateFactory.eINSTANCE.createNode(); break;
+			}
+			element.setId("id-"+new java.util.UUID(random.nextLong(), random.nextLong()).toString());
+			element.setName(sentence(random, 1 + random.nextInt(4)));
+			element.setDocumentation(sentence(random, random.nextInt(40)));
+			addProperties(random, element);
+			elements.add(element);
+			components.add(element);
+		}
+		
+		for ( int i = 0; i < nbElements; ++i ) {
+			IArchimateRelationship relationship;
+			switch ( i % 3 ) {
+				case 0:  relationship = IArchimateFactory.eINSTANCE.createAssignmentRelationship(); break;
+				case 1:  relationship = IArchimateFactory.eINSTANCE.createAccessRelationship(); break;
+				default: relationship = IArchimateFactory.eINSTANCE.createInfluenceRelationship(); ((IInfluenceRelationship)relationship).setStrength("+"); break;
+			}
+			relationship.setId("id-"+new java.util.UUID(random.nextLong(), random.nextLong()).toString());
+			relationship.setName(sentence(random, random.nextInt(3)));
+			relationship.setDocumentation(sentence(random, random.nextInt(10)));
+			relationship.setSource(elements.get(random.nextInt(elements.size())));
+			relationship.setTarget(elements.get(random.nextInt(elements.size())));
+			addProperties(random, relationship);
+			components.add(relationship);
+		}
+		
+		return components;
+	}
+	
+	private static void addProperties(Random random, IProperties component) {
+		int nbProperties = random.nextInt(6);
+		for ( int i = 0; i < nbProperties; ++i ) {
+			IProperty property = IArchimateFactory.eINSTANCE.createProperty();
+			property.setKey(sentence(random, 1));
+			property.setValue(sentence(random, 1 + random.nextInt(3)));
+			component.getProperties().add(property);
+		}
+	}
+	
+	private static String sentence(Random random, int nbWords) {
+		StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < nbWords; ++i ) {
+			if ( i != 0 )
+				sb.append(' ');
+			sb.append(words[random.nextInt(words.length)]);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Calculates the checksum of an element or a relationship as the plugin did before the checksums were calculated without intermediate strings
+	 */
+	static String previousChecksum(EObject eObject) throws NoSuchAlgorithmException, UnsupportedEncodingException {
+		StringBuilder checksumBuilder = new StringBuilder();
+		
+		DBChecksum.append(checksumBuilder, "id", ((IIdentifier)eObject).getId());
+		if ( eObject instanceof IArchimateElement ) {
+			DBChecksum.append(checksumBuilder, "name", ((IArchimateElement)eObject).getName());
+			DBChecksum.append(checksumBuilder, "documentation", ((IArchimateElement)eObject).getDocumentation());
+		} else {
+			IArchimateRelationship relationship = (IArchimateRelationship)eObject;
+			DBChecksum.append(checksumBuilder, "name", relationship.getName());
+			DBChecksum.append(checksumBuilder, "documentation", relationship.getDocumentation());
+			DBChecksum.append(checksumBuilder, "source id", relationship.getSource().getId());
+			DBChecksum.append(checksumBuilder, "target id", relationship.getTarget().getId());
+			if ( eObject instanceof IInfluenceRelationship )	DBChecksum.append(checksumBuilder, "strength", ((IInfluenceRelationship)eObject).getStrength());
+			if ( eObject instanceof IAccessRelationship )		DBChecksum.append(checksumBuilder, "access type", ((IAccessRelationship)eObject).getAccessType());
+		}
+		for ( IProperty prop: ((IProperties)eObject).getProperties() ) {
+			DBChecksum.append(checksumBuilder, "property key", prop.getKey());
+			DBChecksum.append(checksumBuilder, "property value", prop.getValue());
+		}
+		
+		MessageDigest md = MessageDigest.getInstance("MD5");
+		md.update(checksumBuilder.toString().getBytes("UTF-8"));
+		byte[] digest = md.digest();
+		
+		StringBuilder md5 = new StringBuilder();
+		for (int i = 0; i < digest.length; i++) {
+			if ((0xff & digest[i]) < 0x10)
+				md5.append("0").append(Integer.toHexString((0xFF & digest[i])));
+			else
+				md5.append(Integer.toHexString(0xFF & digest[i]));
+		}
+		return md5.toString();
+	}
+}